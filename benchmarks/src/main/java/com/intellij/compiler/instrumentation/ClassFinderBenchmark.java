@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.objectweb.asm.ClassWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.benchmark.SyntheticClasses;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of resolving classes against a classpath of synthetic jars, the last jar holding the classes looked up so
+ * that any per-jar cost shows.
+ * <p>
+ * Lives in the package of the class finder since its lookup methods are package private, the results are returned
+ * as {@code Object} since the generated benchmark code is in another package.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ClassFinderBenchmark {
+
+    @Param({"1", "10", "100", "300"})
+    public int jars;
+    @Param({"20"})
+    public int classesPerJar;
+
+    private Path directory;
+    private URL[] classpath;
+    private InstrumentationSession session;
+    private ClassFinderClasspath warmClasspath;
+    private InstrumentationClassFinder warmFinder;
+    private InstrumenterClassWriter warmWriter;
+    /**
+     * The deepest class in the last jar and its chain root, dotted and internal.
+     */
+    private String deepClass;
+    private String deepResource;
+    private String deepType;
+    private String rootType;
+
+    @Setup(Level.Trial)
+    public void createClasspath() throws IOException, ClassNotFoundException {
+        directory = Files.createTempDirectory("notnull-benchmark");
+        classpath = new URL[jars];
+        for (int i = 0; i < jars; i++) {
+            final Path jar = directory.resolve("library" + i + ".jar");
+            SyntheticClasses.writeJar(SyntheticClasses.generate(packageName(i), classesPerJar, 2, 2, 0), jar);
+            classpath[i] = jar.toUri().toURL();
+        }
+        final int deepest = Math.min(classesPerJar, 10) - 1;
+        deepType = packageName(jars - 1) + "/Generated" + deepest;
+        rootType = packageName(jars - 1) + "/Generated0";
+        deepResource = deepType + ".class";
+        deepClass = deepType.replace('/', '.');
+
+        session = InstrumentationSession.create(null);
+        warmClasspath = new ClassFinderClasspath(classpath, session);
+        warmFinder = new InstrumentationClassFinder(classpath, session);
+        warmWriter = new InstrumenterClassWriter(ClassWriter.COMPUTE_FRAMES, warmFinder);
+        warmClasspath.getClassInfo(deepResource);
+        warmFinder.loadClass(deepClass);
+        warmWriter.getCommonSuperClass(deepType, rootType);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteClasspath() throws IOException {
+        warmFinder.close();
+        warmClasspath.close();
+        SyntheticClasses.delete(directory);
+    }
+
+    private static String packageName(final int jar) {
+        return "se/eris/library" + jar;
+    }
+
+    /**
+     * A class in the last jar, through an already indexed classpath.
+     */
+    @Benchmark
+    public Object classpathLookup() throws IOException {
+        return warmClasspath.getClassInfo(deepResource);
+    }
+
+    /**
+     * First lookup in a new classpath, including indexing it (jars already read by the session).
+     */
+    @Benchmark
+    public Object classpathFirstLookup() throws IOException {
+        final ClassFinderClasspath cold = new ClassFinderClasspath(classpath, session);
+        try {
+            return cold.getClassInfo(deepResource);
+        } finally {
+            cold.close();
+        }
+    }
+
+    @Benchmark
+    public Object loadClassCached() throws IOException, ClassNotFoundException {
+        return warmFinder.loadClass(deepClass);
+    }
+
+    /**
+     * Loads the class and its super classes through a new finder (jars already read by the session).
+     */
+    @Benchmark
+    public Object loadClassUncached() throws IOException, ClassNotFoundException {
+        final InstrumentationClassFinder finder = new InstrumentationClassFinder(classpath, session);
+        try {
+            return finder.loadClass(deepClass);
+        } finally {
+            finder.close();
+        }
+    }
+
+    @Benchmark
+    public String commonSuperClassCached() {
+        return warmWriter.getCommonSuperClass(deepType, rootType);
+    }
+
+    /**
+     * Common super class through a new finder: loads both hierarchies and walks them.
+     */
+    @Benchmark
+    public String commonSuperClassUncached() throws IOException {
+        final InstrumentationClassFinder finder = new InstrumentationClassFinder(classpath, session);
+        try {
+            return new InstrumenterClassWriter(ClassWriter.COMPUTE_FRAMES, finder).getCommonSuperClass(deepType, "java/util/ArrayList");
+        } finally {
+            finder.close();
+        }
+    }
+
+}
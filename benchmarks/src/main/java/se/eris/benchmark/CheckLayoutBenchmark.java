@@ -0,0 +1,160 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import com.intellij.NotNullInstrumenter;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CodeGenerationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The runtime cost of the checks of small, hot methods in each check layout: {@code none} (not instrumented),
+ * {@code inline} (each throw right after its test), {@code cold} (throws after the code of the method) and
+ * {@code fused} (parameter tests jumping to one block after the code of the method, return value throws after it).
+ * <p>
+ * The methods are generated, instrumented in implicit mode and called through an interface, so the calls are
+ * monomorphic and the JIT inlines them as it would inline application code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class CheckLayoutBenchmark {
+
+    private static final String TARGET_NAME = "se/eris/benchmark/generated/CheckedTarget";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String OBJECT_DESCRIPTOR = "Ljava/lang/Object;";
+
+    @Param({"none", "inline", "cold", "fused"})
+    public String layout;
+
+    private Path directory;
+    private Target target;
+    private Object a = "a";
+    private Object b = "b";
+    private Object c = "c";
+
+    /**
+     * Implemented by the generated class.
+     */
+    public interface Target {
+
+        Object first(Object a, Object b, Object c);
+
+        Object second(Object a, Object b);
+
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        directory = Files.createTempDirectory("notnull-layout-benchmark");
+        SyntheticClasses.writeClasses(Collections.singletonMap(TARGET_NAME, generateTarget()), directory);
+        if (!"none".equals(layout)) {
+            final Configuration configuration = new Configuration(
+                    true,
+                    new AnnotationConfiguration(),
+                    new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()),
+                    CodeGenerationConfiguration.Builder.init()
+                            .preserveFrames(true)
+                            .coldThrows("cold".equals(layout) || "fused".equals(layout))
+                            .fusedChecks("fused".equals(layout))
+                            .build());
+            new NotNullInstrumenter(new NopLogWrapper()).addNotNullAnnotations(directory, configuration, Collections.<URL>emptyList());
+        }
+        final ClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, CheckLayoutBenchmark.class.getClassLoader());
+        target = (Target) loader.loadClass(TARGET_NAME.replace('/', '.')).newInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        SyntheticClasses.delete(directory);
+    }
+
+    @Benchmark
+    public Object threeParameters() {
+        return target.first(a, b, c);
+    }
+
+    @Benchmark
+    public Object twoParameters() {
+        return target.second(a, b);
+    }
+
+    /**
+     * public class CheckedTarget implements Target, each method returning one of its parameters.
+     */
+    @NotNull
+    private static byte[] generateTarget() {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, TARGET_NAME, null, OBJECT, new String[]{Target.class.getName().replace('.', '/')});
+        final MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        generateReturnParameter(writer, "first", 3, 1);
+        generateReturnParameter(writer, "second", 2, 2);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void generateReturnParameter(@NotNull final ClassWriter writer, @NotNull final String name, final int parameters, final int returned) {
+        final StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i < parameters; i++) {
+            descriptor.append(OBJECT_DESCRIPTOR);
+        }
+        descriptor.append(")").append(OBJECT_DESCRIPTOR);
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, name, descriptor.toString(), null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, returned);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+}
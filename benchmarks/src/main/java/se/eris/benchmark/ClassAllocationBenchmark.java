@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import com.intellij.compiler.notNullVerification.NotNullInstrumenterClassVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CodeGenerationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instruments the classes of a synthetic corpus in memory, one class per operation, so that with {@code -prof gc}
+ * {@code gc.alloc.rate.norm} is the allocation per class. {@code copy} reads and writes the classes without
+ * instrumenting them, the allocation of ASM itself; the difference to {@code instrument} is that of the instrumenter.
+ * <p>
+ * The classes are instrumented with preserved frames, so no class hierarchy is needed and no files are involved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ClassAllocationBenchmark {
+
+    private static final String PACKAGE = "se/eris/synthetic";
+
+    @Param({"1000"})
+    public int classes;
+    @Param({"10", "50"})
+    public int methodsPerClass;
+    @Param({"3"})
+    public int parametersPerMethod;
+    @Param({"0.3"})
+    public double annotatedRatio;
+    @Param({"annotation", "implicit"})
+    public String mode;
+    @Param({"copy", "instrument"})
+    public String visitor;
+
+    private byte[][] corpus;
+    private int next;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        final Collection<byte[]> classFiles = SyntheticClasses.generate(PACKAGE, classes, methodsPerClass, parametersPerMethod, annotatedRatio).values();
+        corpus = classFiles.toArray(new byte[classFiles.size()][]);
+        configuration = new Configuration(
+                "implicit".equals(mode),
+                new AnnotationConfiguration(),
+                new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()),
+                CodeGenerationConfiguration.Builder.init().preserveFrames(true).build());
+    }
+
+    @Benchmark
+    public byte[] instrumentClass() {
+        final byte[] classFile = corpus[next];
+        next = next + 1 == corpus.length ? 0 : next + 1;
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        if ("copy".equals(visitor)) {
+            new ClassReader(classFile).accept(writer, ClassReader.EXPAND_FRAMES);
+        } else {
+            new ClassReader(classFile).accept(new NotNullInstrumenterClassVisitor(writer, configuration), ClassReader.EXPAND_FRAMES);
+        }
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.asm.AsmUtils;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the class file version of the classes of a synthetic corpus, one class per operation. {@code header} reads it
+ * from the class file header, as the instrumenter does; {@code accept} is the parse of the whole class the
+ * instrumenter used to make for it, before the one that instruments the class.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class ClassFileVersionBenchmark {
+
+    private static final String PACKAGE = "se/eris/synthetic";
+
+    @Param({"1000"})
+    public int classes;
+    @Param({"10", "50"})
+    public int methodsPerClass;
+    @Param({"3"})
+    public int parametersPerMethod;
+    @Param({"0.3"})
+    public double annotatedRatio;
+
+    private byte[][] corpus;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        final Collection<byte[]> classFiles = SyntheticClasses.generate(PACKAGE, classes, methodsPerClass, parametersPerMethod, annotatedRatio).values();
+        corpus = classFiles.toArray(new byte[classFiles.size()][]);
+    }
+
+    @Benchmark
+    public int header() {
+        return AsmUtils.getClassFileVersion(nextClass());
+    }
+
+    @Benchmark
+    public int accept() {
+        final int[] classFileVersion = new int[1];
+        new ClassReader(nextClass()).accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+                classFileVersion[0] = version;
+            }
+        }, 0);
+        return classFileVersion[0];
+    }
+
+    private byte[] nextClass() {
+        final byte[] classFile = corpus[next];
+        next = next + 1 == corpus.length ? 0 : next + 1;
+        return classFile;
+    }
+
+}
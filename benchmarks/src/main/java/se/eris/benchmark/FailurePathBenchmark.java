@@ -0,0 +1,173 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import com.intellij.NotNullInstrumenter;
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CodeGenerationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The throughput of failing checks, as when the checks validate untrusted input and the exception is caught at the
+ * edge of a service, with each exception strategy: {@code default} (new IllegalArgumentException), {@code stackless}
+ * ({@code stacklessExceptions}) and {@code preallocated} (an {@code exceptionFactory} returning one exception).
+ * <p>
+ * The check fails {@code depth} calls down, since filling in the stack trace costs by the frame. All available
+ * threads throw at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Threads(Threads.MAX)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public class FailurePathBenchmark {
+
+    private static final String TARGET_NAME = "se/eris/benchmark/generated/ValidatingTarget";
+    private static final String OBJECT = "java/lang/Object";
+
+    @Param({"default", "stackless", "preallocated"})
+    public String exceptions;
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private Path directory;
+    private Target target;
+    private Object input = null;
+
+    /**
+     * Implemented by the generated class.
+     */
+    public interface Target {
+
+        Object validate(Object input);
+
+    }
+
+    /**
+     * The exception factory of the {@code preallocated} strategy.
+     */
+    public static final class PreallocatedExceptions {
+
+        private static final IllegalArgumentException NULL_ARGUMENT = new IllegalArgumentException("null argument");
+        private static final IllegalStateException NULL_RETURN = new IllegalStateException("null return");
+
+        private PreallocatedExceptions() {
+        }
+
+        public static RuntimeException nullArgument(final String message) {
+            return NULL_ARGUMENT;
+        }
+
+        public static RuntimeException nullReturn(final String message) {
+            return NULL_RETURN;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        directory = Files.createTempDirectory("notnull-failure-benchmark");
+        SyntheticClasses.writeClasses(Collections.singletonMap(TARGET_NAME, generateTarget()), directory);
+        final CodeGenerationConfiguration.Builder codeGeneration = CodeGenerationConfiguration.Builder.init().preserveFrames(true);
+        if ("stackless".equals(exceptions)) {
+            codeGeneration.stacklessExceptions();
+        } else if ("preallocated".equals(exceptions)) {
+            codeGeneration.exceptionFactory(PreallocatedExceptions.class.getName());
+        }
+        final Configuration configuration = new Configuration(
+                true,
+                new AnnotationConfiguration(),
+                new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()),
+                codeGeneration.build());
+        new NotNullInstrumenter(new NopLogWrapper()).addNotNullAnnotations(directory, configuration, Collections.<URL>emptyList());
+        final ClassLoader loader = new URLClassLoader(new URL[]{directory.toUri().toURL()}, FailurePathBenchmark.class.getClassLoader());
+        target = (Target) loader.loadClass(TARGET_NAME.replace('/', '.')).newInstance();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        SyntheticClasses.delete(directory);
+    }
+
+    @Benchmark
+    public Object rejectNull() {
+        try {
+            return validateAt(depth);
+        } catch (final IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    private Object validateAt(final int remaining) {
+        return remaining == 0 ? target.validate(input) : validateAt(remaining - 1);
+    }
+
+    /**
+     * public class ValidatingTarget implements Target, returning its parameter.
+     */
+    @NotNull
+    private static byte[] generateTarget() {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, TARGET_NAME, null, OBJECT, new String[]{Target.class.getName().replace('.', '/')});
+        final MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "validate", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+}
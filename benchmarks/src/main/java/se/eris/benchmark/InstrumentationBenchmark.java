@@ -0,0 +1,125 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import com.intellij.NotNullInstrumenter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CodeGenerationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instruments a freshly written synthetic corpus per invocation, the way a clean build does.
+ * <p>
+ * The primary score is corpora per second, the {@code classes} secondary result is the throughput in classes per
+ * second. With {@code -prof gc} the allocation per class is {@code gc.alloc.rate.norm} divided by {@link #classes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class InstrumentationBenchmark {
+
+    private static final String PACKAGE = "se/eris/synthetic";
+
+    @Param({"1000"})
+    public int classes;
+    @Param({"10"})
+    public int methodsPerClass;
+    @Param({"3"})
+    public int parametersPerMethod;
+    @Param({"0.3"})
+    public double annotatedRatio;
+    @Param({"annotation", "implicit"})
+    public String mode;
+    @Param({"false", "true"})
+    public boolean preserveFrames;
+    @Param({"1"})
+    public int threads;
+
+    private Map<String, byte[]> corpus;
+    private Path directory;
+    private List<URL> classpath;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        corpus = SyntheticClasses.generate(PACKAGE, classes, methodsPerClass, parametersPerMethod, annotatedRatio);
+        directory = Files.createTempDirectory("notnull-benchmark");
+        classpath = Collections.singletonList(directory.toUri().toURL());
+        configuration = new Configuration(
+                "implicit".equals(mode),
+                new AnnotationConfiguration(),
+                new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()),
+                CodeGenerationConfiguration.Builder.init().preserveFrames(preserveFrames).build());
+    }
+
+    @Setup(Level.Invocation)
+    public void writeCorpus() throws IOException {
+        SyntheticClasses.writeClasses(corpus, directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        SyntheticClasses.delete(directory);
+    }
+
+    @Benchmark
+    public int instrument(final ClassCounter counter) {
+        final int instrumented = new NotNullInstrumenter(new NopLogWrapper(), threads).addNotNullAnnotations(directory, configuration, classpath);
+        counter.classes += classes;
+        return instrumented;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ClassCounter {
+        public long classes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            classes = 0;
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.benchmark;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates a deterministic corpus of class files shaped like compiled application code.
+ * <p>
+ * Classes form inheritance chains of {@link #CHAIN_LENGTH} so that the class finder has hierarchies to load. Every
+ * method takes a {@code String} first, followed by {@code Object} and {@code int} parameters, and returns either an
+ * {@code ArrayList} or a {@code LinkedList} (or, further down a chain, either the class itself or its super class)
+ * so that computing frames has to find common super classes.
+ */
+public final class SyntheticClasses {
+
+    static final int CHAIN_LENGTH = 10;
+
+    private static final String NOT_NULL = "Lorg/jetbrains/annotations/NotNull;";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String[] PARAMETER_TYPES = {"Ljava/lang/String;", "Ljava/lang/Object;", "I"};
+
+    private SyntheticClasses() {
+    }
+
+    /**
+     * @param packageName     the internal name of the package (ie se/eris/synthetic).
+     * @param annotatedRatio  the fraction (0 to 1) of the reference parameters and return values annotated @NotNull.
+     * @return class file bytes by internal class name, in generation order.
+     */
+    @NotNull
+    public static Map<String, byte[]> generate(@NotNull final String packageName, final int classes, final int methodsPerClass, final int parametersPerMethod, final double annotatedRatio) {
+        if (parametersPerMethod < 1) {
+            throw new IllegalArgumentException("Every method needs at least one parameter (was " + parametersPerMethod + ")");
+        }
+        final Map<String, byte[]> corpus = new LinkedHashMap<>();
+        for (int i = 0; i < classes; i++) {
+            final String name = className(packageName, i);
+            final String superName = i % CHAIN_LENGTH == 0 ? OBJECT : className(packageName, i - 1);
+            corpus.put(name, generateClass(name, superName, i, methodsPerClass, parametersPerMethod, annotatedRatio));
+        }
+        return corpus;
+    }
+
+    @NotNull
+    static String className(@NotNull final String packageName, final int index) {
+        return packageName + "/Generated" + index;
+    }
+
+    @NotNull
+    private static byte[] generateClass(@NotNull final String name, @NotNull final String superName, final int index, final int methods, final int parameters, final double annotatedRatio) {
+        final ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        generateConstructor(writer, superName);
+        for (int j = 0; j < methods; j++) {
+            generateMethod(writer, name, superName, "method" + j, parameters, isAnnotated(index, j, -1, annotatedRatio), index, j, annotatedRatio);
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void generateConstructor(@NotNull final ClassWriter writer, @NotNull final String superName) {
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * if (p0 == null) return new A(); else return new B(); with explicit frames, A and B being two JDK lists or, if
+     * the class has a generated super class, the class and its super class.
+     */
+    private static void generateMethod(@NotNull final ClassWriter writer, @NotNull final String name, @NotNull final String superName, @NotNull final String methodName, final int parameters, final boolean annotatedReturn, final int index, final int methodIndex, final double annotatedRatio) {
+        final StringBuilder descriptor = new StringBuilder("(");
+        final Object[] locals = new Object[parameters + 1];
+        locals[0] = name;
+        for (int k = 0; k < parameters; k++) {
+            final String type = PARAMETER_TYPES[k % PARAMETER_TYPES.length];
+            descriptor.append(type);
+            locals[k + 1] = "I".equals(type) ? Opcodes.INTEGER : type.substring(1, type.length() - 1);
+        }
+        descriptor.append(")Ljava/lang/Object;");
+
+        final MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC, methodName, descriptor.toString(), null, null);
+        if (annotatedReturn) {
+            mv.visitAnnotation(NOT_NULL, false).visitEnd();
+        }
+        for (int k = 0; k < parameters; k++) {
+            if (!"I".equals(PARAMETER_TYPES[k % PARAMETER_TYPES.length]) && isAnnotated(index, methodIndex, k, annotatedRatio)) {
+                mv.visitParameterAnnotation(k, NOT_NULL, false).visitEnd();
+            }
+        }
+        final boolean ownTypes = methodIndex % 2 == 1 && !OBJECT.equals(superName);
+        final String first = ownTypes ? name : "java/util/ArrayList";
+        final String second = ownTypes ? superName : "java/util/LinkedList";
+
+        mv.visitCode();
+        final Label isNull = new Label();
+        final Label end = new Label();
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitJumpInsn(Opcodes.IFNULL, isNull);
+        newInstance(mv, first);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(isNull);
+        mv.visitFrame(Opcodes.F_NEW, locals.length, locals, 0, new Object[0]);
+        newInstance(mv, second);
+        mv.visitLabel(end);
+        mv.visitFrame(Opcodes.F_NEW, locals.length, locals, 1, new Object[]{OBJECT});
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void newInstance(@NotNull final MethodVisitor mv, @NotNull final String type) {
+        mv.visitTypeInsn(Opcodes.NEW, type);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+    }
+
+    /**
+     * Deterministic, evenly spread choice so that runs with the same parameters instrument the same corpus.
+     */
+    private static boolean isAnnotated(final int classIndex, final int methodIndex, final int parameterIndex, final double annotatedRatio) {
+        final int hash = (classIndex * 31 + methodIndex) * 31 + parameterIndex + 1;
+        return (hash * 0x9E3779B9 >>> 1) % 1000 < annotatedRatio * 1000;
+    }
+
+    public static void writeClasses(@NotNull final Map<String, byte[]> corpus, @NotNull final Path directory) throws IOException {
+        for (final Map.Entry<String, byte[]> entry : corpus.entrySet()) {
+            final Path file = directory.resolve(entry.getKey() + ".class");
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getValue());
+        }
+    }
+
+    public static void writeJar(@NotNull final Map<String, byte[]> corpus, @NotNull final Path jar) throws IOException {
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (final Map.Entry<String, byte[]> entry : corpus.entrySet()) {
+                jarOut.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                jarOut.write(entry.getValue());
+                jarOut.closeEntry();
+            }
+        }
+    }
+
+    public static void delete(@NotNull final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
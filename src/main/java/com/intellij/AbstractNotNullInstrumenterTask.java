@@ -15,18 +15,28 @@
  */
 package com.intellij;
 
+import com.intellij.compiler.instrumentation.InstrumentationSession;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import se.eris.maven.MavenLogWrapper;
 import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CheckVisibility;
+import se.eris.notnull.CodeGenerationConfiguration;
 import se.eris.notnull.Configuration;
 import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.HotMethodPolicy;
+import se.eris.notnull.ProfileConfiguration;
+import se.eris.notnull.VisibilityConfiguration;
 import se.eris.notnull.instrumentation.ClassMatcher;
+import se.eris.notnull.instrumentation.InstrumentationManifest;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Path;
@@ -42,9 +52,22 @@ import java.util.Set;
  */
 abstract class AbstractNotNullInstrumenterTask extends AbstractMojo {
 
+    private static final String AUTO_THREADS = "auto";
+    private static final String MANIFEST_DIRECTORY = "notnull-instrumenter";
+    private static final String MANIFEST_EXTENSION = ".manifest";
+
     @Parameter( defaultValue = "${project}", readonly = true )
     MavenProject project;
 
+    @Parameter( defaultValue = "${session}", readonly = true )
+    private MavenSession session;
+
+    /**
+     * The version of this plugin, which the incremental instrumentation manifest is only valid for.
+     */
+    @Parameter( defaultValue = "${plugin.version}", readonly = true )
+    private String pluginVersion;
+
     @Parameter
     private Set<String> notNull;
 
@@ -54,18 +77,175 @@ abstract class AbstractNotNullInstrumenterTask extends AbstractMojo {
     @Parameter
     private Set<String> excludes;
 
+    /**
+     * Patterns (as for excludes) of the exported classes, the only classes that get checks if any are given.
+     */
+    @Parameter
+    private Set<String> exports;
+
+    /**
+     * The least visible methods that get parameter checks: all, package, protected or public.
+     */
+    @Parameter(property = "se.eris.notnull.parameterCheckVisibility", defaultValue = "all")
+    private String parameterCheckVisibility;
+
+    /**
+     * The least visible methods that get return value checks: all, package, protected or public.
+     */
+    @Parameter(property = "se.eris.notnull.returnCheckVisibility", defaultValue = "all")
+    private String returnCheckVisibility;
+
+    /**
+     * A list of hot methods, one per line as the class name and method name separated by a dot, for instance the top
+     * frames printed by jfr print --events jdk.ExecutionSample from a production recording.
+     */
+    @Parameter(property = "se.eris.notnull.hotMethods")
+    private File hotMethods;
+
+    /**
+     * What the hot methods get instead of the full checks: compact (checks), no_return_check or skip (no checks).
+     */
+    @Parameter(property = "se.eris.notnull.hotMethodPolicy", defaultValue = "compact")
+    private String hotMethodPolicy;
+
     @Parameter
     private boolean implicit;
     @Parameter(property = "se.eris.notnull.instrument", defaultValue = "true")
     private boolean instrument;
 
-    private final NotNullInstrumenter instrumenter;
+    /**
+     * Number of threads to instrument with, either a positive number or "auto" for one thread per available processor.
+     */
+    @Parameter(property = "se.eris.notnull.threads", defaultValue = "1")
+    private String threads;
 
-    private final MavenLogWrapper logger = new MavenLogWrapper(getLog());
+    /**
+     * Skip class files that have not changed since they were last instrumented (tracked by a manifest in the build
+     * directory).
+     */
+    @Parameter(property = "se.eris.notnull.incremental", defaultValue = "true")
+    private boolean incremental;
 
-    public AbstractNotNullInstrumenterTask() {
-        instrumenter = new NotNullInstrumenter(logger);
-    }
+    /**
+     * Keep the existing stack map frames and add only the frames the null checks need, instead of recomputing all
+     * frames. Faster, and does not need the class hierarchy of the dependencies.
+     */
+    @Parameter(property = "se.eris.notnull.preserveFrames", defaultValue = "false")
+    private boolean preserveFrames;
+
+    /**
+     * Throw the exceptions of failed checks from a synthetic helper method per class instead of inline, so that
+     * instrumented small methods stay under the JIT inlining size limits.
+     */
+    @Parameter(property = "se.eris.notnull.outlineChecks", defaultValue = "false")
+    private boolean outlineChecks;
+
+    /**
+     * Generate the checks of Java 7+ class files as invokedynamic call sites that can be switched off at runtime
+     * (system property se.eris.notnull.checks or JMX). se.eris.notnull.runtime.NullChecks must then be on the runtime
+     * classpath.
+     */
+    @Parameter(property = "se.eris.notnull.dynamicChecks", defaultValue = "false")
+    private boolean dynamicChecks;
+
+    /**
+     * Guard the checks with a synthetic static final field per class, set when the class is initialized from the
+     * system properties se.eris.notnull.checks.&lt;class or package&gt; and se.eris.notnull.checks (checks are
+     * skipped if false), so disabled checks cost nothing once compiled.
+     */
+    @Parameter(property = "se.eris.notnull.guardedChecks", defaultValue = "false")
+    private boolean guardedChecks;
+
+    /**
+     * Pass only the method name and parameter number from each check to a synthetic helper of the class that builds
+     * the failure message, instead of storing a message string per check.
+     */
+    @Parameter(property = "se.eris.notnull.compactMessages", defaultValue = "false")
+    private boolean compactMessages;
+
+    /**
+     * Analyze each method before instrumenting it and leave out the return value checks that cannot fail, such as
+     * on returning this, a new object or a constant.
+     */
+    @Parameter(property = "se.eris.notnull.nullnessAnalysis", defaultValue = "false")
+    private boolean nullnessAnalysis;
+
+    /**
+     * Analyze the calls within each class and leave out the parameter checks of private methods that are passed
+     * non-null values at every call.
+     */
+    @Parameter(property = "se.eris.notnull.callSiteAnalysis", defaultValue = "false")
+    private boolean callSiteAnalysis;
+
+    /**
+     * Split methods that cannot be overridden into a checked entry point and an unchecked body, and have the calls
+     * within the instrumented classes that pass already checked arguments go to the body.
+     */
+    @Parameter(property = "se.eris.notnull.dualEntryPoints", defaultValue = "false")
+    private boolean dualEntryPoints;
+
+    /**
+     * Only test the parameters on method entry, each test jumping to a single block after the code of the method
+     * that finds the null parameter and throws, so that the checks add no throw code to the start of the method.
+     */
+    @Parameter(property = "se.eris.notnull.fusedChecks", defaultValue = "false")
+    private boolean fusedChecks;
+
+    /**
+     * Put the code throwing the exceptions of failed checks after the code of the method, so that the checks only
+     * add a test and a jump that is not taken to the normal path through the method.
+     */
+    @Parameter(property = "se.eris.notnull.coldThrows", defaultValue = "false")
+    private boolean coldThrows;
+
+    /**
+     * Measure the code length of each method before and after instrumentation, and give methods that the checks
+     * would push over the JIT inlining limit (325 bytes) or huge method limit (8000 bytes) smaller checks, or fewer,
+     * logging each decision.
+     */
+    @Parameter(property = "se.eris.notnull.sizeBudget", defaultValue = "false")
+    private boolean sizeBudget;
+
+    /**
+     * Throw exceptions without a stack trace from failed checks, se.eris.notnull.runtime.StacklessIllegalArgumentException
+     * and StacklessIllegalStateException, which then have to be on the runtime classpath.
+     */
+    @Parameter(property = "se.eris.notnull.stacklessExceptions", defaultValue = "false")
+    private boolean stacklessExceptions;
+
+    /**
+     * The class of the exception thrown by failed parameter checks, with a constructor taking the message.
+     */
+    @Parameter(property = "se.eris.notnull.argumentException")
+    private String argumentException;
+
+    /**
+     * The class of the exception thrown by failed return value checks, with a constructor taking the message.
+     */
+    @Parameter(property = "se.eris.notnull.returnException")
+    private String returnException;
+
+    /**
+     * A class creating the exceptions of failed checks, with the static methods RuntimeException nullArgument(String
+     * message) and RuntimeException nullReturn(String message), which may return preallocated exceptions.
+     */
+    @Parameter(property = "se.eris.notnull.exceptionFactory")
+    private String exceptionFactory;
+
+    /**
+     * Cache the class hierarchy of the classpath jars between builds, so that unchanged dependencies need not be
+     * opened to compute stack map frames.
+     */
+    @Parameter(property = "se.eris.notnull.classInfoCache", defaultValue = "true")
+    private boolean classInfoCache;
+
+    /**
+     * Directory for the class hierarchy cache, by default shared by all builds using the local repository.
+     */
+    @Parameter(property = "se.eris.notnull.classInfoCacheDirectory", defaultValue = "${settings.localRepository}/.cache/notnull-instrumenter")
+    private File classInfoCacheDirectory;
+
+    private final MavenLogWrapper logger = new MavenLogWrapper(getLog());
 
     void instrument(final Path classesDirectory, @NotNull final Iterable<String> classpathElements) throws MojoExecutionException {
         if (!instrument) {
@@ -74,8 +254,77 @@ abstract class AbstractNotNullInstrumenterTask extends AbstractMojo {
         final Configuration configuration = getConfiguration();
         logAnnotations(configuration);
         final List<URL> classpathUrls = getClasspathUrls(classpathElements);
-        final int instrumented = instrumenter.addNotNullAnnotations(classesDirectory, configuration, classpathUrls);
+        final InstrumentationSession instrumentationSession = getInstrumentationSession();
+        final NotNullInstrumenter instrumenter = new NotNullInstrumenter(logger, getThreadCount(), instrumentationSession);
+        final InstrumentationManifest manifest = getManifest(classesDirectory, configuration);
+        final int instrumented = instrumenter.addNotNullAnnotations(classesDirectory, configuration, classpathUrls, manifest);
         logger.info("Instrumented " + instrumented + " files with NotNull assertions");
+        saveManifest(manifest);
+        saveClassInfoCache(instrumentationSession);
+    }
+
+    /**
+     * All modules and goals of a build (also with -T) share one session, so each dependency jar is read once.
+     */
+    @NotNull
+    private InstrumentationSession getInstrumentationSession() {
+        final Path cacheDirectory = getClassInfoCacheDirectory();
+        if (session == null) {
+            return InstrumentationSession.create(cacheDirectory);
+        }
+        return InstrumentationSession.shared(session.getRequest(), cacheDirectory);
+    }
+
+    private void saveClassInfoCache(@NotNull final InstrumentationSession instrumentationSession) {
+        try {
+            instrumentationSession.save();
+        } catch (final IOException e) {
+            logger.warn("Could not save class hierarchy cache: " + e.getMessage());
+        }
+    }
+
+    @NotNull
+    private InstrumentationManifest getManifest(@NotNull final Path classesDirectory, @NotNull final Configuration configuration) {
+        final String buildDirectory = project.getBuild().getDirectory();
+        if (!incremental || buildDirectory == null) {
+            return InstrumentationManifest.disabled(classesDirectory);
+        }
+        if (configuration.getCodeGeneration().isDualEntryPoints()) {
+            logger.info("Incremental instrumentation is off with dualEntryPoints, since calls may depend on other classes");
+        }
+        final Path manifestFile = new File(buildDirectory, MANIFEST_DIRECTORY).toPath().resolve(classesDirectory.getFileName() + MANIFEST_EXTENSION);
+        return InstrumentationManifest.load(manifestFile, classesDirectory, configuration, pluginVersion == null ? "" : pluginVersion);
+    }
+
+    @Nullable
+    private Path getClassInfoCacheDirectory() {
+        return (classInfoCache && classInfoCacheDirectory != null) ? classInfoCacheDirectory.toPath() : null;
+    }
+
+    private void saveManifest(@NotNull final InstrumentationManifest manifest) {
+        try {
+            manifest.save();
+        } catch (final IOException e) {
+            logger.warn("Could not save instrumentation manifest, all class files will be processed next build: " + e.getMessage());
+        }
+    }
+
+    private int getThreadCount() throws MojoExecutionException {
+        if (threads == null) {
+            return 1;
+        }
+        if (AUTO_THREADS.equalsIgnoreCase(threads.trim())) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            final int threadCount = Integer.parseInt(threads.trim());
+            if (threadCount < 1) {
+                throw new MojoExecutionException("Number of threads must be at least 1 (was " + threads + ")");
+            }
+            return threadCount;
+        } catch (final NumberFormatException e) {
+            throw new MojoExecutionException("Number of threads must be a positive number or '" + AUTO_THREADS + "' (was " + threads + ")", e);
+        }
     }
 
     @NotNull
@@ -96,10 +345,84 @@ abstract class AbstractNotNullInstrumenterTask extends AbstractMojo {
         return urls;
     }
 
-    private Configuration getConfiguration() {
-        return new Configuration(implicit,
-                getAnnotationConfiguration(nullToEmpty(notNull), nullToEmpty(nullable)),
-                getExcludeConfiguration(nullToEmpty(excludes)));
+    private Configuration getConfiguration() throws MojoExecutionException {
+        return Configuration.Builder.init()
+                .implicit(implicit)
+                .annotations(getAnnotationConfiguration(nullToEmpty(notNull), nullToEmpty(nullable)))
+                .excludes(getExcludeConfiguration(nullToEmpty(excludes)))
+                .codeGeneration(getCodeGenerationConfiguration())
+                .visibility(getVisibilityConfiguration())
+                .profile(getProfileConfiguration())
+                .build();
+    }
+
+    @NotNull
+    private ProfileConfiguration getProfileConfiguration() throws MojoExecutionException {
+        if (hotMethods == null) {
+            return new ProfileConfiguration();
+        }
+        final HotMethodPolicy policy;
+        try {
+            policy = HotMethodPolicy.parse(hotMethodPolicy == null ? HotMethodPolicy.COMPACT.name() : hotMethodPolicy);
+        } catch (final IllegalArgumentException e) {
+            throw new MojoExecutionException("Hot method policy must be one of compact, no_return_check or skip (was " + hotMethodPolicy + ")", e);
+        }
+        try {
+            return ProfileConfiguration.load(hotMethods.toPath(), policy);
+        } catch (final IOException e) {
+            throw new MojoExecutionException("Cannot read hot methods: " + e.getMessage(), e);
+        }
+    }
+
+    private VisibilityConfiguration getVisibilityConfiguration() throws MojoExecutionException {
+        final Set<ClassMatcher> exportMatchers = new HashSet<>();
+        for (final String export : nullToEmpty(exports)) {
+            exportMatchers.add(ClassMatcher.namePattern(export));
+        }
+        return new VisibilityConfiguration(getCheckVisibility(parameterCheckVisibility), getCheckVisibility(returnCheckVisibility), exportMatchers);
+    }
+
+    @NotNull
+    private static CheckVisibility getCheckVisibility(@Nullable final String visibility) throws MojoExecutionException {
+        if (visibility == null) {
+            return CheckVisibility.ALL;
+        }
+        try {
+            return CheckVisibility.parse(visibility);
+        } catch (final IllegalArgumentException e) {
+            throw new MojoExecutionException("Check visibility must be one of all, package, protected or public (was " + visibility + ")", e);
+        }
+    }
+
+    private CodeGenerationConfiguration getCodeGenerationConfiguration() throws MojoExecutionException {
+        final CodeGenerationConfiguration.Builder builder = CodeGenerationConfiguration.Builder.init();
+        final int strategies = (stacklessExceptions ? 1 : 0) + (argumentException != null || returnException != null ? 1 : 0) + (exceptionFactory != null ? 1 : 0);
+        if (strategies > 1) {
+            throw new MojoExecutionException("Only one of stacklessExceptions, argumentException/returnException and exceptionFactory can be configured");
+        }
+        if (stacklessExceptions) {
+            builder.stacklessExceptions();
+        }
+        if (argumentException != null) {
+            builder.argumentException(argumentException);
+        }
+        if (returnException != null) {
+            builder.returnException(returnException);
+        }
+        return builder
+                .preserveFrames(preserveFrames)
+                .outlineChecks(outlineChecks)
+                .dynamicChecks(dynamicChecks)
+                .guardedChecks(guardedChecks)
+                .compactMessages(compactMessages)
+                .nullnessAnalysis(nullnessAnalysis)
+                .callSiteAnalysis(callSiteAnalysis)
+                .dualEntryPoints(dualEntryPoints)
+                .fusedChecks(fusedChecks)
+                .coldThrows(coldThrows)
+                .sizeBudget(sizeBudget)
+                .exceptionFactory(exceptionFactory)
+                .build();
     }
 
     private AnnotationConfiguration getAnnotationConfiguration(final Set<String> notNull, final Set<String> nullable) {
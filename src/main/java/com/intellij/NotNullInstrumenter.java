@@ -16,27 +16,36 @@
 package com.intellij;
 
 import com.intellij.compiler.instrumentation.InstrumentationClassFinder;
+import com.intellij.compiler.instrumentation.InstrumentationSession;
 import com.intellij.compiler.instrumentation.InstrumenterClassWriter;
+import com.intellij.compiler.notNullVerification.DualEntryPoints;
+import com.intellij.compiler.notNullVerification.InstrumentationPrefilter;
 import com.intellij.compiler.notNullVerification.NotNullInstrumenterClassVisitor;
+import com.intellij.compiler.notNullVerification.SizeBudget;
 import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Opcodes;
 import se.eris.asm.AsmUtils;
 import se.eris.maven.LogWrapper;
 import se.eris.notnull.Configuration;
 import se.eris.notnull.InstrumentExecutionException;
+import se.eris.notnull.VisibilityConfiguration;
+import se.eris.notnull.instrumentation.InstrumentationManifest;
 import se.eris.util.ClassFileUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Olle Sundblad
@@ -47,70 +56,223 @@ public class NotNullInstrumenter {
 
     @NotNull
     private final LogWrapper logger;
+    private final int threads;
+    @NotNull
+    private final InstrumentationSession session;
+    private final AtomicInteger elidedReturnChecks = new AtomicInteger();
+    private final AtomicInteger elidedParameterChecks = new AtomicInteger();
+    private final AtomicInteger splitMethods = new AtomicInteger();
+    private final AtomicInteger uncheckedCalls = new AtomicInteger();
+    private final AtomicInteger excludedParameterChecks = new AtomicInteger();
+    private final AtomicInteger excludedReturnChecks = new AtomicInteger();
+    private final AtomicInteger sizeBudgetMethods = new AtomicInteger();
+    private final AtomicInteger hotMethods = new AtomicInteger();
 
     public NotNullInstrumenter(@NotNull final LogWrapper logWrapper) {
+        this(logWrapper, 1);
+    }
+
+    public NotNullInstrumenter(@NotNull final LogWrapper logWrapper, final int threads) {
+        this(logWrapper, threads, InstrumentationSession.create(null));
+    }
+
+    /**
+     * @param threads the number of threads to instrument class files with, 1 instruments on the calling thread.
+     * @param session where the class hierarchy of the classpath is kept, possibly shared with other instrumenters
+     *                (saving it is up to the caller).
+     */
+    public NotNullInstrumenter(@NotNull final LogWrapper logWrapper, final int threads, @NotNull final InstrumentationSession session) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1 (was " + threads + ")");
+        }
         logger = logWrapper;
+        this.threads = threads;
+        this.session = session;
     }
 
     public int addNotNullAnnotations(final Path classesDirectory, final Configuration configuration, @NotNull final List<URL> urls) {
-        final InstrumentationClassFinder finder = new InstrumentationClassFinder(urls.toArray(new URL[urls.size()]));
-        return instrumentDirectoryRecursive(classesDirectory, finder, configuration);
+        return addNotNullAnnotations(classesDirectory, configuration, urls, InstrumentationManifest.disabled(classesDirectory));
+    }
+
+    /**
+     * @param manifest class files unchanged according to the manifest are skipped, processed class files are added
+     *                 to it (saving it is up to the caller).
+     */
+    public int addNotNullAnnotations(final Path classesDirectory, final Configuration configuration, @NotNull final List<URL> urls, @NotNull final InstrumentationManifest manifest) {
+        final InstrumentationClassFinder finder = new InstrumentationClassFinder(urls.toArray(new URL[urls.size()]), session);
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(configuration);
+        final int elidedReturnsBefore = elidedReturnChecks.get();
+        final int elidedParametersBefore = elidedParameterChecks.get();
+        final int splitMethodsBefore = splitMethods.get();
+        final int uncheckedCallsBefore = uncheckedCalls.get();
+        final int excludedParametersBefore = excludedParameterChecks.get();
+        final int excludedReturnsBefore = excludedReturnChecks.get();
+        final int sizeBudgetMethodsBefore = sizeBudgetMethods.get();
+        final int hotMethodsBefore = hotMethods.get();
+        final int instrumented;
+        try {
+            final DualEntryPoints dualEntryPoints = configuration.getCodeGeneration().isDualEntryPoints() ? findDualEntryPoints(classesDirectory, configuration) : new DualEntryPoints();
+            instrumented = instrumentDirectoryRecursive(classesDirectory, finder, configuration, manifest, prefilter, dualEntryPoints);
+        } finally {
+            closeFinder(finder);
+        }
+        logger.info("Prefilter skipped " + prefilter.getRejectedCount() + " class files that cannot need instrumentation");
+        if (manifest.isEnabled()) {
+            logger.info("Skipped " + manifest.getUnchangedCount() + " class files unchanged since last instrumented");
+        }
+        if (configuration.getVisibility().isRestricted()) {
+            final VisibilityConfiguration visibility = configuration.getVisibility();
+            logger.info("Parameter check visibility " + visibility.getParameters() + " left out " + (excludedParameterChecks.get() - excludedParametersBefore) + " parameter checks");
+            logger.info("Return check visibility " + visibility.getReturns() + " left out " + (excludedReturnChecks.get() - excludedReturnsBefore) + " return value checks");
+        }
+        if (!configuration.getProfile().isEmpty()) {
+            logger.info("Hot method policy " + configuration.getProfile().getPolicy() + " applied to " + (hotMethods.get() - hotMethodsBefore) + " methods listed in the profile");
+        }
+        if (configuration.getCodeGeneration().isNullnessAnalysis()) {
+            logger.info("Nullness analysis left out " + (elidedReturnChecks.get() - elidedReturnsBefore) + " return value checks that cannot fail");
+        }
+        if (configuration.getCodeGeneration().isCallSiteAnalysis()) {
+            logger.info("Call site analysis left out " + (elidedParameterChecks.get() - elidedParametersBefore) + " parameter checks of private methods never passed null");
+        }
+        if (configuration.getCodeGeneration().isSizeBudget()) {
+            logger.info("Size budget found " + (sizeBudgetMethods.get() - sizeBudgetMethodsBefore) + " methods that their checks would push over a JIT code length limit");
+        }
+        if (configuration.getCodeGeneration().isDualEntryPoints()) {
+            logger.info("Split " + (splitMethods.get() - splitMethodsBefore) + " methods into checked entry points and unchecked bodies, " + (uncheckedCalls.get() - uncheckedCallsBefore) + " calls go to the unchecked bodies");
+        }
+        return instrumented;
+    }
+
+    /**
+     * Reads the declarations of all the classes to instrument (including those unchanged since last instrumented)
+     * for the methods split into entry points and bodies, so that calls between them can be redirected.
+     */
+    @NotNull
+    private static DualEntryPoints findDualEntryPoints(@NotNull final Path classesDirectory, @NotNull final Configuration configuration) {
+        final DualEntryPoints dualEntryPoints = new DualEntryPoints();
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(configuration);
+        for (@NotNull final File file : ClassFileUtils.getClassFiles(classesDirectory)) {
+            try {
+                final byte[] classBytes = Files.readAllBytes(file.toPath());
+                if (AsmUtils.javaVersionSupportsAnnotations(AsmUtils.getClassFileVersion(classBytes)) && prefilter.mayNeedInstrumentation(classBytes)) {
+                    dualEntryPoints.addClass(classBytes, configuration);
+                }
+            } catch (final RuntimeException | IOException e) {
+                throw new InstrumentExecutionException("NotNull instrumentation failed for " + file.getPath(), e);
+            }
+        }
+        return dualEntryPoints;
     }
 
-    private int instrumentDirectoryRecursive(final Path classesDirectory, @NotNull final InstrumentationClassFinder finder, final Configuration configuration) {
+    private void closeFinder(@NotNull final InstrumentationClassFinder finder) {
+        try {
+            finder.close();
+        } catch (final IOException e) {
+            logger.warn("Could not close classpath: " + e.getMessage());
+        }
+    }
+
+    private int instrumentDirectoryRecursive(final Path classesDirectory, @NotNull final InstrumentationClassFinder finder, final Configuration configuration, @NotNull final InstrumentationManifest manifest, @NotNull final InstrumentationPrefilter prefilter, @NotNull final DualEntryPoints dualEntryPoints) {
+        if (threads > 1) {
+            return instrumentInParallel(ClassFileUtils.getClassFilesLargestFirst(classesDirectory), finder, configuration, manifest, prefilter, dualEntryPoints);
+        }
         int instrumentedCounter = 0;
         final Collection<File> classes = ClassFileUtils.getClassFiles(classesDirectory);
         for (@NotNull final File file : classes) {
-            instrumentedCounter += instrumentFile(file, finder, configuration);
+            instrumentedCounter += instrumentFile(file, finder, configuration, manifest, prefilter, dualEntryPoints);
         }
         return instrumentedCounter;
     }
 
-    private int instrumentFile(@NotNull final File file, @NotNull final InstrumentationClassFinder finder, final Configuration configuration) {
+    /**
+     * Submits the files in the given order (largest first) so that a few huge classes are not left to
+     * finish on a single thread at the end of the run.
+     */
+    private int instrumentInParallel(@NotNull final List<File> classes, @NotNull final InstrumentationClassFinder finder, final Configuration configuration, @NotNull final InstrumentationManifest manifest, @NotNull final InstrumentationPrefilter prefilter, @NotNull final DualEntryPoints dualEntryPoints) {
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final List<ForkJoinTask<Integer>> tasks = new ArrayList<>(classes.size());
+            for (@NotNull final File file : classes) {
+                tasks.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return instrumentFile(file, finder, configuration, manifest, prefilter, dualEntryPoints);
+                    }
+                }));
+            }
+            int instrumentedCounter = 0;
+            for (final ForkJoinTask<Integer> task : tasks) {
+                instrumentedCounter += task.join();
+            }
+            return instrumentedCounter;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private int instrumentFile(@NotNull final File file, @NotNull final InstrumentationClassFinder finder, final Configuration configuration, @NotNull final InstrumentationManifest manifest, @NotNull final InstrumentationPrefilter prefilter, @NotNull final DualEntryPoints dualEntryPoints) {
         logger.debug("Adding NotNull assertions to " + file.getPath());
         try {
-            return instrumentClass(file, finder, configuration) ? 1 : 0;
+            return instrumentClass(file, finder, configuration, manifest, prefilter, dualEntryPoints) ? 1 : 0;
         } catch (final RuntimeException | IOException e) {
             throw new InstrumentExecutionException("NotNull instrumentation failed for " + file.getPath(), e);
         }
     }
 
-    private static boolean instrumentClass(@NotNull final File file, @NotNull final InstrumentationClassFinder finder, final Configuration configuration) throws IOException {
-        try (FileInputStream inputStream = new FileInputStream(file)) {
-            final ClassReader classReader = new ClassReader(inputStream);
-
-            final int fileVersion = getClassFileVersion(classReader);
+    private boolean instrumentClass(@NotNull final File file, @NotNull final InstrumentationClassFinder finder, final Configuration configuration, @NotNull final InstrumentationManifest manifest, @NotNull final InstrumentationPrefilter prefilter, @NotNull final DualEntryPoints dualEntryPoints) throws IOException {
+        if (manifest.isUnchanged(file)) {
+            return false;
+        }
+        final byte[] classBytes = Files.readAllBytes(file.toPath());
+        if (manifest.isUnchanged(file, classBytes)) {
+            return false;
+        }
+        final int fileVersion = AsmUtils.getClassFileVersion(classBytes);
 
-            if (AsmUtils.javaVersionSupportsAnnotations(fileVersion)) {
-                final ClassWriter writer = new InstrumenterClassWriter(getAsmClassWriterFlags(fileVersion), finder);
+        if (AsmUtils.javaVersionSupportsAnnotations(fileVersion) && prefilter.mayNeedInstrumentation(classBytes)) {
+            final boolean preserveFrames = configuration.getCodeGeneration().isPreserveFrames() && AsmUtils.javaVersionHasStackMapFrames(fileVersion);
+            final ClassReader classReader = new ClassReader(classBytes);
+            final ClassWriter writer = new InstrumenterClassWriter(preserveFrames ? ClassWriter.COMPUTE_MAXS : getAsmClassWriterFlags(fileVersion), finder);
 
-                final NotNullInstrumenterClassVisitor instrumentingVisitor = new NotNullInstrumenterClassVisitor(writer, configuration);
-                classReader.accept(instrumentingVisitor, NO_FLAGS);
-                if (instrumentingVisitor.hasInstrumented()) {
-                    try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
-                        fileOutputStream.write(writer.toByteArray());
-                        return true;
-                    }
+            final NotNullInstrumenterClassVisitor instrumentingVisitor = new NotNullInstrumenterClassVisitor(writer, configuration, dualEntryPoints);
+            classReader.accept(instrumentingVisitor, preserveFrames ? ClassReader.EXPAND_FRAMES : NO_FLAGS);
+            // counted also for classes left without checks
+            elidedReturnChecks.addAndGet(instrumentingVisitor.getElidedReturnChecks());
+            elidedParameterChecks.addAndGet(instrumentingVisitor.getElidedParameterChecks());
+            excludedParameterChecks.addAndGet(instrumentingVisitor.getExcludedParameterChecks());
+            excludedReturnChecks.addAndGet(instrumentingVisitor.getExcludedReturnChecks());
+            hotMethods.addAndGet(instrumentingVisitor.getHotMethods());
+            logSizeBudgetDecisions(instrumentingVisitor.getSizeBudgetDecisions());
+            if (instrumentingVisitor.hasInstrumented()) {
+                splitMethods.addAndGet(instrumentingVisitor.getSplitMethods());
+                uncheckedCalls.addAndGet(instrumentingVisitor.getUncheckedCalls());
+                final byte[] instrumentedBytes = writer.toByteArray();
+                try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+                    fileOutputStream.write(instrumentedBytes);
                 }
+                manifest.update(file, instrumentedBytes);
+                return true;
             }
         }
+        manifest.update(file, classBytes);
         return false;
     }
 
+    private void logSizeBudgetDecisions(@NotNull final List<SizeBudget.Decision> decisions) {
+        for (final SizeBudget.Decision decision : decisions) {
+            if (decision.isWarning()) {
+                logger.warn("Size budget: " + decision.getMessage());
+            } else {
+                logger.info("Size budget: " + decision.getMessage());
+            }
+        }
+        sizeBudgetMethods.addAndGet(decisions.size());
+    }
+
     /**
      * @return the flags for class writer
      */
     private static int getAsmClassWriterFlags(final int version) {
-        return (AsmUtils.asmOpcodeToJavaVersion(version) >= AsmUtils.JAVA_VERSION_6) ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
-    }
-
-    private static int getClassFileVersion(@NotNull final ClassReader reader) {
-        final int[] classFileVersion = new int[1];
-        reader.accept(new ClassVisitor(Opcodes.ASM5) {
-            public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
-                classFileVersion[0] = version;
-            }
-        }, NO_FLAGS);
-        return classFileVersion[0];
+        return AsmUtils.javaVersionHasStackMapFrames(version) ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
     }
 }
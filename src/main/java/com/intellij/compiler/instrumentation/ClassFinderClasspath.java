@@ -18,28 +18,58 @@ package com.intellij.compiler.instrumentation;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import se.eris.asm.ClassInfo;
+import se.eris.asm.ClassInfoVisitor;
 import se.eris.notnull.instrumentation.Resource;
 
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 class ClassFinderClasspath {
     private static final String FILE_PROTOCOL = "file";
+    private static final String CLASS_RESOURCE_EXTENSION = ".class";
 
     private final Stack<URL> myUrls = new Stack<>();
     private final List<Loader> myLoaders = new ArrayList<>();
     private final Map<URL, Loader> myLoadersMap = new HashMap<>();
+    @NotNull
+    private final InstrumentationSession session;
+    /**
+     * Class resource name -> first loader holding it, null if it could not be built.
+     */
+    @Nullable
+    private Map<String, Loader> myClassIndex;
+    private boolean myClassIndexBuilt;
 
     ClassFinderClasspath(final URL[] urls) {
+        this(urls, InstrumentationSession.create(null));
+    }
+
+    /**
+     * @param session where class info is looked up and kept, possibly shared with other class finders.
+     */
+    ClassFinderClasspath(final URL[] urls, @NotNull final InstrumentationSession session) {
         if (urls.length > 0) {
             for (int i = urls.length - 1; i >= 0; i--) {
                 myUrls.push(urls[i]);
             }
         }
+        this.session = session;
     }
 
     private static String unescapePercentSequences(final String s) {
@@ -113,6 +143,133 @@ class ClassFinderClasspath {
         return null;
     }
 
+    /**
+     * @return the class info of the first class with the given resource name on the classpath, or if there is none
+     * from the system class loader, null if not found.
+     */
+    @Nullable
+    ClassInfo getClassInfo(@NotNull final String resourceName) throws IOException {
+        final Map<String, Loader> classIndex = getClassIndex();
+        if (classIndex != null && resourceName.endsWith(CLASS_RESOURCE_EXTENSION)) {
+            final Loader loader = classIndex.get(resourceName);
+            final ClassInfo classInfo = (loader == null) ? null : loader.getClassInfo(resourceName);
+            return (classInfo != null) ? classInfo : getSystemClassInfo(resourceName);
+        }
+        int i = 0;
+        for (Loader loader; (loader = getLoader(i)) != null; i++) {
+            final ClassInfo classInfo = loader.getClassInfo(resourceName);
+            if (classInfo != null) {
+                return classInfo;
+            }
+        }
+        return getSystemClassInfo(resourceName);
+    }
+
+    @Nullable
+    private synchronized Map<String, Loader> getClassIndex() {
+        if (!myClassIndexBuilt) {
+            myClassIndex = buildClassIndex();
+            myClassIndexBuilt = true;
+        }
+        return myClassIndex;
+    }
+
+    /**
+     * Lists the classes of all loaders in parallel and keeps the first loader for each class, so a lookup finds the
+     * same class as probing the loaders in classpath order would.
+     *
+     * @return the index, null if any loader could not be listed.
+     */
+    @Nullable
+    private Map<String, Loader> buildClassIndex() {
+        final List<Loader> loaders = new ArrayList<>();
+        for (Loader loader; (loader = getLoader(loaders.size())) != null; ) {
+            loaders.add(loader);
+        }
+        if (loaders.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(loaders.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            final List<Future<Collection<String>>> classNames = new ArrayList<>(loaders.size());
+            for (final Loader loader : loaders) {
+                classNames.add(executor.submit(new Callable<Collection<String>>() {
+                    @Override
+                    public Collection<String> call() throws IOException {
+                        return loader.getClassNames();
+                    }
+                }));
+            }
+            final Map<String, Loader> index = new HashMap<>();
+            for (int i = 0; i < loaders.size(); i++) {
+                for (final String name : classNames.get(i).get()) {
+                    if (!index.containsKey(name)) {
+                        index.put(name, loaders.get(i));
+                    }
+                }
+            }
+            return index;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Nullable
+    private ClassInfo getSystemClassInfo(@NotNull final String resourceName) throws IOException {
+        final ClassInfoCache systemCache = session.getSystemCache();
+        final ClassInfo cached = systemCache.get(resourceName);
+        if (cached != null) {
+            return cached;
+        }
+        final InputStream is = ClassLoader.getSystemResourceAsStream(resourceName);
+        if (is == null) {
+            return null;
+        }
+        try {
+            final ClassInfo classInfo = readClassInfo(is);
+            systemCache.put(resourceName, classInfo);
+            return classInfo;
+        } finally {
+            is.close();
+        }
+    }
+
+    @NotNull
+    private static ClassInfo readClassInfo(@NotNull final InputStream is) throws IOException {
+        final ClassReader reader = new ClassReader(is);
+        final ClassInfoVisitor visitor = new ClassInfoVisitor();
+        reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return visitor.getClassInfo();
+    }
+
+    /**
+     * Closes all opened jars (saving the class info is up to the owner of the session).
+     *
+     * @throws IOException the first failure, after all loaders have been closed.
+     */
+    void close() throws IOException {
+        final List<Loader> loaders;
+        synchronized (this) {
+            loaders = new ArrayList<>(myLoaders);
+        }
+        IOException failure = null;
+        for (final Loader loader : loaders) {
+            try {
+                loader.close();
+            } catch (final IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     @Nullable
     private synchronized Loader getLoader(final int i) {
         while (myLoaders.size() < (i + 1)) {
@@ -158,7 +315,7 @@ class ClassFinderClasspath {
         Loader loader = null;
         if ((s != null) && new File(s).isDirectory()) {
             if (FILE_PROTOCOL.equals(url.getProtocol())) {
-                loader = new FileLoader(url);
+                loader = new FileLoader(url, session);
             }
         } else {
             loader = new JarLoader(url);
@@ -184,13 +341,39 @@ class ClassFinderClasspath {
 
         public abstract Resource getResource(final String name);
 
+        @Nullable
+        ClassInfo getClassInfo(@NotNull final String name) throws IOException {
+            final Resource resource = getResource(name);
+            final InputStream is = (resource == null) ? null : resource.getInputStream();
+            if (is == null) {
+                return null;
+            }
+            try {
+                return readClassInfo(is);
+            } finally {
+                is.close();
+            }
+        }
+
+        /**
+         * @return the resource names of all classes this loader holds.
+         */
+        @NotNull
+        abstract Collection<String> getClassNames() throws IOException;
+
+        void close() throws IOException {
+        }
+
     }
 
     private static class FileLoader extends Loader {
         private final File rootDir;
+        @NotNull
+        private final InstrumentationSession session;
 
-        FileLoader(final URL url) {
+        FileLoader(final URL url, @NotNull final InstrumentationSession session) {
             super(url);
+            this.session = session;
             if (!FILE_PROTOCOL.equals(url.getProtocol())) {
                 throw new IllegalArgumentException(this.getClass().getSimpleName() + " requires the " + FILE_PROTOCOL + " protocol. (url: " + url + ")");
             } else {
@@ -218,6 +401,42 @@ class ClassFinderClasspath {
             return null;
         }
 
+        @NotNull
+        @Override
+        Collection<String> getClassNames() throws IOException {
+            final Path root = rootDir.toPath();
+            final List<String> names = new ArrayList<>();
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    final String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (name.endsWith(CLASS_RESOURCE_EXTENSION)) {
+                        names.add(name);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return names;
+        }
+
+        /**
+         * Class files are shared through the session as long as they are unchanged.
+         */
+        @Nullable
+        @Override
+        ClassInfo getClassInfo(@NotNull final String name) throws IOException {
+            final File file = new File(rootDir, name.replace('/', File.separatorChar));
+            final ClassInfo cached = session.getClassFileInfo(file);
+            if (cached != null) {
+                return cached;
+            }
+            final ClassInfo classInfo = super.getClassInfo(name);
+            if (classInfo != null) {
+                session.putClassFileInfo(file, classInfo);
+            }
+            return classInfo;
+        }
+
         private static class FileResource extends Resource {
             private final File file;
 
@@ -243,6 +462,7 @@ class ClassFinderClasspath {
     private class JarLoader extends Loader {
         private final URL myURL;
         private ZipFile myZipFile;
+        private ClassInfoCache myCache;
 
         JarLoader(final URL url) throws IOException {
             super(new URL(JAR_PROTOCOL, "", -1, url + "!/"));
@@ -250,7 +470,7 @@ class ClassFinderClasspath {
         }
 
         @Nullable
-        private ZipFile acquireZipFile() throws IOException {
+        private synchronized ZipFile acquireZipFile() throws IOException {
             ZipFile zipFile = myZipFile;
             if (zipFile == null) {
                 zipFile = doGetZipFile();
@@ -273,6 +493,90 @@ class ClassFinderClasspath {
             return null;
         }
 
+        /**
+         * @return the class info cache of the jar, with the names of all its classes, null if not cached.
+         */
+        @Nullable
+        private synchronized ClassInfoCache acquireCache() throws IOException {
+            if (myCache == null && FILE_PROTOCOL.equals(myURL.getProtocol())) {
+                final File jar = new File(unescapePercentSequences(myURL.getFile().replace('/', File.separatorChar)));
+                if (jar.isFile()) {
+                    final ClassInfoCache cache = session.getJarCache(jar);
+                    if (!cache.hasEntryNames()) {
+                        final ZipFile zipFile = acquireZipFile();
+                        if (zipFile == null) {
+                            return null;
+                        }
+                        cache.setEntryNames(getClassEntryNames(zipFile));
+                    }
+                    myCache = cache;
+                }
+            }
+            return myCache;
+        }
+
+        @NotNull
+        private List<String> getClassEntryNames(@NotNull final ZipFile zipFile) {
+            final List<String> names = new ArrayList<>();
+            for (final Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements(); ) {
+                final String name = entries.nextElement().getName();
+                if (name.endsWith(CLASS_RESOURCE_EXTENSION)) {
+                    names.add(name);
+                }
+            }
+            return names;
+        }
+
+        /**
+         * Unreadable jars hold no classes, the same as for {@link #getResource(String)}.
+         */
+        @NotNull
+        @Override
+        Collection<String> getClassNames() {
+            try {
+                final ClassInfoCache cache = acquireCache();
+                if (cache != null) {
+                    return cache.getEntryNames();
+                }
+                final ZipFile zipFile = acquireZipFile();
+                return (zipFile == null) ? Collections.<String>emptyList() : getClassEntryNames(zipFile);
+            } catch (final IOException e) {
+                return Collections.emptyList();
+            }
+        }
+
+        @Nullable
+        @Override
+        ClassInfo getClassInfo(@NotNull final String name) throws IOException {
+            final ClassInfoCache cache = acquireCache();
+            if (cache == null) {
+                return super.getClassInfo(name);
+            }
+            if (!cache.mayContain(name)) {
+                return null;
+            }
+            ClassInfo classInfo = cache.get(name);
+            if (classInfo == null) {
+                classInfo = super.getClassInfo(name);
+                if (classInfo != null) {
+                    cache.put(name, classInfo);
+                }
+            }
+            return classInfo;
+        }
+
+        @Override
+        void close() throws IOException {
+            final ZipFile zipFile;
+            synchronized (this) {
+                zipFile = myZipFile;
+                myZipFile = null;
+            }
+            if (zipFile != null) {
+                zipFile.close();
+            }
+        }
+
         @Nullable
         public Resource getResource(final String name) {
             try {
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.eris.asm.ClassInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Persistent cache of the {@link ClassInfo} of the classes in one classpath jar (or of the classes found through the
+ * system class loader), so that an unchanged dependency need not be opened again to compute stack map frames.
+ * <p>
+ * A jar cache is valid as long as the jar has the same path, size and modification time, or failing that the same
+ * content hash, as when the cache was saved. It also records the names of all classes in the jar, so classes that
+ * are not in the jar are rejected without opening it.
+ * <p>
+ * The cache file is memory mapped and records are decoded when first asked for. Without a cache directory the cache
+ * is only kept in memory. Thread safe.
+ */
+final class ClassInfoCache {
+
+    private static final int MAGIC = 0x4E4E4349;
+    private static final int FORMAT_VERSION = 1;
+    private static final String CACHE_FILE_EXTENSION = ".classinfo";
+    private static final String SYSTEM_KEY = "system:";
+    private static final int NO_RECORD = -1;
+    private static final int NULL_STRING = -1;
+
+    @Nullable
+    private final Path cacheFile;
+    @NotNull
+    private final String key;
+    @Nullable
+    private final File jar;
+    private final long size;
+    private final long lastModified;
+    @Nullable
+    private volatile String hash;
+    /**
+     * Names of all classes in the jar, null if not known (always for the system class loader).
+     */
+    @Nullable
+    private volatile Set<String> entryNames;
+    @NotNull
+    private final ByteBuffer mapped;
+    @NotNull
+    private final Map<String, Integer> mappedOffsets;
+    @NotNull
+    private final ConcurrentMap<String, ClassInfo> added = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private ClassInfoCache(@Nullable final Path cacheFile, @NotNull final String key, @Nullable final File jar, final long size, final long lastModified, @Nullable final String hash, @Nullable final Set<String> entryNames, @NotNull final ByteBuffer mapped, @NotNull final Map<String, Integer> mappedOffsets, final boolean dirty) {
+        this.cacheFile = cacheFile;
+        this.key = key;
+        this.jar = jar;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+        this.entryNames = entryNames;
+        this.mapped = mapped;
+        this.mappedOffsets = mappedOffsets;
+        this.dirty = dirty;
+    }
+
+    /**
+     * @return the cache for the jar, empty (without entry names) if there is no valid cache for it.
+     */
+    @NotNull
+    static ClassInfoCache forJar(@Nullable final Path cacheDirectory, @NotNull final File jar) {
+        final File absoluteJar = jar.getAbsoluteFile();
+        return load(cacheDirectory, absoluteJar.getPath(), absoluteJar, absoluteJar.length(), absoluteJar.lastModified());
+    }
+
+    /**
+     * @return the cache for classes found through the system class loader of the running JVM.
+     */
+    @NotNull
+    static ClassInfoCache forSystem(@Nullable final Path cacheDirectory) {
+        final String key = SYSTEM_KEY + System.getProperty("java.home") + ' ' + System.getProperty("java.vm.version");
+        return load(cacheDirectory, key, null, 0, 0);
+    }
+
+    @NotNull
+    private static ClassInfoCache load(@Nullable final Path cacheDirectory, @NotNull final String key, @Nullable final File jar, final long size, final long lastModified) {
+        final Path cacheFile = (cacheDirectory == null) ? null : cacheDirectory.resolve(sha1(key.getBytes(StandardCharsets.UTF_8)) + CACHE_FILE_EXTENSION);
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.getInt() == MAGIC && buffer.getInt() == FORMAT_VERSION && key.equals(getString(buffer))) {
+                    final long cachedSize = buffer.getLong();
+                    final long cachedLastModified = buffer.getLong();
+                    final String cachedHash = getString(buffer);
+                    final boolean sameStat = cachedSize == size && cachedLastModified == lastModified;
+                    if (sameStat || (jar != null && cachedSize == size && hashJar(jar).equals(cachedHash))) {
+                        return read(cacheFile, key, jar, size, lastModified, cachedHash, buffer, !sameStat);
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                // unreadable or stale cache, start over
+            }
+        }
+        return new ClassInfoCache(cacheFile, key, jar, size, lastModified, null, null, ByteBuffer.allocate(0), Collections.<String, Integer>emptyMap(), false);
+    }
+
+    @NotNull
+    private static ClassInfoCache read(@NotNull final Path cacheFile, @NotNull final String key, @Nullable final File jar, final long size, final long lastModified, @Nullable final String hash, @NotNull final ByteBuffer buffer, final boolean dirty) {
+        final boolean hasEntryNames = buffer.get() != 0;
+        final int count = buffer.getInt();
+        final Set<String> entryNames = hasEntryNames ? new HashSet<String>(count * 2) : null;
+        final Map<String, Integer> offsets = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            final String name = getString(buffer);
+            if (entryNames != null) {
+                entryNames.add(name);
+            }
+            if (buffer.get() != 0) {
+                offsets.put(name, buffer.position());
+                skipClassInfo(buffer);
+            }
+        }
+        return new ClassInfoCache(cacheFile, key, jar, size, lastModified, hash, entryNames, buffer, offsets, dirty);
+    }
+
+    /**
+     * @return true if the cache knows which classes are in the jar.
+     */
+    boolean hasEntryNames() {
+        return entryNames != null;
+    }
+
+    /**
+     * Records the names of all classes in the jar.
+     */
+    void setEntryNames(@NotNull final Collection<String> names) {
+        entryNames = Collections.unmodifiableSet(new HashSet<>(names));
+        dirty = true;
+    }
+
+    /**
+     * @return the names of all classes in the jar, empty if not known.
+     */
+    @NotNull
+    Set<String> getEntryNames() {
+        final Set<String> names = entryNames;
+        return (names == null) ? Collections.<String>emptySet() : names;
+    }
+
+    /**
+     * @return false if the class is known not to be in the jar.
+     */
+    boolean mayContain(@NotNull final String resourceName) {
+        final Set<String> names = entryNames;
+        return names == null || names.contains(resourceName);
+    }
+
+    @Nullable
+    ClassInfo get(@NotNull final String resourceName) {
+        final ClassInfo classInfo = added.get(resourceName);
+        if (classInfo != null) {
+            return classInfo;
+        }
+        final Integer offset = mappedOffsets.get(resourceName);
+        if (offset == null) {
+            return null;
+        }
+        final ByteBuffer buffer = mapped.duplicate();
+        buffer.position(offset);
+        return getClassInfo(buffer);
+    }
+
+    void put(@NotNull final String resourceName, @NotNull final ClassInfo classInfo) {
+        if (added.putIfAbsent(resourceName, classInfo) == null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Saves the cache if anything was added to it. The file is replaced atomically so concurrent builds sharing the
+     * cache directory never see a partially written cache.
+     */
+    void save() throws IOException {
+        if (!dirty || cacheFile == null) {
+            return;
+        }
+        // cleared first so that entries added while saving mark the cache dirty again
+        dirty = false;
+        try {
+            write(cacheFile);
+        } catch (final IOException | RuntimeException e) {
+            dirty = true;
+            throw e;
+        }
+    }
+
+    private void write(@NotNull final Path cacheFile) throws IOException {
+        final String contentHash = (jar == null) ? "" : getHash(jar);
+        final Map<String, ClassInfo> records = new HashMap<>(added);
+        for (final String name : mappedOffsets.keySet()) {
+            if (!records.containsKey(name)) {
+                records.put(name, get(name));
+            }
+        }
+        final Set<String> names = entryNames;
+        final Collection<String> allNames = (names == null) ? records.keySet() : names;
+
+        final Path directory = cacheFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path temporaryFile = Files.createTempFile(directory, cacheFile.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            putString(out, key);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            putString(out, contentHash);
+            out.writeBoolean(names != null);
+            out.writeInt(allNames.size());
+            for (final String name : allNames) {
+                putString(out, name);
+                final ClassInfo classInfo = records.get(name);
+                out.writeBoolean(classInfo != null);
+                if (classInfo != null) {
+                    putClassInfo(out, classInfo);
+                }
+            }
+        }
+        Files.move(temporaryFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @NotNull
+    private String getHash(@NotNull final File jar) throws IOException {
+        String contentHash = hash;
+        if (contentHash == null) {
+            contentHash = hashJar(jar);
+            hash = contentHash;
+        }
+        return contentHash;
+    }
+
+    private static void putClassInfo(@NotNull final DataOutputStream out, @NotNull final ClassInfo classInfo) throws IOException {
+        out.writeInt(classInfo.getVersion());
+        out.writeInt(classInfo.getAccess());
+        putString(out, classInfo.getName());
+        putString(out, classInfo.getSignature());
+        putString(out, classInfo.getSuperName());
+        final String[] interfaces = classInfo.getInterfaces();
+        out.writeShort(interfaces.length);
+        for (final String anInterface : interfaces) {
+            putString(out, anInterface);
+        }
+    }
+
+    @NotNull
+    private static ClassInfo getClassInfo(@NotNull final ByteBuffer buffer) {
+        final int version = buffer.getInt();
+        final int access = buffer.getInt();
+        final String name = getString(buffer);
+        final String signature = getString(buffer);
+        final String superName = getString(buffer);
+        final String[] interfaces = new String[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = getString(buffer);
+        }
+        //noinspection ConstantConditions signature is null for non generic classes
+        return new ClassInfo(version, access, name, signature, superName, interfaces);
+    }
+
+    private static void skipClassInfo(@NotNull final ByteBuffer buffer) {
+        buffer.position(buffer.position() + 8);
+        for (int i = 0; i < 3; i++) {
+            skipString(buffer);
+        }
+        final int interfaces = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < interfaces; i++) {
+            skipString(buffer);
+        }
+    }
+
+    private static void putString(@NotNull final DataOutputStream out, @Nullable final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String getString(@NotNull final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(@NotNull final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length != NULL_STRING) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    @NotNull
+    private static String hashJar(@NotNull final File jar) throws IOException {
+        final MessageDigest digest = getSha1();
+        try (InputStream in = Files.newInputStream(jar.toPath())) {
+            final byte[] buffer = new byte[64 * 1024];
+            for (int read; (read = in.read(buffer)) != -1; ) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    @NotNull
+    private static String sha1(@NotNull final byte[] content) {
+        return toHex(getSha1().digest(content));
+    }
+
+    @NotNull
+    private static MessageDigest getSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported by every Java platform", e);
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull final byte[] digest) {
+        final StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (final byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+}
@@ -16,15 +16,13 @@
 package com.intellij.compiler.instrumentation;
 
 import org.jetbrains.annotations.NotNull;
-import org.objectweb.asm.ClassReader;
-import se.eris.asm.ClassInfoVisitor;
-import se.eris.notnull.instrumentation.Resource;
+import se.eris.asm.ClassInfo;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Eugene Zhuravlev
@@ -32,14 +30,25 @@ import java.util.Map;
  */
 public class InstrumentationClassFinder {
     private static final String CLASS_RESOURCE_EXTENSION = ".class";
+    private static final int MAX_COMMON_SUPER_CLASSES = 10000;
 
     @NotNull
-    private final Map<String, PseudoClass> myLoaded = new HashMap<>(); // className -> class object
+    private final ConcurrentMap<String, PseudoClass> myLoaded = new ConcurrentHashMap<>(); // className -> class object
     @NotNull
     private final ClassFinderClasspath classpath;
+    @NotNull
+    private final ConcurrentMap<String, String> commonSuperClasses = new ConcurrentHashMap<>(); // "type1 type2" -> common super class
+    private final AtomicInteger commonSuperClassCount = new AtomicInteger();
 
     public InstrumentationClassFinder(final URL[] cp) {
-        classpath = new ClassFinderClasspath(cp);
+        this(cp, InstrumentationSession.create(null));
+    }
+
+    /**
+     * @param session where class info of the classpath is kept, possibly shared with other class finders.
+     */
+    public InstrumentationClassFinder(final URL[] cp, @NotNull final InstrumentationSession session) {
+        classpath = new ClassFinderClasspath(cp, session);
     }
 
     @NotNull
@@ -50,36 +59,61 @@ public class InstrumentationClassFinder {
             return aClass;
         }
 
-        final String resourceName = internalName + CLASS_RESOURCE_EXTENSION;
-        // look into classpath
-        final Resource resource = classpath.getResource(resourceName);
-        final InputStream is;
-        if (resource == null) {
-            is = ClassLoader.getSystemResourceAsStream(resourceName);
-        } else {
-            is = resource.getInputStream();
-        }
-        if (is == null) {
+        // look into classpath, then the system class loader
+        final ClassInfo classInfo = classpath.getClassInfo(internalName + CLASS_RESOURCE_EXTENSION);
+        if (classInfo == null) {
             throw new ClassNotFoundException("Class not found: " + internalName);
         }
 
-        try {
-            final PseudoClass result = loadPseudoClass(is);
-            myLoaded.put(internalName, result);
-            return result;
-        } finally {
-            is.close();
-        }
+        final PseudoClass result = new PseudoClass(this, classInfo);
+        final PseudoClass concurrentlyLoaded = myLoaded.putIfAbsent(internalName, result);
+        return (concurrentlyLoaded == null) ? result : concurrentlyLoaded;
     }
 
+    /**
+     * The results are shared by all classes instrumented with this finder. At most
+     * {@value #MAX_COMMON_SUPER_CLASSES} are kept, later ones are computed every time.
+     *
+     * @return the internal name of the closest common super class of the two types.
+     */
     @NotNull
-    private PseudoClass loadPseudoClass(final InputStream is) throws IOException {
-        final ClassReader reader = new ClassReader(is);
-        final ClassInfoVisitor visitor = new ClassInfoVisitor();
+    String getCommonSuperClass(@NotNull final String type1, @NotNull final String type2) throws IOException, ClassNotFoundException {
+        final String key = type1 + ' ' + type2;
+        final String cached = commonSuperClasses.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final String commonSuperClass = computeCommonSuperClass(loadClass(type1), loadClass(type2));
+        if (commonSuperClassCount.get() < MAX_COMMON_SUPER_CLASSES && commonSuperClasses.putIfAbsent(key, commonSuperClass) == null) {
+            commonSuperClassCount.incrementAndGet();
+        }
+        return commonSuperClass;
+    }
 
-        reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    @NotNull
+    private static String computeCommonSuperClass(@NotNull final PseudoClass cls1, @NotNull final PseudoClass cls2) throws IOException, ClassNotFoundException {
+        if (cls1.isAssignableFrom(cls2)) {
+            return cls1.getName();
+        }
+        if (cls2.isAssignableFrom(cls1)) {
+            return cls2.getName();
+        }
+        if (cls1.isInterface() || cls2.isInterface()) {
+            return PseudoClass.JAVA_LANG_OBJECT;
+        } else {
+            PseudoClass pseudoClass = cls1;
+            do {
+                pseudoClass = pseudoClass.getSuperClass();
+            } while (!pseudoClass.isAssignableFrom(cls2));
+            return pseudoClass.getName();
+        }
+    }
 
-        return new PseudoClass(this, visitor.getClassInfo());
+    /**
+     * Releases the opened classpath jars.
+     */
+    public void close() throws IOException {
+        classpath.close();
     }
 
 }
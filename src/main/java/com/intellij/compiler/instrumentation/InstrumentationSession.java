@@ -0,0 +1,168 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.eris.asm.ClassInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Class info shared by all class finders of a session, ie all modules and goals of a reactor build. Jars are keyed
+ * by path, size and modification time, class files in classpath directories by the same for each file, so finders
+ * with different classpaths only share what is identical.
+ * <p>
+ * Thread safe.
+ */
+public final class InstrumentationSession {
+
+    private static final Map<Object, InstrumentationSession> SHARED = new WeakHashMap<>();
+
+    @Nullable
+    private final Path cacheDirectory;
+    @NotNull
+    private final ConcurrentMap<FileIdentity, ClassInfoCache> jarCaches = new ConcurrentHashMap<>();
+    @NotNull
+    private final ConcurrentMap<FileIdentity, ClassInfo> classFiles = new ConcurrentHashMap<>();
+    @NotNull
+    private final ClassInfoCache systemCache;
+
+    private InstrumentationSession(@Nullable final Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        systemCache = ClassInfoCache.forSystem(cacheDirectory);
+    }
+
+    /**
+     * @param cacheDirectory where to keep the persistent {@link ClassInfoCache}s, null to only keep them in memory.
+     * @return a new session, not shared with anyone.
+     */
+    @NotNull
+    public static InstrumentationSession create(@Nullable final Path cacheDirectory) {
+        return new InstrumentationSession(cacheDirectory);
+    }
+
+    /**
+     * @param key identifies the session (held weakly), for instance the Maven execution request.
+     * @return the session shared by everyone using the same key (and cache directory).
+     */
+    @NotNull
+    public static InstrumentationSession shared(@NotNull final Object key, @Nullable final Path cacheDirectory) {
+        synchronized (SHARED) {
+            final InstrumentationSession session = SHARED.get(key);
+            if (session == null) {
+                final InstrumentationSession created = create(cacheDirectory);
+                SHARED.put(key, created);
+                return created;
+            }
+            return isSame(session.cacheDirectory, cacheDirectory) ? session : create(cacheDirectory);
+        }
+    }
+
+    private static boolean isSame(@Nullable final Path path1, @Nullable final Path path2) {
+        return (path1 == null) ? (path2 == null) : path1.equals(path2);
+    }
+
+    @NotNull
+    ClassInfoCache getJarCache(@NotNull final File jar) {
+        final FileIdentity identity = new FileIdentity(jar);
+        final ClassInfoCache cache = jarCaches.get(identity);
+        if (cache != null) {
+            return cache;
+        }
+        final ClassInfoCache loaded = ClassInfoCache.forJar(cacheDirectory, jar);
+        final ClassInfoCache concurrentlyLoaded = jarCaches.putIfAbsent(identity, loaded);
+        return (concurrentlyLoaded == null) ? loaded : concurrentlyLoaded;
+    }
+
+    @NotNull
+    ClassInfoCache getSystemCache() {
+        return systemCache;
+    }
+
+    @Nullable
+    ClassInfo getClassFileInfo(@NotNull final File classFile) {
+        return classFiles.get(new FileIdentity(classFile));
+    }
+
+    void putClassFileInfo(@NotNull final File classFile, @NotNull final ClassInfo classInfo) {
+        classFiles.put(new FileIdentity(classFile), classInfo);
+    }
+
+    /**
+     * Saves the persistent caches that have changed.
+     *
+     * @throws IOException the first failure, after trying to save all caches.
+     */
+    public void save() throws IOException {
+        IOException failure = null;
+        for (final ClassInfoCache cache : jarCaches.values()) {
+            try {
+                cache.save();
+            } catch (final IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        try {
+            systemCache.save();
+        } catch (final IOException e) {
+            failure = (failure == null) ? e : failure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final class FileIdentity {
+        @NotNull
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private FileIdentity(@NotNull final File file) {
+            path = file.getAbsolutePath();
+            size = file.length();
+            lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final FileIdentity that = (FileIdentity) o;
+            return size == that.size && lastModified == that.lastModified && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + (int) (size ^ (size >>> 32));
+            result = 31 * result + (int) (lastModified ^ (lastModified >>> 32));
+            return result;
+        }
+    }
+
+}
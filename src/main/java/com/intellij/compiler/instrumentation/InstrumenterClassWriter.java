@@ -31,23 +31,7 @@ public class InstrumenterClassWriter extends ClassWriter {
 
     protected String getCommonSuperClass(final String type1, final String type2) {
         try {
-            final PseudoClass cls1 = myFinder.loadClass(type1);
-            final PseudoClass cls2 = myFinder.loadClass(type2);
-            if (cls1.isAssignableFrom(cls2)) {
-                return cls1.getName();
-            }
-            if (cls2.isAssignableFrom(cls1)) {
-                return cls2.getName();
-            }
-            if (cls1.isInterface() || cls2.isInterface()) {
-                return PseudoClass.JAVA_LANG_OBJECT;
-            } else {
-                PseudoClass pseudoClass = cls1;
-                do {
-                    pseudoClass = pseudoClass.getSuperClass();
-                } while (!pseudoClass.isAssignableFrom(cls2));
-                return pseudoClass.getName();
-            }
+            return myFinder.getCommonSuperClass(type1, type2);
         } catch (final Exception e) {
             throw new RuntimeException(e.toString(), e);
         }
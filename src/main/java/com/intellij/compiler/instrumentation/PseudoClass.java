@@ -20,6 +20,9 @@ import org.jetbrains.annotations.Nullable;
 import se.eris.asm.ClassInfo;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * @author Eugene Zhuravlev
@@ -34,6 +37,11 @@ final class PseudoClass {
     private final InstrumentationClassFinder instrumentationClassFinder;
     @NotNull
     private final ClassInfo classInfo;
+    /**
+     * Names of all super classes and (transitively) implemented interfaces, computed when first needed.
+     */
+    @Nullable
+    private volatile Set<String> ancestors;
 
     PseudoClass(@NotNull final InstrumentationClassFinder instrumentationClassFinder, @NotNull final ClassInfo classInfo) {
         this.instrumentationClassFinder = instrumentationClassFinder;
@@ -70,36 +78,35 @@ final class PseudoClass {
         return result;
     }
 
-    private boolean isSubclassOf(@NotNull final PseudoClass pseudoClass) throws IOException, ClassNotFoundException {
-        for (PseudoClass c = this; c != null; c = c.getSuperClass()) {
-            final PseudoClass superClass = c.getSuperClass();
-
-            if ((superClass != null) && superClass.equals(pseudoClass)) {
-                return true;
+    /**
+     * Built from the (cached) ancestors of the direct super types, so each type of an interface diamond is only
+     * visited once.
+     */
+    @NotNull
+    private Set<String> getAncestors() throws IOException, ClassNotFoundException {
+        Set<String> result = ancestors;
+        if (result == null) {
+            final Set<String> collected = new HashSet<>();
+            final PseudoClass superClass = getSuperClass();
+            if (superClass != null) {
+                collected.add(superClass.getName());
+                collected.addAll(superClass.getAncestors());
             }
-        }
-        return false;
-    }
-
-    private boolean isImplementedBy(final PseudoClass pseudoClass) throws IOException, ClassNotFoundException {
-        for (PseudoClass thisClassChain = this; thisClassChain != null; thisClassChain = thisClassChain.getSuperClass()) {
-            for (final PseudoClass implementedInterface : thisClassChain.getImplementedInterfaces()) {
-                if (implementedInterface.equals(pseudoClass) || implementedInterface.isImplementedBy(pseudoClass)) {
-                    return true;
-                }
+            for (final PseudoClass implementedInterface : getImplementedInterfaces()) {
+                collected.add(implementedInterface.getName());
+                collected.addAll(implementedInterface.getAncestors());
             }
+            result = Collections.unmodifiableSet(collected);
+            ancestors = result;
         }
-        return false;
+        return result;
     }
 
     boolean isAssignableFrom(final PseudoClass pseudoClass) throws IOException, ClassNotFoundException {
         if (this.equals(pseudoClass)) {
             return true;
         }
-        if (pseudoClass.isSubclassOf(this)) {
-            return true;
-        }
-        if (pseudoClass.isImplementedBy(this)) {
+        if (pseudoClass.getAncestors().contains(getName())) {
             return true;
         }
         return this.isObject() && pseudoClass.isInterface();
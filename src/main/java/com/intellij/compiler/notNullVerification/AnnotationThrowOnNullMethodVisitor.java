@@ -25,8 +25,8 @@ class AnnotationThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
 
     private final Set<String> notNullAnnotations;
 
-    AnnotationThrowOnNullMethodVisitor(@Nullable final MethodVisitor methodVisitor, @NotNull final Type[] argumentTypes, @NotNull final Type returnType, final int access, @NotNull final String methodName, @NotNull final String className, @NotNull final Set<String> notNullAnnotations, boolean isAnonymous) {
-        super(Opcodes.ASM5, methodVisitor, argumentTypes, returnType, access, methodName, className, false, isAnonymous);
+    AnnotationThrowOnNullMethodVisitor(@Nullable final MethodVisitor methodVisitor, @NotNull final Type[] argumentTypes, @NotNull final Type returnType, final int access, @NotNull final String methodName, @NotNull final String className, @NotNull final Set<String> notNullAnnotations, boolean isAnonymous, @NotNull final CheckGeneration generation) {
+        super(Opcodes.ASM5, methodVisitor, argumentTypes, returnType, access, methodName, className, false, isAnonymous, generation);
         this.notNullAnnotations = notNullAnnotations;
     }
 
@@ -40,7 +40,7 @@ class AnnotationThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
         final AnnotationVisitor av = mv.visitParameterAnnotation(parameter, annotation, visible);
         if (isParameterReferenceType(parameter)) {
             if (isNotNullAnnotation(annotation)) {
-                notNullParams.add(parameter);
+                addNotNullParam(parameter);
             }
         } else if (annotation.equals(LJAVA_LANG_SYNTHETIC_ANNO)) {
             // See asm r1278 for what we do this,
@@ -67,8 +67,8 @@ class AnnotationThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
 
     @Override
     @NotNull
-    protected String getThrowMessage(int notNullParam) {
-        return "Argument " + getSourceCodeParameterNumber(notNullParam) + " for @NotNull parameter of " + className + "." + methodName + " must not be null";
+    protected String getParameterDescription() {
+        return "@NotNull";
     }
 
     /**
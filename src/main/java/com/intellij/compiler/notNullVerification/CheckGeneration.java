@@ -0,0 +1,337 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+import se.eris.asm.AsmUtils;
+import se.eris.notnull.CodeGenerationConfiguration;
+
+/**
+ * How the checks of a class are generated: the code generation configuration as it applies to the version and kind
+ * of the class file.
+ */
+final class CheckGeneration {
+
+    private final boolean emitFrames;
+    /**
+     * The synthetic helpers of the class, if it can have helpers and any check may throw through them.
+     */
+    @Nullable
+    private final NullCheckHelpers helpers;
+    private final boolean outlined;
+    private final boolean dynamic;
+    private final boolean guarded;
+    private final boolean compactMessages;
+    private final boolean nullnessAnalysis;
+    private final boolean callSiteAnalysis;
+    private final boolean dualEntryPoints;
+    private final boolean fused;
+    private final boolean coldThrows;
+    private final boolean sizeBudget;
+    @NotNull
+    private final NullCheckExceptions exceptions;
+
+    private CheckGeneration(@NotNull final Builder builder) {
+        this.exceptions = builder.exceptions;
+        this.emitFrames = builder.emitFrames;
+        this.helpers = builder.helpers;
+        this.outlined = builder.outlined;
+        this.dynamic = builder.dynamic;
+        this.guarded = builder.guarded;
+        this.compactMessages = builder.compactMessages;
+        this.nullnessAnalysis = builder.nullnessAnalysis;
+        this.callSiteAnalysis = builder.callSiteAnalysis;
+        this.dualEntryPoints = builder.dualEntryPoints;
+        this.fused = builder.fused;
+        this.coldThrows = builder.coldThrows;
+        this.sizeBudget = builder.sizeBudget;
+    }
+
+    /**
+     * @param compactMethods true if some methods of the class get compact checks whatever the configuration, see
+     *                       {@link #compact()}.
+     */
+    @NotNull
+    static CheckGeneration forClass(@NotNull final CodeGenerationConfiguration configuration, final int version, final int access, @NotNull final String className, final boolean compactMethods) {
+        final NullCheckExceptions exceptions = NullCheckExceptions.forConfiguration(configuration);
+        final boolean emitFrames = configuration.isPreserveFrames() && AsmUtils.javaVersionHasStackMapFrames(version);
+        // interfaces get inline, unguarded, checks, and no unchecked bodies: a static helper, field or body in an
+        // interface would be public
+        final boolean isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+        final boolean compactMessages = configuration.isCompactMessages() && !isInterface;
+        final boolean outlined = (configuration.isOutlineChecks() || compactMessages) && !isInterface;
+        // with a size budget, or hot methods to compact, methods may get compact checks
+        final NullCheckHelpers helpers = (outlined || configuration.isSizeBudget() || compactMethods) && !isInterface ? new NullCheckHelpers(className, exceptions) : null;
+        final boolean dynamic = configuration.isDynamicChecks() && AsmUtils.javaVersionSupportsInvokeDynamic(version);
+        final boolean guarded = configuration.isGuardedChecks() && !isInterface;
+        final boolean dualEntryPoints = configuration.isDualEntryPoints() && !isInterface;
+        final boolean fused = configuration.isFusedChecks() && !dynamic;
+        final boolean coldThrows = configuration.isColdThrows() && !dynamic;
+        return Builder.init(exceptions)
+                .emitFrames(emitFrames)
+                .helpers(helpers)
+                .outlined(outlined)
+                .dynamic(dynamic)
+                .guarded(guarded)
+                .compactMessages(compactMessages)
+                .nullnessAnalysis(configuration.isNullnessAnalysis())
+                .callSiteAnalysis(configuration.isCallSiteAnalysis())
+                .dualEntryPoints(dualEntryPoints)
+                .fused(fused)
+                .coldThrows(coldThrows)
+                .sizeBudget(configuration.isSizeBudget())
+                .build();
+    }
+
+    /**
+     * @return the smallest form of the checks: inline tests calling the helper that builds the message, or null if
+     * the class cannot have helpers or the checks are dynamic (which are about as small, and must stay switchable).
+     */
+    @Nullable
+    CheckGeneration compact() {
+        if (helpers == null || dynamic) {
+            return null;
+        }
+        return copy().outlined(true).dynamic(false).compactMessages(true).fused(false).coldThrows(false).build();
+    }
+
+    /**
+     * @return the same checks, with helpers that do not record the calls to them in the helpers of the class, for
+     * instrumenting a method only to measure it.
+     */
+    @NotNull
+    CheckGeneration forMeasuring() {
+        return copy().helpers(helpers == null ? null : helpers.copy()).build();
+    }
+
+    /**
+     * @return a builder with the settings of these checks.
+     */
+    @NotNull
+    private Builder copy() {
+        return Builder.init(exceptions)
+                .emitFrames(emitFrames)
+                .helpers(helpers)
+                .outlined(outlined)
+                .dynamic(dynamic)
+                .guarded(guarded)
+                .compactMessages(compactMessages)
+                .nullnessAnalysis(nullnessAnalysis)
+                .callSiteAnalysis(callSiteAnalysis)
+                .dualEntryPoints(dualEntryPoints)
+                .fused(fused)
+                .coldThrows(coldThrows)
+                .sizeBudget(sizeBudget);
+    }
+
+    /**
+     * @return how the exceptions of failed checks are created.
+     */
+    @NotNull
+    NullCheckExceptions getExceptions() {
+        return exceptions;
+    }
+
+    /**
+     * @return true if the stack map frames needed by the generated checks are to be emitted (when the existing frames
+     * are kept rather than recomputed).
+     */
+    boolean isEmitFrames() {
+        return emitFrames;
+    }
+
+    /**
+     * @return the synthetic helpers to throw through, or null to throw inline.
+     */
+    @Nullable
+    NullCheckHelpers getHelpers() {
+        return outlined ? helpers : null;
+    }
+
+    /**
+     * @return the synthetic helpers of the class, to record the existing ones and add those called, or null if the
+     * checks never throw through helpers.
+     */
+    @Nullable
+    NullCheckHelpers getClassHelpers() {
+        return helpers;
+    }
+
+    /**
+     * @return true if the checks are invokedynamic call sites that can be switched off at runtime.
+     */
+    boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * @return true if the checks are skipped when the {@link ChecksDisabledField} of the class is set.
+     */
+    boolean isGuarded() {
+        return guarded;
+    }
+
+    /**
+     * @return true if the checks pass only the method name and parameter number to a helper that builds the message
+     * (dynamic checks still take the full message as a bootstrap argument).
+     */
+    boolean isCompactMessages() {
+        return compactMessages;
+    }
+
+    /**
+     * @return true if the methods are run through the {@link NullnessAnalysis}, to leave out return value checks that
+     * cannot fail.
+     */
+    boolean isNullnessAnalysis() {
+        return nullnessAnalysis;
+    }
+
+    /**
+     * @return true if the {@link NullnessAnalysis} is used to leave out the parameter checks of private methods that
+     * are never passed null within the class.
+     */
+    boolean isCallSiteAnalysis() {
+        return callSiteAnalysis;
+    }
+
+    /**
+     * @return true if the methods that cannot be overridden are split into a checked entry point and an unchecked
+     * body, see {@link DualEntryPoints}.
+     */
+    boolean isDualEntryPoints() {
+        return dualEntryPoints;
+    }
+
+    /**
+     * @return true if the parameter checks only test the parameters, jumping to a single block at the end of the
+     * method that finds the null parameter and throws.
+     */
+    boolean isFused() {
+        return fused;
+    }
+
+    /**
+     * @return true if the code throwing the exceptions of failed checks is put after the code of the method, each
+     * check jumping to its own block there.
+     */
+    boolean isColdThrows() {
+        return coldThrows;
+    }
+
+    /**
+     * @return true if the checks of a method fall back to smaller forms, see {@link SizeBudget}.
+     */
+    boolean isSizeBudget() {
+        return sizeBudget;
+    }
+
+
+    static final class Builder {
+
+        static Builder init(@NotNull final NullCheckExceptions exceptions) {
+            return new Builder(exceptions);
+        }
+
+        @NotNull
+        private final NullCheckExceptions exceptions;
+        @Nullable
+        private NullCheckHelpers helpers = null;
+        private boolean emitFrames = false;
+        private boolean outlined = false;
+        private boolean dynamic = false;
+        private boolean guarded = false;
+        private boolean compactMessages = false;
+        private boolean nullnessAnalysis = false;
+        private boolean callSiteAnalysis = false;
+        private boolean dualEntryPoints = false;
+        private boolean fused = false;
+        private boolean coldThrows = false;
+        private boolean sizeBudget = false;
+
+        private Builder(@NotNull final NullCheckExceptions exceptions) {
+            this.exceptions = exceptions;
+        }
+
+        Builder helpers(@Nullable final NullCheckHelpers helpers) {
+            this.helpers = helpers;
+            return this;
+        }
+
+        Builder emitFrames(final boolean emitFrames) {
+            this.emitFrames = emitFrames;
+            return this;
+        }
+
+        Builder outlined(final boolean outlined) {
+            this.outlined = outlined;
+            return this;
+        }
+
+        Builder dynamic(final boolean dynamic) {
+            this.dynamic = dynamic;
+            return this;
+        }
+
+        Builder guarded(final boolean guarded) {
+            this.guarded = guarded;
+            return this;
+        }
+
+        Builder compactMessages(final boolean compactMessages) {
+            this.compactMessages = compactMessages;
+            return this;
+        }
+
+        Builder nullnessAnalysis(final boolean nullnessAnalysis) {
+            this.nullnessAnalysis = nullnessAnalysis;
+            return this;
+        }
+
+        Builder callSiteAnalysis(final boolean callSiteAnalysis) {
+            this.callSiteAnalysis = callSiteAnalysis;
+            return this;
+        }
+
+        Builder dualEntryPoints(final boolean dualEntryPoints) {
+            this.dualEntryPoints = dualEntryPoints;
+            return this;
+        }
+
+        Builder fused(final boolean fused) {
+            this.fused = fused;
+            return this;
+        }
+
+        Builder coldThrows(final boolean coldThrows) {
+            this.coldThrows = coldThrows;
+            return this;
+        }
+
+        Builder sizeBudget(final boolean sizeBudget) {
+            this.sizeBudget = sizeBudget;
+            return this;
+        }
+
+        CheckGeneration build() {
+            return new CheckGeneration(this);
+        }
+
+    }
+
+}
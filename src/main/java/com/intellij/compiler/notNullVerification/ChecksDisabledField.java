@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A synthetic static final boolean, like the {@code $assertionsDisabled} of javac, that the checks of the class are
+ * guarded by. It is initialized first in the static initializer from the system properties
+ * {@value #PROPERTY}.&lt;class name&gt;, {@value #PROPERTY}.&lt;package&gt; (for each enclosing package, innermost
+ * first) and {@value #PROPERTY}: the first one set decides, and checks are disabled if it is false.
+ * <p>
+ * With the checks disabled the JIT folds the guard away.
+ */
+final class ChecksDisabledField {
+
+    static final String NAME = "$$notNull$disabled";
+    static final String PROPERTY = "se.eris.notnull.checks";
+    private static final String DESCRIPTOR = "Z";
+    private static final String STATIC_INITIALIZER = "<clinit>";
+
+    private ChecksDisabledField() {
+    }
+
+    static boolean isStaticInitializer(@NotNull final String methodName) {
+        return STATIC_INITIALIZER.equals(methodName);
+    }
+
+    static void generateField(@NotNull final ClassVisitor cv) {
+        cv.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC, NAME, DESCRIPTOR, null, null).visitEnd();
+    }
+
+    /**
+     * Generates a static initializer that only initializes the field.
+     */
+    static void generateStaticInitializer(@NotNull final ClassVisitor cv, @NotNull final String className) {
+        final MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, STATIC_INITIALIZER, "()V", null, null);
+        mv.visitCode();
+        generateInitialization(mv, className);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates the nested System.getProperty(key, default) calls, from the class name outwards, and compares the
+     * result to "false".
+     */
+    static void generateInitialization(@NotNull final MethodVisitor mv, @NotNull final String className) {
+        final String name = className.replace('/', '.');
+        int levels = 0;
+        for (int end = name.length(); end > 0; end = name.lastIndexOf('.', end - 1)) {
+            mv.visitLdcInsn(PROPERTY + "." + name.substring(0, end));
+            levels++;
+        }
+        mv.visitLdcInsn(PROPERTY);
+        mv.visitLdcInsn("true");
+        for (int i = 0; i <= levels; i++) {
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "getProperty", "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;", false);
+        }
+        mv.visitLdcInsn("false");
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equalsIgnoreCase", "(Ljava/lang/String;)Z", false);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, className, NAME, DESCRIPTOR);
+    }
+
+    /**
+     * Generates a jump to the label if the checks are disabled.
+     */
+    static void generateGuard(@NotNull final MethodVisitor mv, @NotNull final String className, @NotNull final Label disabled) {
+        mv.visitFieldInsn(Opcodes.GETSTATIC, className, NAME, DESCRIPTOR);
+        mv.visitJumpInsn(Opcodes.IFNE, disabled);
+    }
+
+}
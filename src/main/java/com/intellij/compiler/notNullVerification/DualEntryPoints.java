@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import se.eris.notnull.Configuration;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The methods of the instrumented classes that are split into a checked entry point, keeping the name and
+ * descriptor of the method, and a synthetic body without the parameter checks. Calls within the instrumented classes
+ * that pass arguments known not to be null for all the checked parameters go to the body directly.
+ * <p>
+ * Only methods that cannot be overridden are split: constructors and static, private and final methods (and the
+ * methods of final classes). The body of a method is named as the method followed by {@value #BODY_SUFFIX}, the body
+ * of a constructor is a constructor taking an extra argument, null, of the class type.
+ * <p>
+ * Thread safe.
+ */
+public final class DualEntryPoints {
+
+    static final String BODY_SUFFIX = "$$notNull$unchecked";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    /**
+     * By class, the split methods (by name and descriptor) and their checked parameters.
+     */
+    private final Map<String, Map<String, BitSet>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the methods of a class that will be split when it is instrumented, or were split when it was instrumented
+     * before. Only the declarations of the class are read, not its code.
+     */
+    public void addClass(@NotNull final byte[] classBytes, @NotNull final Configuration configuration) {
+        final ClassReader classReader = new ClassReader(classBytes);
+        final NotNullInstrumenterClassVisitor visitor = new NotNullInstrumenterClassVisitor(new ClassNode(), configuration);
+        classReader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        final Map<String, BitSet> methods = visitor.getDualEntryPoints();
+        if (!methods.isEmpty()) {
+            classes.put(classReader.getClassName(), methods);
+        }
+    }
+
+    /**
+     * @return the checked parameters of the method, or null if it is not split.
+     */
+    @Nullable
+    BitSet getCheckedParameters(@NotNull final String owner, @NotNull final String name, @NotNull final String desc) {
+        final Map<String, BitSet> methods = classes.get(owner);
+        return methods == null ? null : methods.get(name + desc);
+    }
+
+    static boolean isConstructor(@NotNull final String name) {
+        return CONSTRUCTOR_NAME.equals(name);
+    }
+
+    @NotNull
+    static String getBodyName(@NotNull final String name) {
+        return isConstructor(name) ? name : name + BODY_SUFFIX;
+    }
+
+    @NotNull
+    static String getBodyDescriptor(@NotNull final String className, @NotNull final String name, @NotNull final String desc) {
+        if (!isConstructor(name)) {
+            return desc;
+        }
+        final Type[] argumentTypes = Type.getArgumentTypes(desc);
+        final Type[] bodyArgumentTypes = new Type[argumentTypes.length + 1];
+        System.arraycopy(argumentTypes, 0, bodyArgumentTypes, 0, argumentTypes.length);
+        bodyArgumentTypes[argumentTypes.length] = Type.getObjectType(className);
+        return Type.getMethodDescriptor(Type.VOID_TYPE, bodyArgumentTypes);
+    }
+
+}
@@ -31,8 +31,8 @@ class ImplicitThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
 
     private final Set<String> nullableAnnotations;
 
-    ImplicitThrowOnNullMethodVisitor(@Nullable final MethodVisitor methodVisitor, @NotNull final Type[] argumentTypes, @NotNull final Type returnType, final int access, @NotNull final String methodName, @NotNull final String className, @NotNull final Set<String> nullableAnnotations, final boolean isAnonymousClass) {
-        super(Opcodes.ASM5, methodVisitor, argumentTypes, returnType, access, methodName, className, true, isAnonymousClass);
+    ImplicitThrowOnNullMethodVisitor(@Nullable final MethodVisitor methodVisitor, @NotNull final Type[] argumentTypes, @NotNull final Type returnType, final int access, @NotNull final String methodName, @NotNull final String className, @NotNull final Set<String> nullableAnnotations, final boolean isAnonymousClass, @NotNull final CheckGeneration generation) {
+        super(Opcodes.ASM5, methodVisitor, argumentTypes, returnType, access, methodName, className, true, isAnonymousClass, generation);
         this.nullableAnnotations = nullableAnnotations;
         addImplicitNotNulls();
     }
@@ -41,7 +41,7 @@ class ImplicitThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
         int counter = 0;
         for (final Type argumentType : argumentTypes) {
             if (AsmUtils.isReferenceType(argumentType)) {
-                notNullParams.add(counter);
+                addNotNullParam(counter);
             }
             counter++;
         }
@@ -69,7 +69,7 @@ class ImplicitThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
     }
 
     private boolean setNullable(final int parameter) {
-        return notNullParams.remove((Integer) parameter);
+        return removeNotNullParam(parameter);
     }
 
     /**
@@ -89,8 +89,8 @@ class ImplicitThrowOnNullMethodVisitor extends ThrowOnNullMethodVisitor {
 
     @Override
     @NotNull
-    protected String getThrowMessage(final int parameterNumber) {
-        return "Argument " + getSourceCodeParameterNumber(parameterNumber) + " for implicit 'NotNull' parameter of " + className + "." + methodName + " must not be null";
+    protected String getParameterDescription() {
+        return "implicit 'NotNull'";
     }
 
     /**
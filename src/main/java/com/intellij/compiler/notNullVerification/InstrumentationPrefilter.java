@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import se.eris.asm.ConstantPool;
+import se.eris.lang.LangUtils;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ImplicitNotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rejects classes that cannot need instrumentation by looking only at their constant pool, before any ASM visitor
+ * or class writer is created. A class can only be instrumented if
+ * <ul>
+ * <li>it is annotated with {@link ImplicitNotNull},</li>
+ * <li>it is instrumented implicitly and has a method descriptor with a reference parameter or return type, or</li>
+ * <li>it references one of the configured NotNull annotations.</li>
+ * </ul>
+ * Thread safe.
+ */
+public class InstrumentationPrefilter {
+
+    private static final byte[] IMPLICIT_NOT_NULL = ConstantPool.encode(LangUtils.convertToJavaClassName(ImplicitNotNull.class.getName()));
+
+    @NotNull
+    private final Configuration configuration;
+    @NotNull
+    private final Collection<byte[]> notNullDescriptors = new ArrayList<>();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    public InstrumentationPrefilter(@NotNull final Configuration configuration) {
+        this.configuration = configuration;
+        notNullDescriptors.add(IMPLICIT_NOT_NULL);
+        for (final String annotation : configuration.getNotNullAnnotations()) {
+            notNullDescriptors.add(ConstantPool.encode(LangUtils.convertToJavaClassName(annotation)));
+        }
+    }
+
+    /**
+     * @return false if the class certainly does not need instrumentation.
+     */
+    public boolean mayNeedInstrumentation(@NotNull final byte[] classBytes) {
+        final ConstantPool constantPool;
+        try {
+            constantPool = ConstantPool.read(classBytes);
+        } catch (final IllegalArgumentException e) {
+            return true; // let ASM decide (and report) what is wrong with the class
+        }
+        if (isImplicit(constantPool) ? constantPool.containsReferenceMethodDescriptor() : constantPool.containsAnyUtf8(notNullDescriptors)) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private boolean isImplicit(@NotNull final ConstantPool constantPool) {
+        return configuration.isImplicitInstrumentation(constantPool.getClassName().replace('/', '.'));
+    }
+
+    /**
+     * @return the number of classes rejected so far.
+     */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+}
@@ -16,18 +16,37 @@
 package com.intellij.compiler.notNullVerification;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import se.eris.asm.AsmUtils;
 import se.eris.lang.LangUtils;
 import se.eris.notnull.Configuration;
+import se.eris.notnull.HotMethodPolicy;
 import se.eris.notnull.ImplicitNotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -37,35 +56,83 @@ import java.util.Set;
  */
 public class NotNullInstrumenterClassVisitor extends ClassVisitor {
 
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String IMPLICIT_NOT_NULL = LangUtils.convertToJavaClassName(ImplicitNotNull.class.getName());
+
     private final Set<String> notnull;
     private final Set<String> nullable;
     private final Collection<ThrowOnNullMethodVisitor> methodVisitors = new ArrayList<>();
+    /**
+     * With the nullness analysis, methods are visited into nodes and instrumented at the end of the class, when the
+     * methods that cannot return null and the arguments passed to the methods are known.
+     */
+    private final Map<MethodNode, ThrowOnNullMethodVisitor> analyzedMethods = new LinkedHashMap<>();
+    /**
+     * The methods of the class split into a checked entry point and an unchecked body, now or before, and their
+     * checked parameters.
+     */
+    private final Map<String, BitSet> splitMethods = new HashMap<>();
+    private final Set<MethodNode> methodsToSplit = new HashSet<>();
+    private int uncheckedCalls = 0;
+    private int hotMethods = 0;
+    @Nullable
+    private SizeBudget sizeBudget;
+    /**
+     * With a size budget, the methods that a fallback may leave without return value checks, or without any checks,
+     * which the nullness analysis must not trust.
+     */
+    private final Set<MethodNode> budgetUncheckedReturns = new HashSet<>();
+    private final Set<MethodNode> budgetUncheckedParameters = new HashSet<>();
 
     private String className;
+    /**
+     * The class name with dots (ie se.eris.Foo), as the configuration matches it.
+     */
+    private String javaClassName;
+    private int classAccess;
+    /**
+     * What the configuration decides for the whole class, once rather than for every method.
+     */
+    private boolean configuredImplicit;
+    private boolean hasHotMethods;
     private boolean isAnonymous = false;
     private boolean classAnnotatedImplicit = false;
+    private CheckGeneration generation;
+    private boolean hasChecksDisabledField = false;
+    private boolean hasStaticInitializer = false;
     @NotNull
     private final Configuration configuration;
+    @NotNull
+    private final DualEntryPoints dualEntryPoints;
 
     public NotNullInstrumenterClassVisitor(@NotNull final ClassVisitor classVisitor, @NotNull final Configuration configuration) {
-        super(Opcodes.ASM5, classVisitor);
-        this.configuration = configuration;
-        this.notnull = convertToClassName(configuration.getNotNullAnnotations());
-        this.nullable = convertToClassName(configuration.getNullableAnnotations());
+        this(classVisitor, configuration, new DualEntryPoints());
     }
 
-    @NotNull
-    private Set<String> convertToClassName(@NotNull final Iterable<String> annotations) {
-        final Set<String> converted = new HashSet<>();
-        for (@NotNull final String annotation : annotations) {
-            converted.add(LangUtils.convertToJavaClassName(annotation));
-        }
-        return converted;
+    /**
+     * @param dualEntryPoints the split methods of the other instrumented classes, that calls may go to the unchecked
+     *                        body of.
+     */
+    public NotNullInstrumenterClassVisitor(@NotNull final ClassVisitor classVisitor, @NotNull final Configuration configuration, @NotNull final DualEntryPoints dualEntryPoints) {
+        super(Opcodes.ASM5, classVisitor);
+        this.configuration = configuration;
+        this.dualEntryPoints = dualEntryPoints;
+        this.notnull = configuration.getNotNullDescriptors();
+        this.nullable = configuration.getNullableDescriptors();
     }
 
     public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
         super.visit(version, access, name, signature, superName, interfaces);
         className = name;
+        javaClassName = name.replace('/', '.');
+        classAccess = access;
+        configuredImplicit = configuration.isImplicitInstrumentation(javaClassName);
+        hasHotMethods = configuration.getProfile().hasHotMethods(javaClassName);
+        final boolean compactMethods = configuration.getProfile().getPolicy() == HotMethodPolicy.COMPACT && hasHotMethods;
+        generation = CheckGeneration.forClass(configuration.getCodeGeneration(), version, access, name, compactMethods);
+        if (generation.isSizeBudget()) {
+            sizeBudget = new SizeBudget(name);
+        }
     }
 
     @Override
@@ -78,33 +145,656 @@ public class NotNullInstrumenterClassVisitor extends ClassVisitor {
 
     @NotNull
     public MethodVisitor visitMethod(final int access, @NotNull final String name, final String desc, final String signature, final String[] exceptions) {
+        MethodVisitor methodVisitor = cv.visitMethod(access, name, desc, signature, exceptions);
+        if (generation.isGuarded() && ChecksDisabledField.isStaticInitializer(name)) {
+            hasStaticInitializer = true;
+            if (!hasChecksDisabledField) {
+                methodVisitor = new ChecksDisabledInitializer(methodVisitor);
+            }
+        }
+        final NullCheckHelpers helpers = generation.getClassHelpers();
+        if (helpers != null) {
+            helpers.visitMethod(name, desc);
+        }
+        if (getHotMethodPolicy(name) != null) {
+            hotMethods++;
+        }
+        final ThrowOnNullMethodVisitor visitor = createMethodVisitor(methodVisitor, access, name, desc);
+        if (generation.isNullnessAnalysis() || generation.isCallSiteAnalysis() || generation.isDualEntryPoints() || generation.isSizeBudget()) {
+            final MethodNode method = new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions);
+            analyzedMethods.put(method, visitor);
+            return method;
+        }
+        return visitor;
+    }
+
+    @NotNull
+    private ThrowOnNullMethodVisitor createMethodVisitor(@NotNull final MethodVisitor methodVisitor, final int access, @NotNull final String name, @NotNull final String desc) {
+        final ThrowOnNullMethodVisitor visitor = newMethodVisitor(methodVisitor, access, name, desc, getGeneration(name));
+        methodVisitors.add(visitor);
+        return visitor;
+    }
+
+    /**
+     * @return a method visitor that is not counted as instrumenting the class (unless added to the method visitors).
+     */
+    @NotNull
+    private ThrowOnNullMethodVisitor newMethodVisitor(@NotNull final MethodVisitor methodVisitor, final int access, @NotNull final String name, @NotNull final String desc, @NotNull final CheckGeneration checkGeneration) {
         final Type[] argumentTypes = Type.getArgumentTypes(desc);
         final Type returnType = Type.getReturnType(desc);
-        final MethodVisitor methodVisitor = cv.visitMethod(access, name, desc, signature, exceptions);
         final ThrowOnNullMethodVisitor visitor;
-        if (classAnnotatedImplicit || configuration.isImplicitInstrumentation(toClassName(className))) {
-            visitor = new ImplicitThrowOnNullMethodVisitor(methodVisitor, argumentTypes, returnType, access, name, className, nullable, isAnonymous);
+        if (isImplicit()) {
+            visitor = new ImplicitThrowOnNullMethodVisitor(methodVisitor, argumentTypes, returnType, access, name, className, nullable, isAnonymous, checkGeneration);
         } else {
-            visitor = new AnnotationThrowOnNullMethodVisitor(methodVisitor, argumentTypes, returnType, access, name, className, notnull, isAnonymous);
+            visitor = new AnnotationThrowOnNullMethodVisitor(methodVisitor, argumentTypes, returnType, access, name, className, notnull, isAnonymous, checkGeneration);
+        }
+        visitor.setVisibleChecks(isParameterVisible(access), isReturnVisible(access));
+        if (isHotParameterSkipped(name)) {
+            visitor.skipParameterChecks();
+        }
+        if (isHotReturnSkipped(name)) {
+            visitor.skipReturnChecks();
         }
-        methodVisitors.add(visitor);
         return visitor;
     }
 
+    /**
+     * @return the generation of the checks of the method: compact checks for a hot method to compact (unless the
+     * class cannot have them), else those of the class.
+     */
     @NotNull
-    private String toClassName(final String className) {
-        return className.replace('/', '.');
+    private CheckGeneration getGeneration(@NotNull final String methodName) {
+        if (getHotMethodPolicy(methodName) == HotMethodPolicy.COMPACT) {
+            final CheckGeneration compact = generation.compact();
+            if (compact != null) {
+                return compact;
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * @return the policy of the method if it is listed as hot in the profile, else null.
+     */
+    @Nullable
+    private HotMethodPolicy getHotMethodPolicy(@NotNull final String methodName) {
+        return hasHotMethods ? configuration.getProfile().getPolicy(javaClassName, methodName) : null;
+    }
+
+    private boolean isHotParameterSkipped(@NotNull final String methodName) {
+        return getHotMethodPolicy(methodName) == HotMethodPolicy.SKIP;
+    }
+
+    private boolean isHotReturnSkipped(@NotNull final String methodName) {
+        final HotMethodPolicy policy = getHotMethodPolicy(methodName);
+        return policy == HotMethodPolicy.SKIP || policy == HotMethodPolicy.NO_RETURN_CHECK;
+    }
+
+    private boolean isParameterVisible(final int access) {
+        return configuration.getVisibility().isParameterChecked(javaClassName, classAccess, access);
+    }
+
+    private boolean isReturnVisible(final int access) {
+        return configuration.getVisibility().isReturnChecked(javaClassName, classAccess, access);
+    }
+
+    private boolean isImplicit() {
+        return classAnnotatedImplicit || configuredImplicit;
     }
 
     @Override
     public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
-        if (LangUtils.convertToJavaClassName(ImplicitNotNull.class.getName()).equals(desc)) {
+        if (IMPLICIT_NOT_NULL.equals(desc)) {
             classAnnotatedImplicit = true;
         }
         return super.visitAnnotation(desc, visible);
     }
 
+    @Override
+    public FieldVisitor visitField(final int access, final String name, final String desc, final String signature, final Object value) {
+        if (ChecksDisabledField.NAME.equals(name)) {
+            hasChecksDisabledField = true;
+        }
+        return super.visitField(access, name, desc, signature, value);
+    }
+
+    @Override
+    public void visitEnd() {
+        if (!analyzedMethods.isEmpty()) {
+            if (generation.isDualEntryPoints()) {
+                findSplitMethods();
+            }
+            instrumentAnalyzedMethods();
+        }
+        final NullCheckHelpers helpers = generation.getClassHelpers();
+        if (helpers != null && hasInstrumented()) {
+            helpers.generateHelpers(cv);
+        }
+        // added even if nothing was instrumented, since an existing static initializer may already set it (the class
+        // file is then not written anyway)
+        if (generation.isGuarded() && !hasChecksDisabledField) {
+            ChecksDisabledField.generateField(cv);
+            if (!hasStaticInitializer) {
+                ChecksDisabledField.generateStaticInitializer(cv, className);
+            }
+        }
+        super.visitEnd();
+    }
+
+    /**
+     * Runs the nullness analysis over all the methods of the class, then instruments them.
+     */
+    private void instrumentAnalyzedMethods() {
+        if (sizeBudget != null) {
+            findBudgetFallbacks(sizeBudget);
+        }
+        // with dynamic checks, which can be switched off between calls, only the method itself is trusted
+        final NullnessAnalysis nullnessAnalysis = new NullnessAnalysis(className, generation.isDynamic() ? Collections.<String>emptySet() : getNotNullMethods());
+        final Map<MethodNode, Frame[]> frames = new HashMap<>();
+        for (final MethodNode method : analyzedMethods.keySet()) {
+            final Frame[] methodFrames = nullnessAnalysis.analyze(method, getNotNullEntries(method));
+            frames.put(method, methodFrames);
+            if (generation.isCallSiteAnalysis()) {
+                nullnessAnalysis.recordCalls(method, methodFrames);
+            }
+        }
+        for (final Map.Entry<MethodNode, ThrowOnNullMethodVisitor> entry : analyzedMethods.entrySet()) {
+            final MethodNode method = entry.getKey();
+            final ThrowOnNullMethodVisitor visitor = entry.getValue();
+            final Frame[] methodFrames = frames.get(method);
+            if (generation.isNullnessAnalysis() && methodFrames != null) {
+                visitor.setNotNullReturns(NullnessAnalysis.findNotNullReturns(method, methodFrames));
+            }
+            // private methods can only be called from the class (or through method handles, which the analysis sees)
+            if (generation.isCallSiteAnalysis() && (method.access & Opcodes.ACC_PRIVATE) != 0) {
+                visitor.setUncheckedParameters(nullnessAnalysis.getNotNullArguments(method.name, method.desc));
+            }
+            if (generation.isDualEntryPoints() && methodFrames != null) {
+                redirectCalls(method, methodFrames);
+            }
+            if (methodsToSplit.contains(method)) {
+                generateBody(method, methodFrames);
+                generateEntryPoint(method, visitor);
+            } else if (sizeBudget != null) {
+                instrumentWithinBudget(method, visitor, sizeBudget);
+            } else {
+                method.accept(visitor);
+            }
+        }
+    }
+
+    /**
+     * Finds the methods that the size budget may leave without return value or parameter checks, measured with all
+     * their checks before the nullness analysis leaves any out. The fallbacks chosen when instrumenting, with fewer
+     * checks to fit, are never smaller than these.
+     */
+    private void findBudgetFallbacks(@NotNull final SizeBudget sizeBudget) {
+        for (final Map.Entry<MethodNode, ThrowOnNullMethodVisitor> entry : analyzedMethods.entrySet()) {
+            final MethodNode method = entry.getKey();
+            if (methodsToSplit.contains(method)) {
+                continue;
+            }
+            final SizeBudget.Decision decision = decide(method, entry.getValue(), sizeBudget, EnumSet.allOf(SizeBudget.Fallback.class));
+            final SizeBudget.Fallback fallback = decision == null ? null : decision.getFallback();
+            if (fallback == SizeBudget.Fallback.COMPACT_PARAMETERS || fallback == SizeBudget.Fallback.NONE) {
+                budgetUncheckedReturns.add(method);
+            }
+            if (fallback == SizeBudget.Fallback.NONE) {
+                budgetUncheckedParameters.add(method);
+            }
+        }
+    }
+
+    /**
+     * Instruments the method, with smaller checks than configured if its checks would push it over a limit of the
+     * {@link SizeBudget}. Only the fallbacks found by {@link #findBudgetFallbacks} may leave out checks.
+     */
+    private void instrumentWithinBudget(@NotNull final MethodNode method, @NotNull final ThrowOnNullMethodVisitor visitor, @NotNull final SizeBudget sizeBudget) {
+        final Set<SizeBudget.Fallback> allowed = EnumSet.of(SizeBudget.Fallback.COMPACT);
+        if (budgetUncheckedReturns.contains(method)) {
+            allowed.add(SizeBudget.Fallback.COMPACT_PARAMETERS);
+        }
+        if (budgetUncheckedParameters.contains(method)) {
+            allowed.add(SizeBudget.Fallback.NONE);
+        }
+        final SizeBudget.Decision decision = decide(method, visitor, sizeBudget, allowed);
+        if (decision == null) {
+            method.accept(visitor);
+            return;
+        }
+        sizeBudget.addDecision(decision);
+        final SizeBudget.Fallback fallback = decision.getFallback();
+        final CheckGeneration fallbackGeneration = fallback == null ? null : getFallbackGeneration(method, fallback);
+        if (fallbackGeneration == null) {
+            method.accept(visitor);
+            return;
+        }
+        final MethodVisitor target = visitor.getTarget();
+        if (target == null) {
+            throw new IllegalStateException("No method writer for " + className + "." + method.name);
+        }
+        final ThrowOnNullMethodVisitor fallbackVisitor = newMethodVisitor(target, method.access, method.name, method.desc, fallbackGeneration);
+        applyFallback(fallbackVisitor, visitor, fallback);
+        methodVisitors.remove(visitor);
+        methodVisitors.add(fallbackVisitor);
+        method.accept(fallbackVisitor);
+    }
+
+    /**
+     * @param allowed the fallbacks that may be chosen.
+     * @return null if the method stays under its limit with its checks, else the first allowed fallback that keeps it
+     * under, or a decision without a fallback if none does.
+     */
+    @Nullable
+    private SizeBudget.Decision decide(@NotNull final MethodNode method, @NotNull final ThrowOnNullMethodVisitor visitor, @NotNull final SizeBudget sizeBudget, @NotNull final Set<SizeBudget.Fallback> allowed) {
+        final SizeBudget.CodeLength original = sizeBudget.measure(method);
+        final int originalLength = original.getLength();
+        final int limit = SizeBudget.getLimit(originalLength);
+        final int checkedLength = limit == 0 ? 0 : measure(method, visitor, getGeneration(method.name), null, original, sizeBudget);
+        if (checkedLength <= limit) {
+            return null;
+        }
+        int length = checkedLength;
+        for (final SizeBudget.Fallback fallback : allowed) {
+            final CheckGeneration fallbackGeneration = getFallbackGeneration(method, fallback);
+            if (fallbackGeneration == null || (fallback == SizeBudget.Fallback.NONE && limit != SizeBudget.HUGE_METHOD_LIMIT)) {
+                continue;
+            }
+            length = measure(method, visitor, fallbackGeneration, fallback, original, sizeBudget);
+            if (length <= limit) {
+                return new SizeBudget.Decision(className + "." + method.name + method.desc, originalLength, checkedLength, limit, fallback, length);
+            }
+        }
+        return new SizeBudget.Decision(className + "." + method.name + method.desc, originalLength, checkedLength, limit, null, length);
+    }
+
+    /**
+     * @return the generation of the smaller checks, or null if the class cannot have them.
+     */
+    @Nullable
+    private CheckGeneration getFallbackGeneration(@NotNull final MethodNode method, @NotNull final SizeBudget.Fallback fallback) {
+        return fallback == SizeBudget.Fallback.NONE ? getGeneration(method.name) : generation.compact();
+    }
+
+    /**
+     * @param fallback the smaller checks, or null for the checks of the visitor.
+     * @param original the method measured as it is.
+     * @return the (maximum) code length of the method instrumented with the checks.
+     */
+    private int measure(@NotNull final MethodNode method, @NotNull final ThrowOnNullMethodVisitor visitor, @NotNull final CheckGeneration checkGeneration, @Nullable final SizeBudget.Fallback fallback, @NotNull final SizeBudget.CodeLength original, @NotNull final SizeBudget sizeBudget) {
+        final SizeBudget.CodeLength codeLength = sizeBudget.newCodeLength(method);
+        final ThrowOnNullMethodVisitor measuring = newMethodVisitor(codeLength, method.access, method.name, method.desc, checkGeneration.forMeasuring());
+        applyFallback(measuring, visitor, fallback);
+        method.accept(measuring);
+        return codeLength.getMaxLength(original);
+    }
+
+    private static void applyFallback(@NotNull final ThrowOnNullMethodVisitor fallbackVisitor, @NotNull final ThrowOnNullMethodVisitor visitor, @Nullable final SizeBudget.Fallback fallback) {
+        fallbackVisitor.copyChecks(visitor);
+        if (fallback == SizeBudget.Fallback.NONE) {
+            fallbackVisitor.skipParameterChecks();
+        }
+        if (fallback == SizeBudget.Fallback.COMPACT_PARAMETERS || fallback == SizeBudget.Fallback.NONE) {
+            fallbackVisitor.skipReturnChecks();
+        }
+    }
+
+    /**
+     * Finds the methods to split: those that cannot be overridden and have checked parameters, unless already split.
+     */
+    private void findSplitMethods() {
+        final Map<String, MethodNode> methods = new HashMap<>();
+        for (final MethodNode method : analyzedMethods.keySet()) {
+            methods.put(method.name + method.desc, method);
+        }
+        final boolean finalClass = (classAccess & Opcodes.ACC_FINAL) != 0;
+        for (final MethodNode method : analyzedMethods.keySet()) {
+            final boolean overridable = !finalClass && (method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) == 0 && !DualEntryPoints.isConstructor(method.name);
+            if (overridable || !isChecked(method) || (method.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_BRIDGE)) != 0 || ChecksDisabledField.isStaticInitializer(method.name)) {
+                continue;
+            }
+            final BitSet checkedParameters = getCheckedParameters(method);
+            if (checkedParameters.isEmpty()) {
+                continue;
+            }
+            final MethodNode body = methods.get(DualEntryPoints.getBodyName(method.name) + DualEntryPoints.getBodyDescriptor(className, method.name, method.desc));
+            if (body == null) {
+                // the code is not read when only the split methods are looked for
+                if (method.instructions.size() > 0) {
+                    methodsToSplit.add(method);
+                }
+                splitMethods.put(method.name + method.desc, checkedParameters);
+            } else if ((body.access & Opcodes.ACC_SYNTHETIC) != 0) {
+                // split when instrumented before
+                splitMethods.put(method.name + method.desc, checkedParameters);
+            }
+        }
+    }
+
+    /**
+     * Redirects the calls to split methods, of this or the other instrumented classes, that pass arguments known not
+     * to be null for all the checked parameters to the unchecked body.
+     * <p>
+     * With guarded checks, only calls within the class are redirected: the checks of this class may be disabled while
+     * those of the other class are not, so what the analysis knows must not skip the checks of the other class.
+     */
+    private void redirectCalls(@NotNull final MethodNode method, @NotNull final Frame[] frames) {
+        final List<MethodInsnNode> calls = new ArrayList<>();
+        for (int i = 0; i < frames.length; i++) {
+            final AbstractInsnNode instruction = method.instructions.get(i);
+            if (frames[i] != null && instruction instanceof MethodInsnNode && !((MethodInsnNode) instruction).itf) {
+                final MethodInsnNode call = (MethodInsnNode) instruction;
+                final BitSet checkedParameters;
+                if (className.equals(call.owner)) {
+                    checkedParameters = splitMethods.get(call.name + call.desc);
+                } else {
+                    checkedParameters = generation.isGuarded() ? null : dualEntryPoints.getCheckedParameters(call.owner, call.name, call.desc);
+                }
+                if (checkedParameters != null && NullnessAnalysis.areNotNullArguments(call, frames[i], checkedParameters)) {
+                    calls.add(call);
+                }
+            }
+        }
+        for (final MethodInsnNode call : calls) {
+            if (DualEntryPoints.isConstructor(call.name)) {
+                method.instructions.insertBefore(call, new InsnNode(Opcodes.ACONST_NULL));
+            }
+            call.desc = DualEntryPoints.getBodyDescriptor(call.owner, call.name, call.desc);
+            call.name = DualEntryPoints.getBodyName(call.name);
+        }
+        uncheckedCalls += calls.size();
+    }
+
+    /**
+     * Generates the unchecked body of a split method, with the code of the method but without its annotations, that
+     * checks only the return value.
+     */
+    private void generateBody(@NotNull final MethodNode method, @Nullable final Frame[] frames) {
+        final boolean constructor = DualEntryPoints.isConstructor(method.name);
+        final List<?> methodExceptions = method.exceptions;
+        final String[] exceptions = methodExceptions.toArray(new String[methodExceptions.size()]);
+        final MethodVisitor bodyWriter = cv.visitMethod((method.access & ~Opcodes.ACC_VARARGS) | Opcodes.ACC_SYNTHETIC, DualEntryPoints.getBodyName(method.name),
+                DualEntryPoints.getBodyDescriptor(className, method.name, method.desc), constructor ? null : method.signature, exceptions);
+        // the checks are generated as for the method itself, with its name in the messages
+        final ThrowOnNullMethodVisitor body = createMethodVisitor(new WithoutAnnotations(bodyWriter), method.access, method.name, method.desc);
+        body.skipParameterChecks();
+        if (generation.isNullnessAnalysis() && frames != null) {
+            body.setNotNullReturns(NullnessAnalysis.findNotNullReturns(method, frames));
+        }
+        method.accept(body);
+    }
+
+    /**
+     * Generates the entry point of a split method, with the annotations of the method, that checks the parameters
+     * and calls the body.
+     */
+    private void generateEntryPoint(@NotNull final MethodNode method, @NotNull final ThrowOnNullMethodVisitor visitor) {
+        final MethodNode entryPoint = new MethodNode(Opcodes.ASM5, method.access, method.name, method.desc, method.signature, null);
+        entryPoint.visibleAnnotations = method.visibleAnnotations;
+        entryPoint.invisibleAnnotations = method.invisibleAnnotations;
+        entryPoint.visibleParameterAnnotations = method.visibleParameterAnnotations;
+        entryPoint.invisibleParameterAnnotations = method.invisibleParameterAnnotations;
+        entryPoint.visibleTypeAnnotations = method.visibleTypeAnnotations;
+        entryPoint.invisibleTypeAnnotations = method.invisibleTypeAnnotations;
+        entryPoint.parameters = method.parameters;
+        entryPoint.attrs = method.attrs;
+        entryPoint.exceptions = method.exceptions;
+
+        final boolean isStatic = (method.access & Opcodes.ACC_STATIC) != 0;
+        int local = 0;
+        if (!isStatic) {
+            entryPoint.visitVarInsn(Opcodes.ALOAD, local++);
+        }
+        for (final Type argumentType : Type.getArgumentTypes(method.desc)) {
+            entryPoint.visitVarInsn(argumentType.getOpcode(Opcodes.ILOAD), local);
+            local += argumentType.getSize();
+        }
+        final int opcode;
+        if (isStatic) {
+            opcode = Opcodes.INVOKESTATIC;
+        } else if (DualEntryPoints.isConstructor(method.name)) {
+            entryPoint.visitInsn(Opcodes.ACONST_NULL);
+            opcode = Opcodes.INVOKESPECIAL;
+        } else {
+            opcode = (method.access & Opcodes.ACC_PRIVATE) != 0 ? Opcodes.INVOKESPECIAL : Opcodes.INVOKEVIRTUAL;
+        }
+        entryPoint.visitMethodInsn(opcode, className, DualEntryPoints.getBodyName(method.name), DualEntryPoints.getBodyDescriptor(className, method.name, method.desc), false);
+        entryPoint.visitInsn(Type.getReturnType(method.desc).getOpcode(Opcodes.IRETURN));
+        entryPoint.visitMaxs(0, 0);
+        entryPoint.visitEnd();
+        visitor.skipReturnChecks();
+        entryPoint.accept(visitor);
+    }
+
+    /**
+     * @return the name and descriptor of the methods that have their return value checked and cannot be overridden,
+     * so never return null.
+     */
+    @NotNull
+    private Set<String> getNotNullMethods() {
+        final boolean finalClass = (classAccess & Opcodes.ACC_FINAL) != 0;
+        final Set<String> notNullMethods = new HashSet<>();
+        for (final MethodNode method : analyzedMethods.keySet()) {
+            final boolean overridable = !finalClass && (method.access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL)) == 0;
+            if (!overridable && isChecked(method) && !budgetUncheckedReturns.contains(method) && isReturnVisible(method.access) && !isHotReturnSkipped(method.name) && AsmUtils.isReferenceType(Type.getReturnType(method.desc)) && isNotNull(method.visibleAnnotations, method.invisibleAnnotations)) {
+                notNullMethods.add(method.name + method.desc);
+            }
+        }
+        return notNullMethods;
+    }
+
+    /**
+     * @return the local variables that are not null on entry to the method: this and the checked parameters (which
+     * are not trusted with dynamic or guarded checks, which can be switched off, or if the size budget may leave them
+     * out).
+     */
+    @NotNull
+    private BitSet getNotNullEntries(@NotNull final MethodNode method) {
+        final BitSet notNullEntries = new BitSet();
+        final boolean isStatic = (method.access & Opcodes.ACC_STATIC) != 0;
+        if (!isStatic) {
+            notNullEntries.set(0);
+        }
+        if (!generation.isDynamic() && !generation.isGuarded() && isChecked(method) && !budgetUncheckedParameters.contains(method)) {
+            final BitSet checkedParameters = getCheckedParameters(method);
+            final Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+            int local = isStatic ? 0 : 1;
+            for (int parameter = 0; parameter < argumentTypes.length; parameter++) {
+                if (checkedParameters.get(parameter)) {
+                    notNullEntries.set(local);
+                }
+                local += argumentTypes[parameter].getSize();
+            }
+        }
+        return notNullEntries;
+    }
+
+    /**
+     * @return the parameters checked by the method visitors, as decided from the parameter annotations.
+     */
+    @NotNull
+    private BitSet getCheckedParameters(@NotNull final MethodNode method) {
+        final BitSet checkedParameters = new BitSet();
+        if (!isParameterVisible(method.access) || isHotParameterSkipped(method.name)) {
+            return checkedParameters;
+        }
+        final Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+        for (int parameter = 0; parameter < argumentTypes.length; parameter++) {
+            if (AsmUtils.isReferenceType(argumentTypes[parameter]) && isNotNull(getAnnotations(method.visibleParameterAnnotations, parameter), getAnnotations(method.invisibleParameterAnnotations, parameter))) {
+                checkedParameters.set(parameter);
+            }
+        }
+        return checkedParameters;
+    }
+
+    /**
+     * @return false for the methods the method visitors leave unchecked.
+     */
+    private boolean isChecked(@NotNull final MethodNode method) {
+        return (method.access & Opcodes.ACC_SYNTHETIC) == 0 && !(isAnonymous && CONSTRUCTOR_NAME.equals(method.name));
+    }
+
+    /**
+     * @return true if a method or parameter with the annotations is checked, as decided by the method visitors.
+     */
+    private boolean isNotNull(@Nullable final List<?> visibleAnnotations, @Nullable final List<?> invisibleAnnotations) {
+        final Set<String> annotations = new HashSet<>();
+        for (final List<?> annotationNodes : Arrays.asList(visibleAnnotations, invisibleAnnotations)) {
+            if (annotationNodes != null) {
+                for (final Object annotation : annotationNodes) {
+                    annotations.add(((AnnotationNode) annotation).desc);
+                }
+            }
+        }
+        if (isImplicit()) {
+            return Collections.disjoint(annotations, nullable);
+        }
+        return !Collections.disjoint(annotations, notnull);
+    }
+
+    @Nullable
+    private static List<?> getAnnotations(@Nullable final List<?>[] parameterAnnotations, final int parameter) {
+        return parameterAnnotations == null || parameter >= parameterAnnotations.length ? null : parameterAnnotations[parameter];
+    }
+
+    /**
+     * Leaves out the annotations of the method, for the body of a split method (which is not to be found by
+     * annotation, and has the extra parameter if a constructor).
+     */
+    private static class WithoutAnnotations extends MethodVisitor {
+
+        private WithoutAnnotations(@NotNull final MethodVisitor methodVisitor) {
+            super(Opcodes.ASM5, methodVisitor);
+        }
+
+        @Override
+        public void visitParameter(final String name, final int access) {
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+            return null;
+        }
+    }
+
+    /**
+     * Initializes the {@link ChecksDisabledField} first in an existing static initializer.
+     */
+    private class ChecksDisabledInitializer extends MethodVisitor {
+
+        private ChecksDisabledInitializer(@NotNull final MethodVisitor methodVisitor) {
+            super(Opcodes.ASM5, methodVisitor);
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            ChecksDisabledField.generateInitialization(mv, className);
+        }
+    }
+
+    /**
+     * @return the number of return value checks left out by the nullness analysis.
+     */
+    public int getElidedReturnChecks() {
+        int elided = 0;
+        for (final ThrowOnNullMethodVisitor methodVisitor : methodVisitors) {
+            elided += methodVisitor.getElidedReturnChecks();
+        }
+        return elided;
+    }
+
+    /**
+     * @return the methods of the class (by name and descriptor) split into a checked entry point and an unchecked
+     * body, now or when instrumented before, and their checked parameters.
+     */
+    @NotNull
+    Map<String, BitSet> getDualEntryPoints() {
+        return splitMethods;
+    }
+
+    /**
+     * @return the methods given smaller checks (or left with theirs) since their checks would push them over a limit
+     * of the size budget.
+     */
+    @NotNull
+    public List<SizeBudget.Decision> getSizeBudgetDecisions() {
+        return sizeBudget == null ? Collections.<SizeBudget.Decision>emptyList() : sizeBudget.getDecisions();
+    }
+
+    /**
+     * @return the number of methods listed as hot in the profile, that get the hot method policy.
+     */
+    public int getHotMethods() {
+        return hotMethods;
+    }
+
+    /**
+     * @return the number of methods split into a checked entry point and an unchecked body.
+     */
+    public int getSplitMethods() {
+        return methodsToSplit.size();
+    }
+
+    /**
+     * @return the number of calls redirected to the unchecked body of a split method.
+     */
+    public int getUncheckedCalls() {
+        return uncheckedCalls;
+    }
+
+    /**
+     * @return the number of parameter checks left out by the visibility policy.
+     */
+    public int getExcludedParameterChecks() {
+        int excluded = 0;
+        for (final ThrowOnNullMethodVisitor methodVisitor : methodVisitors) {
+            excluded += methodVisitor.getExcludedParameterChecks();
+        }
+        return excluded;
+    }
+
+    /**
+     * @return the number of return value checks left out by the visibility policy.
+     */
+    public int getExcludedReturnChecks() {
+        int excluded = 0;
+        for (final ThrowOnNullMethodVisitor methodVisitor : methodVisitors) {
+            excluded += methodVisitor.getExcludedReturnChecks();
+        }
+        return excluded;
+    }
+
+    /**
+     * @return the number of parameter checks of private methods left out by the call site analysis.
+     */
+    public int getElidedParameterChecks() {
+        int elided = 0;
+        for (final ThrowOnNullMethodVisitor methodVisitor : methodVisitors) {
+            elided += methodVisitor.getElidedParameterChecks();
+        }
+        return elided;
+    }
+
     public boolean hasInstrumented() {
+        if (uncheckedCalls > 0) {
+            return true;
+        }
         for (final ThrowOnNullMethodVisitor methodVisitor : methodVisitors) {
             if (methodVisitor.hasInstrumented()) {
                 return true;
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import se.eris.notnull.CodeGenerationConfiguration;
+
+/**
+ * How the exceptions of failed checks are created: by the constructor, taking the message, of the configured
+ * exception classes, or by the static methods of an exception factory class, which may also return a preallocated
+ * exception.
+ */
+final class NullCheckExceptions {
+
+    static final String FACTORY_ARGUMENT_METHOD = "nullArgument";
+    static final String FACTORY_RETURN_METHOD = "nullReturn";
+    private static final String FACTORY_DESCRIPTOR = "(Ljava/lang/String;)Ljava/lang/RuntimeException;";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String CONSTRUCTOR_DESCRIPTOR = "(Ljava/lang/String;)V";
+
+    /**
+     * Internal names of the exception classes, which also tell the kind of check apart when created by the factory.
+     */
+    @NotNull
+    private final String argumentException;
+    @NotNull
+    private final String returnException;
+    @Nullable
+    private final String factory;
+
+    private NullCheckExceptions(@NotNull final String argumentException, @NotNull final String returnException, @Nullable final String factory) {
+        this.argumentException = argumentException;
+        this.returnException = returnException;
+        this.factory = factory;
+    }
+
+    @NotNull
+    static NullCheckExceptions forConfiguration(@NotNull final CodeGenerationConfiguration configuration) {
+        final String factory = configuration.getExceptionFactory();
+        if (factory != null) {
+            return new NullCheckExceptions(toInternalName(IllegalArgumentException.class.getName()), toInternalName(IllegalStateException.class.getName()), toInternalName(factory));
+        }
+        return new NullCheckExceptions(toInternalName(configuration.getArgumentException()), toInternalName(configuration.getReturnException()), null);
+    }
+
+    @NotNull
+    private static String toInternalName(@NotNull final String className) {
+        return className.trim().replace('.', '/');
+    }
+
+    /**
+     * @return the internal name of the exception class of failed parameter checks.
+     */
+    @NotNull
+    String getArgumentException() {
+        return argumentException;
+    }
+
+    /**
+     * @return the internal name of the exception class of failed return value checks.
+     */
+    @NotNull
+    String getReturnException() {
+        return returnException;
+    }
+
+    /**
+     * Generates the start of the creation of the exception, before the message is put on the stack.
+     */
+    void generateNew(@NotNull final MethodVisitor mv, @NotNull final String exceptionClass) {
+        if (factory == null) {
+            mv.visitTypeInsn(Opcodes.NEW, exceptionClass);
+            mv.visitInsn(Opcodes.DUP);
+        }
+    }
+
+    /**
+     * Generates the end of the creation of the exception, leaving it on the stack in place of the message.
+     */
+    void generateCreate(@NotNull final MethodVisitor mv, @NotNull final String exceptionClass) {
+        if (factory == null) {
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exceptionClass, CONSTRUCTOR_NAME, CONSTRUCTOR_DESCRIPTOR, false);
+        } else {
+            final String method = returnException.equals(exceptionClass) ? FACTORY_RETURN_METHOD : FACTORY_ARGUMENT_METHOD;
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, factory, method, FACTORY_DESCRIPTOR, false);
+        }
+    }
+
+}
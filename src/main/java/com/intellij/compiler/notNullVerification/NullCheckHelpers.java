@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import se.eris.asm.AsmUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Synthetic static methods, one per exception class, that throw the null check exceptions of a class. A check then
+ * takes a load, a branch, the message constant and a call, which keeps small methods under the JIT inlining limits.
+ * <p>
+ * With compact messages the helpers also build the message, from the method name and parameter number passed by the
+ * check, so that the class keeps a single copy of the message text instead of one string constant per check.
+ * <p>
+ * Only the helpers that are called are added to the class, when it has been visited.
+ */
+class NullCheckHelpers {
+
+    private static final String HELPER_PREFIX = "$$notNull$throw";
+    private static final String HELPER_DESCRIPTOR = "(Ljava/lang/String;)V";
+    private static final String ARGUMENT_HELPER_NAME = HELPER_PREFIX + "Argument";
+    private static final String ARGUMENT_HELPER_DESCRIPTOR = "(Ljava/lang/String;I)V";
+    private static final String RETURN_HELPER_NAME = HELPER_PREFIX + "Return";
+    private static final String RETURN_HELPER_DESCRIPTOR = "(Ljava/lang/String;)V";
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String STRING_BUILDER_CLASS_NAME = "java/lang/StringBuilder";
+
+    @NotNull
+    private final String className;
+    @NotNull
+    private final NullCheckExceptions exceptions;
+    /**
+     * Exception classes (internal names) of the helpers called.
+     */
+    private final Set<String> used = new LinkedHashSet<>();
+    /**
+     * How the checked parameters are described in the messages built by the argument helper, if it is called.
+     */
+    @Nullable
+    private String argumentDescription;
+    private boolean returnUsed;
+    /**
+     * Helpers (name and descriptor) already in the class, since it was instrumented before.
+     */
+    private final Set<String> existing = new LinkedHashSet<>();
+
+    NullCheckHelpers(@NotNull final String className, @NotNull final NullCheckExceptions exceptions) {
+        this.className = className;
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * @return new helpers of the same class, which do not record the calls made through them in these.
+     */
+    @NotNull
+    NullCheckHelpers copy() {
+        return new NullCheckHelpers(className, exceptions);
+    }
+
+    /**
+     * Records a method of the class being visited, so that helpers are not added twice.
+     */
+    void visitMethod(@NotNull final String name, @NotNull final String desc) {
+        if (name.startsWith(HELPER_PREFIX)) {
+            existing.add(name + desc);
+        }
+    }
+
+    /**
+     * Generates the call throwing the exception, the message is expected on the stack.
+     */
+    void generateCall(@NotNull final MethodVisitor mv, @NotNull final String exceptionClass) {
+        used.add(exceptionClass);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, getHelperName(exceptionClass), HELPER_DESCRIPTOR, false);
+    }
+
+    /**
+     * Generates the call building the message and throwing the exception for a null argument.
+     *
+     * @param description     how the parameter is described in the message (ie @NotNull), the same for all the checks
+     *                        of the class.
+     * @param parameterNumber the parameter number as in the source code.
+     */
+    void generateArgumentCall(@NotNull final MethodVisitor mv, @NotNull final String description, @NotNull final String methodName, final int parameterNumber) {
+        argumentDescription = description;
+        mv.visitLdcInsn(methodName);
+        AsmUtils.generatePushInt(mv, parameterNumber);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, ARGUMENT_HELPER_NAME, ARGUMENT_HELPER_DESCRIPTOR, false);
+    }
+
+    /**
+     * Generates the call building the message and throwing the exception for a null return value.
+     */
+    void generateReturnCall(@NotNull final MethodVisitor mv, @NotNull final String methodName) {
+        returnUsed = true;
+        mv.visitLdcInsn(methodName);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, className, RETURN_HELPER_NAME, RETURN_HELPER_DESCRIPTOR, false);
+    }
+
+    /**
+     * Adds the helpers called (and not already present) to the class.
+     */
+    void generateHelpers(@NotNull final ClassVisitor cv) {
+        for (final String exceptionClass : used) {
+            final String name = getHelperName(exceptionClass);
+            if (!existing.contains(name + HELPER_DESCRIPTOR)) {
+                generateHelper(cv, name, exceptionClass, exceptions);
+            }
+        }
+        if (argumentDescription != null && !existing.contains(ARGUMENT_HELPER_NAME + ARGUMENT_HELPER_DESCRIPTOR)) {
+            generateArgumentHelper(cv, argumentDescription);
+        }
+        if (returnUsed && !existing.contains(RETURN_HELPER_NAME + RETURN_HELPER_DESCRIPTOR)) {
+            generateReturnHelper(cv);
+        }
+    }
+
+    /**
+     * Generates throw new IllegalArgumentException("Argument " + parameterNumber + " for " + description
+     * + " parameter of " + className + "." + methodName + " must not be null"), or the configured exception.
+     */
+    private void generateArgumentHelper(@NotNull final ClassVisitor cv, @NotNull final String description) {
+        final MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, ARGUMENT_HELPER_NAME, ARGUMENT_HELPER_DESCRIPTOR, null, null);
+        mv.visitCode();
+        exceptions.generateNew(mv, exceptions.getArgumentException());
+        mv.visitTypeInsn(Opcodes.NEW, STRING_BUILDER_CLASS_NAME);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitLdcInsn("Argument ");
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STRING_BUILDER_CLASS_NAME, CONSTRUCTOR_NAME, "(Ljava/lang/String;)V", false);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER_CLASS_NAME, "append", "(I)Ljava/lang/StringBuilder;", false);
+        generateAppend(mv, " for " + description + " parameter of " + className + ".");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        generateAppend(mv);
+        generateAppend(mv, " must not be null");
+        generateThrow(mv, exceptions.getArgumentException(), exceptions);
+        mv.visitMaxs(5, 2);
+        mv.visitEnd();
+    }
+
+    /**
+     * Generates throw new IllegalStateException("NotNull method " + className + "." + methodName
+     * + " must not return null"), or the configured exception.
+     */
+    private void generateReturnHelper(@NotNull final ClassVisitor cv) {
+        final MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, RETURN_HELPER_NAME, RETURN_HELPER_DESCRIPTOR, null, null);
+        mv.visitCode();
+        exceptions.generateNew(mv, exceptions.getReturnException());
+        mv.visitTypeInsn(Opcodes.NEW, STRING_BUILDER_CLASS_NAME);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitLdcInsn("NotNull method " + className + ".");
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, STRING_BUILDER_CLASS_NAME, CONSTRUCTOR_NAME, "(Ljava/lang/String;)V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        generateAppend(mv);
+        generateAppend(mv, " must not return null");
+        generateThrow(mv, exceptions.getReturnException(), exceptions);
+        mv.visitMaxs(5, 1);
+        mv.visitEnd();
+    }
+
+    private static void generateAppend(@NotNull final MethodVisitor mv, @NotNull final String text) {
+        mv.visitLdcInsn(text);
+        generateAppend(mv);
+    }
+
+    private static void generateAppend(@NotNull final MethodVisitor mv) {
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER_CLASS_NAME, "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+    }
+
+    /**
+     * Generates the throw of the exception, under which the message builder is on the stack.
+     */
+    private static void generateThrow(@NotNull final MethodVisitor mv, @NotNull final String exceptionClass, @NotNull final NullCheckExceptions exceptions) {
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, STRING_BUILDER_CLASS_NAME, "toString", "()Ljava/lang/String;", false);
+        exceptions.generateCreate(mv, exceptionClass);
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    private static void generateHelper(@NotNull final ClassVisitor cv, @NotNull final String name, @NotNull final String exceptionClass, @NotNull final NullCheckExceptions exceptions) {
+        final MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, name, HELPER_DESCRIPTOR, null, null);
+        mv.visitCode();
+        exceptions.generateNew(mv, exceptionClass);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        exceptions.generateCreate(mv, exceptionClass);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitMaxs(3, 1);
+        mv.visitEnd();
+    }
+
+    @NotNull
+    private static String getHelperName(@NotNull final String exceptionClass) {
+        return HELPER_PREFIX + exceptionClass.substring(exceptionClass.lastIndexOf('/') + 1);
+    }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+import org.objectweb.asm.tree.analysis.Value;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A nullness analysis of the methods of a class, run before they are instrumented, that finds the returns whose value
+ * cannot be null, and the arguments never passed null to the methods of the class, so that their checks can be left
+ * out. Values are known to be non-null if they are:
+ * <ul>
+ * <li>new objects and arrays, and string, class and method handle constants,</li>
+ * <li>{@code this} or a checked parameter, if the local variable is never assigned in the method,</li>
+ * <li>returned by a method of the same class that cannot be overridden and has its return value checked, or by
+ * {@link StringBuilder#toString()} (string concatenation),</li>
+ * <li>copies or casts of such values, on all paths.</li>
+ * </ul>
+ * If the analysis of a method fails (ie on unexpected bytecode) all its returns are checked, and the arguments it
+ * passes may be null.
+ */
+final class NullnessAnalysis {
+
+    private static final String STRING_BUILDER_CLASS_NAME = "java/lang/StringBuilder";
+
+    @NotNull
+    private final String className;
+    /**
+     * Name and descriptor of the methods of the class that cannot return null.
+     */
+    @NotNull
+    private final Set<String> notNullMethods;
+    /**
+     * By name and descriptor of the methods of the class called, the arguments that may be null at some call.
+     */
+    private final Map<String, BitSet> nullableArguments = new HashMap<>();
+    /**
+     * Name and descriptor of the methods of the class referenced by method handles.
+     */
+    private final Set<String> referencedMethods = new HashSet<>();
+
+    NullnessAnalysis(@NotNull final String className, @NotNull final Set<String> notNullMethods) {
+        this.className = className;
+        this.notNullMethods = notNullMethods;
+    }
+
+    /**
+     * @param method         the method, with code.
+     * @param notNullEntries the local variables that are not null on entry (this and checked parameters).
+     * @return the frames of the method, or null if it could not be analyzed.
+     */
+    @Nullable
+    Frame[] analyze(@NotNull final MethodNode method, @NotNull final BitSet notNullEntries) {
+        try {
+            return new Analyzer(new NullnessInterpreter(getNotNullLocals(method.instructions, notNullEntries))).analyze(className, method);
+        } catch (final AnalyzerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the returns (by their order in the code) whose value cannot be null.
+     */
+    @NotNull
+    static BitSet findNotNullReturns(@NotNull final MethodNode method, @NotNull final Frame[] frames) {
+        final BitSet notNullReturns = new BitSet();
+        int returnNumber = 0;
+        for (int i = 0; i < frames.length; i++) {
+            if (method.instructions.get(i).getOpcode() == Opcodes.ARETURN) {
+                final Frame frame = frames[i];
+                if (frame != null && isNotNull(frame.getStack(frame.getStackSize() - 1))) {
+                    notNullReturns.set(returnNumber);
+                }
+                returnNumber++;
+            }
+        }
+        return notNullReturns;
+    }
+
+    /**
+     * Records the arguments passed to the methods of the class, and the methods referenced by method handles (which
+     * may be called with anything).
+     *
+     * @param frames the frames of the calling method, or null if it could not be analyzed.
+     */
+    void recordCalls(@NotNull final MethodNode caller, @Nullable final Frame[] frames) {
+        for (int i = 0; i < caller.instructions.size(); i++) {
+            final AbstractInsnNode instruction = caller.instructions.get(i);
+            if (instruction instanceof MethodInsnNode) {
+                final MethodInsnNode call = (MethodInsnNode) instruction;
+                // calls in unreachable code (without a frame) are left out
+                if (className.equals(call.owner) && (frames == null || frames[i] != null)) {
+                    recordCall(call, frames == null ? null : frames[i]);
+                }
+            } else if (instruction instanceof LdcInsnNode) {
+                recordReference(((LdcInsnNode) instruction).cst);
+            } else if (instruction instanceof InvokeDynamicInsnNode) {
+                final InvokeDynamicInsnNode invokeDynamic = (InvokeDynamicInsnNode) instruction;
+                recordReference(invokeDynamic.bsm);
+                for (final Object argument : invokeDynamic.bsmArgs) {
+                    recordReference(argument);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param frame the frame at the call, null if the caller could not be analyzed.
+     */
+    private void recordCall(@NotNull final MethodInsnNode call, @Nullable final Frame frame) {
+        final String method = call.name + call.desc;
+        final int argumentCount = Type.getArgumentTypes(call.desc).length;
+        BitSet nullable = nullableArguments.get(method);
+        if (nullable == null) {
+            nullable = new BitSet();
+            nullableArguments.put(method, nullable);
+        }
+        for (int argument = 0; argument < argumentCount; argument++) {
+            if (frame == null || !isNotNull(frame.getStack(frame.getStackSize() - argumentCount + argument))) {
+                nullable.set(argument);
+            }
+        }
+    }
+
+    /**
+     * @param frame     the frame at the call.
+     * @param arguments the arguments (by parameter number) to look at.
+     * @return true if none of the arguments can be null.
+     */
+    static boolean areNotNullArguments(@NotNull final MethodInsnNode call, @NotNull final Frame frame, @NotNull final BitSet arguments) {
+        final int argumentCount = Type.getArgumentTypes(call.desc).length;
+        for (int argument = arguments.nextSetBit(0); argument >= 0; argument = arguments.nextSetBit(argument + 1)) {
+            if (!isNotNull(frame.getStack(frame.getStackSize() - argumentCount + argument))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void recordReference(@Nullable final Object constant) {
+        if (constant instanceof Handle) {
+            final Handle handle = (Handle) constant;
+            if (className.equals(handle.getOwner())) {
+                referencedMethods.add(handle.getName() + handle.getDesc());
+            }
+        }
+    }
+
+    /**
+     * @return the arguments (by parameter number) that are not null at every call of the method in the class, none
+     * if the method is never called or referenced by a method handle.
+     */
+    @NotNull
+    BitSet getNotNullArguments(@NotNull final String name, @NotNull final String desc) {
+        final String method = name + desc;
+        final BitSet notNullArguments = new BitSet();
+        final BitSet nullable = nullableArguments.get(method);
+        if (nullable != null && !referencedMethods.contains(method)) {
+            notNullArguments.set(0, Type.getArgumentTypes(desc).length);
+            notNullArguments.andNot(nullable);
+        }
+        return notNullArguments;
+    }
+
+    /**
+     * @return the local variables that are not null on entry and never assigned, so always not null.
+     */
+    @NotNull
+    private static BitSet getNotNullLocals(@NotNull final InsnList instructions, @NotNull final BitSet notNullEntries) {
+        final BitSet notNullLocals = (BitSet) notNullEntries.clone();
+        for (int i = 0; i < instructions.size(); i++) {
+            final AbstractInsnNode instruction = instructions.get(i);
+            if (instruction instanceof VarInsnNode && isStore(instruction.getOpcode())) {
+                final int var = ((VarInsnNode) instruction).var;
+                notNullLocals.clear(var);
+                if (instruction.getOpcode() == Opcodes.LSTORE || instruction.getOpcode() == Opcodes.DSTORE) {
+                    notNullLocals.clear(var + 1);
+                }
+            } else if (instruction instanceof IincInsnNode) {
+                notNullLocals.clear(((IincInsnNode) instruction).var);
+            }
+        }
+        return notNullLocals;
+    }
+
+    private static boolean isNotNull(@NotNull final Value value) {
+        return ((NullnessValue) value).isNotNull();
+    }
+
+    private static boolean isStore(final int opcode) {
+        return opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE;
+    }
+
+    /**
+     * A value of the {@link BasicInterpreter} that is known to be not null or not.
+     */
+    private static final class NullnessValue implements Value {
+
+        @NotNull
+        private final BasicValue value;
+        private final boolean notNull;
+
+        NullnessValue(@NotNull final BasicValue value, final boolean notNull) {
+            this.value = value;
+            this.notNull = notNull;
+        }
+
+        boolean isNotNull() {
+            return notNull;
+        }
+
+        @Override
+        public int getSize() {
+            return value.getSize();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NullnessValue)) {
+                return false;
+            }
+            final NullnessValue other = (NullnessValue) o;
+            return notNull == other.notNull && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * value.hashCode() + (notNull ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return (notNull ? "!" : "") + value;
+        }
+    }
+
+    /**
+     * Tracks nullness on top of the {@link BasicInterpreter}. All values are {@link NullnessValue}s (the ASM analysis
+     * classes are not generic).
+     */
+    private final class NullnessInterpreter extends Interpreter {
+
+        private final BasicInterpreter basic = new BasicInterpreter();
+        @NotNull
+        private final BitSet notNullLocals;
+
+        private NullnessInterpreter(@NotNull final BitSet notNullLocals) {
+            super(Opcodes.ASM5);
+            this.notNullLocals = notNullLocals;
+        }
+
+        @Override
+        @Nullable
+        public Value newValue(@Nullable final Type type) {
+            return wrap(basic.newValue(type), false);
+        }
+
+        @Override
+        @Nullable
+        public Value newOperation(@NotNull final AbstractInsnNode insn) throws AnalyzerException {
+            final boolean notNull;
+            switch (insn.getOpcode()) {
+                case Opcodes.NEW:
+                    notNull = true;
+                    break;
+                case Opcodes.LDC:
+                    final Object constant = ((LdcInsnNode) insn).cst;
+                    notNull = constant instanceof String || constant instanceof Type || constant instanceof Handle;
+                    break;
+                default:
+                    notNull = false;
+            }
+            return wrap(basic.newOperation(insn), notNull);
+        }
+
+        @Override
+        @Nullable
+        public Value copyOperation(@NotNull final AbstractInsnNode insn, @NotNull final Value value) throws AnalyzerException {
+            final boolean notNull = isNotNull(value) || (insn.getOpcode() == Opcodes.ALOAD && notNullLocals.get(((VarInsnNode) insn).var));
+            return wrap(basic.copyOperation(insn, unwrap(value)), notNull);
+        }
+
+        @Override
+        @Nullable
+        public Value unaryOperation(@NotNull final AbstractInsnNode insn, @NotNull final Value value) throws AnalyzerException {
+            final boolean notNull;
+            switch (insn.getOpcode()) {
+                case Opcodes.NEWARRAY:
+                case Opcodes.ANEWARRAY:
+                    notNull = true;
+                    break;
+                case Opcodes.CHECKCAST:
+                    notNull = isNotNull(value);
+                    break;
+                default:
+                    notNull = false;
+            }
+            return wrap(basic.unaryOperation(insn, unwrap(value)), notNull);
+        }
+
+        @Override
+        @Nullable
+        public Value binaryOperation(@NotNull final AbstractInsnNode insn, @NotNull final Value value1, @NotNull final Value value2) throws AnalyzerException {
+            return wrap(basic.binaryOperation(insn, unwrap(value1), unwrap(value2)), false);
+        }
+
+        @Override
+        @Nullable
+        public Value ternaryOperation(@NotNull final AbstractInsnNode insn, @NotNull final Value value1, @NotNull final Value value2, @NotNull final Value value3) throws AnalyzerException {
+            return wrap(basic.ternaryOperation(insn, unwrap(value1), unwrap(value2), unwrap(value3)), false);
+        }
+
+        // the interpreter is not generic in the published ASM 5 jars, so neither is the list of values
+        @SuppressWarnings("rawtypes")
+        @Override
+        @Nullable
+        public Value naryOperation(@NotNull final AbstractInsnNode insn, @NotNull final List values) throws AnalyzerException {
+            final List<BasicValue> basicValues = new ArrayList<>(values.size());
+            for (final Object value : values) {
+                basicValues.add(unwrap((Value) value));
+            }
+            return wrap(basic.naryOperation(insn, basicValues), insn.getOpcode() == Opcodes.MULTIANEWARRAY || isNotNullCall(insn));
+        }
+
+        private boolean isNotNullCall(@NotNull final AbstractInsnNode insn) {
+            if (!(insn instanceof MethodInsnNode)) {
+                return false;
+            }
+            final MethodInsnNode call = (MethodInsnNode) insn;
+            if (STRING_BUILDER_CLASS_NAME.equals(call.owner)) {
+                return "toString".equals(call.name);
+            }
+            return className.equals(call.owner) && notNullMethods.contains(call.name + call.desc);
+        }
+
+        @Override
+        public void returnOperation(@NotNull final AbstractInsnNode insn, @NotNull final Value value, @NotNull final Value expected) {
+        }
+
+        @Override
+        @NotNull
+        public Value merge(@NotNull final Value v, @NotNull final Value w) {
+            final BasicValue merged = basic.merge(unwrap(v), unwrap(w));
+            final boolean notNull = isNotNull(v) && isNotNull(w);
+            if (merged.equals(unwrap(v)) && notNull == isNotNull(v)) {
+                return v;
+            }
+            return new NullnessValue(merged, notNull);
+        }
+
+        @Nullable
+        private NullnessValue wrap(@Nullable final BasicValue value, final boolean notNull) {
+            return value == null ? null : new NullnessValue(value, notNull);
+        }
+
+        @NotNull
+        private BasicValue unwrap(@NotNull final Value value) {
+            return ((NullnessValue) value).value;
+        }
+
+    }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the checks from pushing a method over the HotSpot code length limits that change how it is compiled: a
+ * method longer than {@value #FREQ_INLINE_SIZE} bytes (FreqInlineSize) is not inlined into its hot callers, and one
+ * longer than {@value #HUGE_METHOD_LIMIT} bytes (HugeMethodLimit, with DontCompileHugeMethods) is not compiled at
+ * all.
+ * <p>
+ * A method under a limit that its checks would push over it gets the first of these that keeps it under: compact
+ * checks, compact parameter checks only and, for the huge method limit, no checks. If none does, it keeps its checks.
+ * <p>
+ * Methods are measured by writing them to a scratch class, which has another constant pool than the instrumented
+ * class. The length with the checks counts every ldc of a one word constant that the checks add as the wide form,
+ * while the ldcs of the method itself are counted as they are.
+ * <p>
+ * The fallbacks are decided before the nullness analysis, which does not trust a method that may lose its return
+ * value checks to never return null, nor its parameters to be checked if it may lose all its checks.
+ */
+public final class SizeBudget {
+
+    static final int FREQ_INLINE_SIZE = 325;
+    static final int HUGE_METHOD_LIMIT = 8000;
+
+    /**
+     * The smaller forms of the checks, in order of preference.
+     */
+    enum Fallback {
+        COMPACT("compact checks"),
+        COMPACT_PARAMETERS("compact parameter checks only"),
+        NONE("no checks");
+
+        @NotNull
+        private final String description;
+
+        Fallback(@NotNull final String description) {
+            this.description = description;
+        }
+    }
+
+    private final ClassWriter scratch = new ClassWriter(0);
+    private final List<Decision> decisions = new ArrayList<>();
+
+    /**
+     * @param className the class of the methods, which is the type of this in their implicit first frame.
+     */
+    SizeBudget(@NotNull final String className) {
+        scratch.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+    }
+
+    /**
+     * @return the limit that a method of the length is under, or 0 if over both.
+     */
+    static int getLimit(final int length) {
+        if (length <= FREQ_INLINE_SIZE) {
+            return FREQ_INLINE_SIZE;
+        }
+        return length <= HUGE_METHOD_LIMIT ? HUGE_METHOD_LIMIT : 0;
+    }
+
+    /**
+     * @return the code length of the method as it is.
+     */
+    @NotNull
+    CodeLength measure(@NotNull final MethodNode method) {
+        final CodeLength codeLength = newCodeLength(method);
+        method.accept(codeLength);
+        return codeLength;
+    }
+
+    /**
+     * @return a method visitor writing the method to the scratch class, to measure it.
+     */
+    @NotNull
+    CodeLength newCodeLength(@NotNull final MethodNode method) {
+        return new CodeLength(scratch.visitMethod(method.access, method.name, method.desc, null, null));
+    }
+
+    void addDecision(@NotNull final Decision decision) {
+        decisions.add(decision);
+    }
+
+    @NotNull
+    List<Decision> getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Records the code length of the method written through it, when it is complete.
+     */
+    static final class CodeLength extends MethodVisitor {
+
+        private int length;
+        private int narrowConstants;
+
+        private CodeLength(@NotNull final MethodVisitor methodVisitor) {
+            super(Opcodes.ASM5, methodVisitor);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+            if (!(cst instanceof Long) && !(cst instanceof Double)) {
+                narrowConstants++;
+            }
+            super.visitLdcInsn(cst);
+        }
+
+        @Override
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+            final Label end = new Label();
+            super.visitLabel(end);
+            length = end.getOffset();
+            super.visitMaxs(maxStack, maxLocals);
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        /**
+         * @param original the method as it is, before the checks were added to it.
+         * @return the length if every ldc of a one word constant added to the original were wide (in a class with more
+         * than 256 constants).
+         */
+        int getMaxLength(@NotNull final CodeLength original) {
+            return length + Math.max(0, narrowConstants - original.narrowConstants);
+        }
+    }
+
+    /**
+     * How a method that its checks would push over a limit was instrumented.
+     */
+    public static final class Decision {
+
+        @NotNull
+        private final String method;
+        private final int originalLength;
+        private final int checkedLength;
+        private final int limit;
+        @Nullable
+        private final Fallback fallback;
+        private final int length;
+
+        /**
+         * @param fallback the smaller checks that keep the method under the limit, with the length, or null if the
+         *                 method keeps its checks (the length being that of the smallest checks tried).
+         */
+        Decision(@NotNull final String method, final int originalLength, final int checkedLength, final int limit, @Nullable final Fallback fallback, final int length) {
+            this.method = method;
+            this.originalLength = originalLength;
+            this.checkedLength = checkedLength;
+            this.limit = limit;
+            this.fallback = fallback;
+            this.length = length;
+        }
+
+        /**
+         * @return the smaller checks the method gets, or null if it keeps its checks.
+         */
+        @Nullable
+        Fallback getFallback() {
+            return fallback;
+        }
+
+        /**
+         * @return true if the method is left without checks or still goes over the limit.
+         */
+        public boolean isWarning() {
+            return fallback == null || fallback == Fallback.NONE;
+        }
+
+        @NotNull
+        public String getMessage() {
+            final String crossing = method + " would grow from " + originalLength + " to " + checkedLength + " bytes with its checks, over the " + getLimitDescription();
+            if (fallback == null) {
+                return crossing + ", and keeps its checks since it would still be " + length + " bytes with the smallest";
+            }
+            return crossing + ", so gets " + fallback.description + " (" + length + " bytes)";
+        }
+
+        @NotNull
+        private String getLimitDescription() {
+            return limit == FREQ_INLINE_SIZE ? limit + " byte inlining limit (FreqInlineSize)" : limit + " byte huge method limit (HugeMethodLimit)";
+        }
+
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+}
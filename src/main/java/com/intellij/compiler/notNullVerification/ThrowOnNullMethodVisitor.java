@@ -18,36 +18,106 @@ package com.intellij.compiler.notNullVerification;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import se.eris.asm.AsmUtils;
-import se.eris.lang.LangUtils;
+import se.eris.notnull.runtime.NullChecks;
 
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
 
     static final String LJAVA_LANG_SYNTHETIC_ANNO = "Ljava/lang/Synthetic;";
-    private static final String IAE_CLASS_NAME = "java/lang/IllegalArgumentException";
-    private static final String ISE_CLASS_NAME = "java/lang/IllegalStateException";
-    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String JAVA_LANG_OBJECT = "java/lang/Object";
+    private static final Object[] NO_LOCALS = new Object[0];
+    private static final Handle NULL_CHECKS_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC, "se/eris/notnull/runtime/NullChecks", "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;", false);
 
     final Type[] argumentTypes;
     private final Type returnType;
     boolean isReturnNotNull;
     private final boolean isAnonymousClass;
+    @NotNull
+    private final CheckGeneration generation;
+    /**
+     * A generated frame is at the current bytecode offset, so a frame from the original code must not follow
+     * without an instruction in between.
+     */
+    private boolean frameAtCurrentOffset = false;
     private boolean instrumented = false;
+    /**
+     * A return has been checked in place, the following ones jump to the shared checked return.
+     */
+    private boolean returnChecked = false;
+    @Nullable
+    private Label sharedReturn;
+    /**
+     * The returns (by their order in the code) that cannot return null, so are not checked.
+     */
+    @Nullable
+    private BitSet notNullReturns;
+    private int returnNumber = 0;
+    private int elidedReturnChecks = 0;
+    /**
+     * The parameters that are never passed null, so are not checked.
+     */
+    @Nullable
+    private BitSet uncheckedParameters;
+    private int elidedParameterChecks = 0;
+    /**
+     * False for the body and the entry point of a method split by the {@link DualEntryPoints}: the entry point checks
+     * the parameters, the body the return value.
+     */
+    private boolean parameterChecks = true;
+    private boolean returnChecks = true;
+    /**
+     * False if the method is not visible enough for the parameter, or return value, checks by the visibility policy.
+     */
+    private boolean parametersVisible = true;
+    private boolean returnVisible = true;
+    private int excludedParameterChecks = 0;
+    private int excludedReturnChecks = 0;
+    /**
+     * The block that the fused parameter checks jump to, and the parameters it finds the null one among.
+     */
+    @Nullable
+    private Label failedParameters;
+    @Nullable
+    private BitSet fusedParams;
+    /**
+     * With cold throws, the blocks after the code of the method that the checks jump to: one per parameter and one
+     * shared by the return value checks.
+     */
+    @NotNull
+    private Map<Label, Integer> failedParameterChecks = Collections.emptyMap();
+    @Nullable
+    private Label failedReturn;
+    /**
+     * The locals of the frame after a parameter check, the same for all the checks of the method.
+     */
+    @Nullable
+    private Object[] prologueLocals;
+    @Nullable
+    private Object[] returnStack;
     private int syntheticCount;
     final int access;
     final String methodName;
     final String className;
-    final List<Integer> notNullParams;
+    /**
+     * The parameters to check, or null if there are none.
+     */
+    @Nullable
+    private BitSet notNullParams;
     Label startGeneratedCodeLabel;
 
-    ThrowOnNullMethodVisitor(final int api, @Nullable final MethodVisitor mv, @NotNull final Type[] argumentTypes, final Type returnType, final int access, final String methodName, final String className, final boolean isReturnNotNull, boolean isAnonymousClass) {
+    ThrowOnNullMethodVisitor(final int api, @Nullable final MethodVisitor mv, @NotNull final Type[] argumentTypes, final Type returnType, final int access, final String methodName, final String className, final boolean isReturnNotNull, boolean isAnonymousClass, @NotNull final CheckGeneration generation) {
         super(api, mv);
         this.argumentTypes = argumentTypes;
         this.returnType = returnType;
@@ -56,8 +126,26 @@ public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
         this.className = className;
         this.isReturnNotNull = isReturnNotNull;
         this.isAnonymousClass = isAnonymousClass;
+        this.generation = generation;
         syntheticCount = 0;
-        notNullParams = new ArrayList<>();
+    }
+
+    void addNotNullParam(final int parameter) {
+        if (notNullParams == null) {
+            notNullParams = new BitSet(argumentTypes.length);
+        }
+        notNullParams.set(parameter);
+    }
+
+    /**
+     * @return true if the parameter was to be checked.
+     */
+    boolean removeNotNullParam(final int parameter) {
+        if (notNullParams == null || !notNullParams.get(parameter)) {
+            return false;
+        }
+        notNullParams.clear(parameter);
+        return true;
     }
 
     private void setInstrumented() {
@@ -67,24 +155,310 @@ public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
     /**
      * Visits a zero operand instruction (ie return).
      * <p>
+     * The first return is checked in place, the others jump to a checked return at the end of the method, so that
+     * methods with many returns get at most two return value checks.
+     * <p>
      * {@inheritDoc}
      */
     public void visitInsn(final int opcode) {
-        if (shouldInclude() && opcode == Opcodes.ARETURN) {
-            if (isReturnNotNull) {
-                mv.visitInsn(Opcodes.DUP);
-                final Label skipLabel = new Label();
-                mv.visitJumpInsn(Opcodes.IFNONNULL, skipLabel);
-                generateThrow(ISE_CLASS_NAME, "NotNull method " + className + "." + methodName + " must not return null", skipLabel);
+        if (shouldInclude() && opcode == Opcodes.ARETURN && isReturnNotNull && returnChecks && isCheckedReturn() && isVisibleReturn()) {
+            if (returnChecked) {
+                if (sharedReturn == null) {
+                    sharedReturn = new Label();
+                }
+                frameAtCurrentOffset = false;
+                mv.visitJumpInsn(Opcodes.GOTO, sharedReturn);
+                return;
             }
+            generateReturnCheck();
+            returnChecked = true;
         }
+        frameAtCurrentOffset = false;
         mv.visitInsn(opcode);
     }
 
+    /**
+     * @return false if the nullness analysis found that the current return cannot return null.
+     */
+    private boolean isCheckedReturn() {
+        final int number = returnNumber++;
+        if (notNullReturns != null && notNullReturns.get(number)) {
+            elidedReturnChecks++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the visibility policy leaves out the return value checks of the method.
+     */
+    private boolean isVisibleReturn() {
+        if (!returnVisible) {
+            excludedReturnChecks++;
+        }
+        return returnVisible;
+    }
+
+    /**
+     * Adds the shared checked return, if any return jumps to it, and the blocks throwing for the fused checks or cold
+     * throws, if any, after the original code (where they are outside all try blocks).
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public void visitMaxs(final int maxStack, final int maxLocals) {
+        if (sharedReturn != null) {
+            mv.visitLabel(sharedReturn);
+            visitReturnFrame();
+            generateReturnCheck();
+            mv.visitInsn(Opcodes.ARETURN);
+        }
+        if (failedParameters != null && fusedParams != null) {
+            mv.visitLabel(failedParameters);
+            visitPrologueFrame();
+            generateFailedParameters(fusedParams);
+        }
+        for (final Map.Entry<Label, Integer> failedParameterCheck : failedParameterChecks.entrySet()) {
+            mv.visitLabel(failedParameterCheck.getKey());
+            visitPrologueFrame();
+            generateArgumentThrow(failedParameterCheck.getValue(), new Label());
+            generateHelperReturnGuard();
+        }
+        if (failedReturn != null) {
+            mv.visitLabel(failedReturn);
+            visitReturnFrame();
+            generateReturnThrow(new Label());
+            generateHelperReturnGuard();
+        }
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    /**
+     * Generates the check of the return value on top of the stack, leaving it there.
+     */
+    private void generateReturnCheck() {
+        final Label skipLabel = new Label();
+        if (generation.isGuarded()) {
+            ChecksDisabledField.generateGuard(mv, className, skipLabel);
+        }
+        mv.visitInsn(Opcodes.DUP);
+        if (generation.isDynamic()) {
+            generateDynamicCheck(NullChecks.CHECK_RETURN, returnType, getReturnMessage());
+            mv.visitLabel(skipLabel);
+            if (generation.isGuarded()) {
+                visitReturnFrame();
+            }
+        } else if (generation.isColdThrows()) {
+            if (failedReturn == null) {
+                failedReturn = new Label();
+            }
+            mv.visitJumpInsn(Opcodes.IFNULL, failedReturn);
+            setInstrumented();
+            if (generation.isGuarded()) {
+                mv.visitLabel(skipLabel);
+                visitReturnFrame();
+            }
+        } else {
+            mv.visitJumpInsn(Opcodes.IFNONNULL, skipLabel);
+            generateReturnThrow(skipLabel);
+            visitReturnFrame();
+        }
+    }
+
+    /**
+     * Generates the throw for a null return value. Through a helper the code falls through to the end label.
+     */
+    private void generateReturnThrow(@NotNull final Label end) {
+        final NullCheckHelpers helpers = generation.getHelpers();
+        if (generation.isCompactMessages() && helpers != null) {
+            helpers.generateReturnCall(mv, methodName);
+            mv.visitLabel(end);
+            setInstrumented();
+        } else {
+            generateThrow(generation.getExceptions().getReturnException(), getReturnMessage(), end);
+        }
+    }
+
+    @Override
+    public void visitFrame(final int type, final int nLocal, final Object[] local, final int nStack, final Object[] stack) {
+        if (frameAtCurrentOffset) {
+            mv.visitInsn(Opcodes.NOP);
+            frameAtCurrentOffset = false;
+        }
+        super.visitFrame(type, nLocal, local, nStack, stack);
+    }
+
+    @Override
+    public void visitIntInsn(final int opcode, final int operand) {
+        frameAtCurrentOffset = false;
+        super.visitIntInsn(opcode, operand);
+    }
+
+    @Override
+    public void visitVarInsn(final int opcode, final int var) {
+        frameAtCurrentOffset = false;
+        super.visitVarInsn(opcode, var);
+    }
+
+    @Override
+    public void visitTypeInsn(final int opcode, final String type) {
+        frameAtCurrentOffset = false;
+        super.visitTypeInsn(opcode, type);
+    }
+
+    @Override
+    public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+        frameAtCurrentOffset = false;
+        super.visitFieldInsn(opcode, owner, name, desc);
+    }
+
+    @Override
+    public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+        frameAtCurrentOffset = false;
+        super.visitMethodInsn(opcode, owner, name, desc, itf);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(final String name, final String desc, final Handle bsm, final Object... bsmArgs) {
+        frameAtCurrentOffset = false;
+        super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+    }
+
+    @Override
+    public void visitJumpInsn(final int opcode, final Label label) {
+        frameAtCurrentOffset = false;
+        super.visitJumpInsn(opcode, label);
+    }
+
+    @Override
+    public void visitLdcInsn(final Object cst) {
+        frameAtCurrentOffset = false;
+        super.visitLdcInsn(cst);
+    }
+
+    @Override
+    public void visitIincInsn(final int var, final int increment) {
+        frameAtCurrentOffset = false;
+        super.visitIincInsn(var, increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+        frameAtCurrentOffset = false;
+        super.visitTableSwitchInsn(min, max, dflt, labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+        frameAtCurrentOffset = false;
+        super.visitLookupSwitchInsn(dflt, keys, labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(final String desc, final int dims) {
+        frameAtCurrentOffset = false;
+        super.visitMultiANewArrayInsn(desc, dims);
+    }
+
     boolean hasInstrumented() {
         return instrumented;
     }
 
+    /**
+     * @param notNullReturns the returns (by their order in the code) found not to return null by the
+     *                       {@link NullnessAnalysis}, which are not checked.
+     */
+    void setNotNullReturns(@NotNull final BitSet notNullReturns) {
+        this.notNullReturns = notNullReturns;
+    }
+
+    /**
+     * @param uncheckedParameters the parameters found never to be passed null by the {@link NullnessAnalysis},
+     *                            which are not checked.
+     */
+    void setUncheckedParameters(@NotNull final BitSet uncheckedParameters) {
+        this.uncheckedParameters = uncheckedParameters;
+    }
+
+    /**
+     * Leaves out the parameter checks, for the body of a split method.
+     */
+    void skipParameterChecks() {
+        parameterChecks = false;
+    }
+
+    /**
+     * Leaves out the return value checks, for the entry point of a split method (which returns the value checked by
+     * the body).
+     */
+    void skipReturnChecks() {
+        returnChecks = false;
+    }
+
+    /**
+     * Leaves out the parameter and/or return value checks of a method that is not visible enough for them.
+     */
+    void setVisibleChecks(final boolean parametersVisible, final boolean returnVisible) {
+        this.parametersVisible = parametersVisible;
+        this.returnVisible = returnVisible;
+    }
+
+    /**
+     * Applies the checks to leave out, decided for the method, as they are for another visitor of it.
+     */
+    void copyChecks(@NotNull final ThrowOnNullMethodVisitor other) {
+        notNullReturns = other.notNullReturns;
+        uncheckedParameters = other.uncheckedParameters;
+        parameterChecks = other.parameterChecks;
+        returnChecks = other.returnChecks;
+        parametersVisible = other.parametersVisible;
+        returnVisible = other.returnVisible;
+    }
+
+    /**
+     * @return the method visitor the instrumented method is written to.
+     */
+    @Nullable
+    MethodVisitor getTarget() {
+        return mv;
+    }
+
+    /**
+     * @return the number of parameter checks left out by the visibility policy.
+     */
+    int getExcludedParameterChecks() {
+        return excludedParameterChecks;
+    }
+
+    /**
+     * @return the number of return value checks left out by the visibility policy.
+     */
+    int getExcludedReturnChecks() {
+        return excludedReturnChecks;
+    }
+
+    /**
+     * @return the number of return value checks left out since the nullness analysis found them redundant.
+     */
+    int getElidedReturnChecks() {
+        return elidedReturnChecks;
+    }
+
+    /**
+     * @return the number of parameter checks left out since the nullness analysis found them redundant.
+     */
+    int getElidedParameterChecks() {
+        return elidedParameterChecks;
+    }
+
+    private int getParameterLocal(final int parameter) {
+        int var = isStatic() ? 0 : 1;
+        for (int i = 0; i < parameter; ++i) {
+            var += argumentTypes[i].getSize();
+        }
+        return var;
+    }
+
     private boolean isStatic() {
         return (access & Opcodes.ACC_STATIC) != 0;
     }
@@ -99,24 +473,76 @@ public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
     @Override
     public void visitCode() {
         if (shouldInclude()) {
-            if (!notNullParams.isEmpty()) {
+            final BitSet checkedParams = getCheckedParams();
+            Label disabledLabel = null;
+            if (checkedParams != null) {
                 startGeneratedCodeLabel = new Label();
                 mv.visitLabel(startGeneratedCodeLabel);
+                if (generation.isGuarded()) {
+                    disabledLabel = new Label();
+                    ChecksDisabledField.generateGuard(mv, className, disabledLabel);
+                }
+                generateParameterChecks(checkedParams);
             }
-            for (final Integer notNullParam : notNullParams) {
-                int var = ((access & Opcodes.ACC_STATIC) == 0) ? 1 : 0;
-                for (int i = 0; i < notNullParam; ++i) {
-                    var += argumentTypes[i].getSize();
+            if (disabledLabel != null) {
+                // at the end of the last check, which already has a frame unless its throw is elsewhere (or it has none)
+                mv.visitLabel(disabledLabel);
+                if (generation.isDynamic() || generation.isFused() || generation.isColdThrows()) {
+                    visitPrologueFrame();
                 }
-                mv.visitVarInsn(Opcodes.ALOAD, var);
+            }
+        }
+        mv.visitCode();
+    }
 
+    private void generateParameterChecks(@NotNull final BitSet checkedParams) {
+        if (generation.isFused()) {
+            fusedParams = checkedParams;
+            failedParameters = new Label();
+            for (int notNullParam = checkedParams.nextSetBit(0); notNullParam >= 0; notNullParam = checkedParams.nextSetBit(notNullParam + 1)) {
+                mv.visitVarInsn(Opcodes.ALOAD, getParameterLocal(notNullParam));
+                mv.visitJumpInsn(Opcodes.IFNULL, failedParameters);
+            }
+            setInstrumented();
+            return;
+        }
+        for (int notNullParam = checkedParams.nextSetBit(0); notNullParam >= 0; notNullParam = checkedParams.nextSetBit(notNullParam + 1)) {
+            mv.visitVarInsn(Opcodes.ALOAD, getParameterLocal(notNullParam));
+
+            if (generation.isDynamic()) {
+                generateDynamicCheck(NullChecks.CHECK_ARGUMENT, argumentTypes[notNullParam], getThrowMessage(notNullParam));
+            } else if (generation.isColdThrows()) {
+                mv.visitJumpInsn(Opcodes.IFNULL, addFailedParameterCheck(notNullParam));
+                setInstrumented();
+            } else {
                 final Label end = new Label();
                 mv.visitJumpInsn(Opcodes.IFNONNULL, end);
-
-                generateThrow(IAE_CLASS_NAME, getThrowMessage(notNullParam), end);
+                generateArgumentThrow(notNullParam, end);
+                visitPrologueFrame();
             }
         }
-        mv.visitCode();
+    }
+
+    /**
+     * @return the parameters to check in the prologue, counting those left out, or null if there are none. The
+     * parameters to check are returned as they are when none is left out.
+     */
+    @Nullable
+    private BitSet getCheckedParams() {
+        if (notNullParams == null || notNullParams.isEmpty() || !parameterChecks) {
+            return null;
+        }
+        if (!parametersVisible) {
+            excludedParameterChecks += notNullParams.cardinality();
+            return null;
+        }
+        if (uncheckedParameters == null || !uncheckedParameters.intersects(notNullParams)) {
+            return notNullParams;
+        }
+        final BitSet checkedParams = (BitSet) notNullParams.clone();
+        checkedParams.andNot(uncheckedParameters);
+        elidedParameterChecks += notNullParams.cardinality() - checkedParams.cardinality();
+        return checkedParams.isEmpty() ? null : checkedParams;
     }
 
     protected boolean shouldInclude() {
@@ -140,18 +566,134 @@ public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
         return (this.access & Opcodes.ACC_SYNTHETIC) == Opcodes.ACC_SYNTHETIC;
     }
 
+    /**
+     * Generates the throw for a null parameter. Through a helper the code falls through to the end label.
+     */
+    private void generateArgumentThrow(final int notNullParam, @NotNull final Label end) {
+        final NullCheckHelpers helpers = generation.getHelpers();
+        if (generation.isCompactMessages() && helpers != null) {
+            helpers.generateArgumentCall(mv, getParameterDescription(), methodName, getSourceCodeParameterNumber(notNullParam));
+            mv.visitLabel(end);
+            setInstrumented();
+        } else {
+            generateThrow(generation.getExceptions().getArgumentException(), getThrowMessage(notNullParam), end);
+        }
+    }
+
+    /**
+     * Generates the block that the fused parameter checks jump to, which tests the parameters again to find the
+     * first null one and throws as its own check would have. The last parameter needs no test: one of them is null.
+     */
+    private void generateFailedParameters(@NotNull final BitSet checkedParams) {
+        final int last = checkedParams.length() - 1;
+        for (int notNullParam = checkedParams.nextSetBit(0); notNullParam < last; notNullParam = checkedParams.nextSetBit(notNullParam + 1)) {
+            final Label end = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, getParameterLocal(notNullParam));
+            mv.visitJumpInsn(Opcodes.IFNONNULL, end);
+            generateArgumentThrow(notNullParam, end);
+            visitPrologueFrame();
+        }
+        generateArgumentThrow(last, new Label());
+        generateHelperReturnGuard();
+    }
+
+    /**
+     * Ends a block after the code of the method that throws through a helper: the helper never returns, but the code
+     * must not fall off the end of the method (or into the next block, with another frame).
+     */
+    private void generateHelperReturnGuard() {
+        if (generation.getHelpers() != null) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+            mv.visitInsn(Opcodes.ATHROW);
+        }
+    }
+
+    @NotNull
+    private Label addFailedParameterCheck(final int notNullParam) {
+        if (failedParameterChecks.isEmpty()) {
+            failedParameterChecks = new LinkedHashMap<>();
+        }
+        final Label failed = new Label();
+        failedParameterChecks.put(failed, notNullParam);
+        return failed;
+    }
+
+    /**
+     * Generates the throw for a failed check. Through a helper the code falls through to the end label, with the
+     * same stack as when jumping there, but the helper never returns.
+     */
     private void generateThrow(@NotNull final String exceptionClass, @NotNull final String description, @NotNull final Label end) {
-        final String exceptionParamClass = "(" + LangUtils.convertToJavaClassName(String.class.getName()) + ")V";
-        mv.visitTypeInsn(Opcodes.NEW, exceptionClass);
-        mv.visitInsn(Opcodes.DUP);
-        mv.visitLdcInsn(description);
-        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exceptionClass, CONSTRUCTOR_NAME, exceptionParamClass, false);
-        mv.visitInsn(Opcodes.ATHROW);
+        final NullCheckHelpers helpers = generation.getHelpers();
+        if (helpers != null) {
+            mv.visitLdcInsn(description);
+            helpers.generateCall(mv, exceptionClass);
+        } else {
+            final NullCheckExceptions exceptions = generation.getExceptions();
+            exceptions.generateNew(mv, exceptionClass);
+            mv.visitLdcInsn(description);
+            exceptions.generateCreate(mv, exceptionClass);
+            mv.visitInsn(Opcodes.ATHROW);
+        }
         mv.visitLabel(end);
 
         setInstrumented();
     }
 
+    /**
+     * Generates an invokedynamic call site checking (and consuming) the value on top of the stack, linked by
+     * {@link NullChecks#bootstrap}.
+     */
+    private void generateDynamicCheck(@NotNull final String name, @NotNull final Type type, @NotNull final String description) {
+        mv.visitInvokeDynamicInsn(name, Type.getMethodDescriptor(Type.VOID_TYPE, type), NULL_CHECKS_BOOTSTRAP, description);
+        setInstrumented();
+    }
+
+    /**
+     * The frame after a parameter check: the locals are the parameters as on method entry, the stack is empty.
+     */
+    private void visitPrologueFrame() {
+        if (!generation.isEmitFrames()) {
+            return;
+        }
+        if (prologueLocals == null) {
+            prologueLocals = getPrologueLocals();
+        }
+        mv.visitFrame(Opcodes.F_NEW, prologueLocals.length, prologueLocals, 0, null);
+        frameAtCurrentOffset = true;
+    }
+
+    /**
+     * @return the parameters as on method entry. The frame types are reused by all the frames of the method, since
+     * ASM copies them.
+     */
+    @NotNull
+    private Object[] getPrologueLocals() {
+        final int offset = isStatic() ? 0 : 1;
+        final Object[] locals = new Object[argumentTypes.length + offset];
+        if (!isStatic()) {
+            locals[0] = (isConstructor() && !JAVA_LANG_OBJECT.equals(className)) ? Opcodes.UNINITIALIZED_THIS : className;
+        }
+        for (int i = 0; i < argumentTypes.length; i++) {
+            locals[i + offset] = AsmUtils.toFrameType(argumentTypes[i]);
+        }
+        return locals;
+    }
+
+    /**
+     * The frame before ARETURN after the return value check: only the return value is needed, so no locals are
+     * declared (whatever is in them is assignable to TOP).
+     */
+    private void visitReturnFrame() {
+        if (!generation.isEmitFrames()) {
+            return;
+        }
+        if (returnStack == null) {
+            returnStack = new Object[]{AsmUtils.toFrameType(returnType)};
+        }
+        mv.visitFrame(Opcodes.F_NEW, 0, NO_LOCALS, 1, returnStack);
+        frameAtCurrentOffset = true;
+    }
+
     boolean isReturnReferenceType() {
         return AsmUtils.isReferenceType(this.returnType);
     }
@@ -161,7 +703,20 @@ public abstract class ThrowOnNullMethodVisitor extends MethodVisitor {
     }
 
     @NotNull
-    protected abstract String getThrowMessage(int parameterNumber);
+    private String getThrowMessage(final int parameterNumber) {
+        return "Argument " + getSourceCodeParameterNumber(parameterNumber) + " for " + getParameterDescription() + " parameter of " + className + "." + methodName + " must not be null";
+    }
+
+    @NotNull
+    private String getReturnMessage() {
+        return "NotNull method " + className + "." + methodName + " must not return null";
+    }
+
+    /**
+     * @return how the checked parameters are described in the messages (ie @NotNull).
+     */
+    @NotNull
+    protected abstract String getParameterDescription();
 
     int increaseSyntheticCount() {
         return syntheticCount++;
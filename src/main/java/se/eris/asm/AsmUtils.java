@@ -16,12 +16,18 @@
 package se.eris.asm;
 
 import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 
 public final class AsmUtils {
 
     public static final int JAVA_VERSION_5 = 5;
     public static final int JAVA_VERSION_6 = 6;
+    public static final int JAVA_VERSION_7 = 7;
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int CLASS_FILE_HEADER_LENGTH = 8;
 
     private AsmUtils() {
     }
@@ -35,6 +41,79 @@ public final class AsmUtils {
         return asmOpcodeToJavaVersion(opcodeVersion) >= JAVA_VERSION_5;
     }
 
+    public static boolean javaVersionHasStackMapFrames(final int opcodeVersion) {
+        return asmOpcodeToJavaVersion(opcodeVersion) >= JAVA_VERSION_6;
+    }
+
+    public static boolean javaVersionSupportsInvokeDynamic(final int opcodeVersion) {
+        return asmOpcodeToJavaVersion(opcodeVersion) >= JAVA_VERSION_7;
+    }
+
+    /**
+     * @return the type as a (expanded) stack map frame element: a primitive type constant from
+     * {@link org.objectweb.asm.Opcodes}, or the internal name (descriptor for arrays) of a reference type.
+     */
+    @NotNull
+    public static Object toFrameType(@NotNull final Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+            case Type.CHAR:
+            case Type.BYTE:
+            case Type.SHORT:
+            case Type.INT:
+                return Opcodes.INTEGER;
+            case Type.FLOAT:
+                return Opcodes.FLOAT;
+            case Type.LONG:
+                return Opcodes.LONG;
+            case Type.DOUBLE:
+                return Opcodes.DOUBLE;
+            case Type.ARRAY:
+                return type.getDescriptor();
+            default:
+                return type.getInternalName();
+        }
+    }
+
+    /**
+     * Generates the shortest instruction pushing the int constant (ICONST_n, BIPUSH, SIPUSH or LDC).
+     */
+    public static void generatePushInt(@NotNull final MethodVisitor mv, final int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Reads the version straight from the class file header (magic, minor_version, major_version) without parsing
+     * the rest of the class.
+     *
+     * @return the class file version in the same format as ASM (minor version in the high 16 bits, major version in
+     * the low 16 bits).
+     */
+    public static int getClassFileVersion(@NotNull final byte[] classBytes) {
+        if (classBytes.length < CLASS_FILE_HEADER_LENGTH || readInt(classBytes, 0) != CLASS_FILE_MAGIC) {
+            throw new IllegalArgumentException("Not a class file (missing class file header)");
+        }
+        final int minorVersion = readUnsignedShort(classBytes, 4);
+        final int majorVersion = readUnsignedShort(classBytes, 6);
+        return (minorVersion << 16) | majorVersion;
+    }
+
+    private static int readInt(@NotNull final byte[] bytes, final int offset) {
+        return (readUnsignedShort(bytes, offset) << 16) | readUnsignedShort(bytes, offset + 2);
+    }
+
+    static int readUnsignedShort(@NotNull final byte[] bytes, final int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
     /**
      * @return the Java version as an integer (ie. 1, 2, 3, ... 8)
      * @param versionOpcode .
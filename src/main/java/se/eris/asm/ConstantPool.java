@@ -0,0 +1,226 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.asm;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Minimal read-only view of the constant pool of a class file, read straight from the class file bytes without
+ * creating any ASM visitors.
+ */
+public final class ConstantPool {
+
+    private static final int POOL_COUNT_OFFSET = 8;
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    @NotNull
+    private final byte[] classBytes;
+    /**
+     * Offset of the tag of each entry (0 for the unusable entries: index 0 and the second slot of long/double).
+     */
+    @NotNull
+    private final int[] entryOffsets;
+    private final int endOffset;
+
+    private ConstantPool(@NotNull final byte[] classBytes, @NotNull final int[] entryOffsets, final int endOffset) {
+        this.classBytes = classBytes;
+        this.entryOffsets = entryOffsets;
+        this.endOffset = endOffset;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a class file or contain an unknown constant pool entry.
+     */
+    @NotNull
+    public static ConstantPool read(@NotNull final byte[] classBytes) {
+        AsmUtils.getClassFileVersion(classBytes);
+        try {
+            final int count = AsmUtils.readUnsignedShort(classBytes, POOL_COUNT_OFFSET);
+            final int[] entryOffsets = new int[count];
+            int offset = POOL_COUNT_OFFSET + 2;
+            for (int i = 1; i < count; i++) {
+                entryOffsets[i] = offset;
+                final int tag = classBytes[offset];
+                switch (tag) {
+                    case UTF8:
+                        offset += 3 + AsmUtils.readUnsignedShort(classBytes, offset + 1);
+                        break;
+                    case CLASS:
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE:
+                        offset += 3;
+                        break;
+                    case METHOD_HANDLE:
+                        offset += 4;
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELD_REF:
+                    case METHOD_REF:
+                    case INTERFACE_METHOD_REF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC:
+                        offset += 5;
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        offset += 9;
+                        i++;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at offset " + offset);
+                }
+            }
+            return new ConstantPool(classBytes, entryOffsets, offset);
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated constant pool", e);
+        }
+    }
+
+    /**
+     * @return the offset of the first byte after the constant pool (the access flags of the class).
+     */
+    public int getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return the internal name of the class (ie java/lang/String).
+     */
+    @NotNull
+    public String getClassName() {
+        return getClassName(AsmUtils.readUnsignedShort(classBytes, endOffset + 2));
+    }
+
+    @NotNull
+    public String getClassName(final int classIndex) {
+        return getUtf8(AsmUtils.readUnsignedShort(classBytes, entryOffsets[classIndex] + 1));
+    }
+
+    @NotNull
+    public String getUtf8(final int utf8Index) {
+        final int offset = entryOffsets[utf8Index];
+        final int length = AsmUtils.readUnsignedShort(classBytes, offset + 1);
+        try {
+            return DataInputStream.readUTF(new DataInputStream(new ByteArrayInputStream(classBytes, offset + 1, length + 2)));
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Malformed UTF8 constant at index " + utf8Index, e);
+        }
+    }
+
+    /**
+     * @param values the values to look for, encoded with {@link #encode(String)}.
+     * @return true if any of the values is a UTF8 entry in the constant pool.
+     */
+    public boolean containsAnyUtf8(@NotNull final Iterable<byte[]> values) {
+        for (int i = 1; i < entryOffsets.length; i++) {
+            final int offset = entryOffsets[i];
+            if (offset != 0 && classBytes[offset] == UTF8) {
+                for (final byte[] value : values) {
+                    if (isUtf8(offset, value)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if any UTF8 entry is a method descriptor with a reference (object or array) parameter or return
+     * type.
+     */
+    public boolean containsReferenceMethodDescriptor() {
+        for (int i = 1; i < entryOffsets.length; i++) {
+            final int offset = entryOffsets[i];
+            if (offset != 0 && classBytes[offset] == UTF8 && isReferenceMethodDescriptor(offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isReferenceMethodDescriptor(final int offset) {
+        final int length = AsmUtils.readUnsignedShort(classBytes, offset + 1);
+        final int start = offset + 3;
+        if (length < 3 || classBytes[start] != '(') {
+            return false;
+        }
+        for (int i = start + 1; i < start + length; i++) {
+            if (classBytes[i] == 'L' || classBytes[i] == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isUtf8(final int offset, @NotNull final byte[] value) {
+        final int length = AsmUtils.readUnsignedShort(classBytes, offset + 1);
+        if (length != value.length) {
+            return false;
+        }
+        final int start = offset + 3;
+        for (int i = 0; i < length; i++) {
+            if (classBytes[start + i] != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the string in the (modified UTF-8) encoding used by the constant pool.
+     */
+    @NotNull
+    public static byte[] encode(@NotNull final String value) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length() + 2);
+            new DataOutputStream(bytes).writeUTF(value);
+            final byte[] encoded = bytes.toByteArray();
+            return Arrays.copyOfRange(encoded, 2, encoded.length);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Cannot encode " + value, e);
+        }
+    }
+
+}
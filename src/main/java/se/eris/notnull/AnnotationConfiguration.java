@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.Collections;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class AnnotationConfiguration {
 
@@ -36,4 +37,12 @@ public class AnnotationConfiguration {
         return nullable;
     }
 
+    @Override
+    public String toString() {
+        return "AnnotationConfiguration{" +
+                "notNull=" + new TreeSet<>(notNull) +
+                ", nullable=" + new TreeSet<>(nullable) +
+                '}';
+    }
+
 }
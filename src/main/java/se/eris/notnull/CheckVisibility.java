@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Locale;
+
+/**
+ * The least visible methods that get checks. The visibility of a method is that of the method limited by that of its
+ * class, so the public methods of a package private class have package visibility.
+ */
+public enum CheckVisibility {
+
+    ALL, PACKAGE, PROTECTED, PUBLIC;
+
+    @NotNull
+    public static CheckVisibility parse(@NotNull final String visibility) {
+        return valueOf(visibility.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    public boolean includes(final int classAccess, final int methodAccess) {
+        return Math.min(getVisibility(classAccess), getVisibility(methodAccess)) >= ordinal();
+    }
+
+    private static int getVisibility(final int access) {
+        if ((access & Opcodes.ACC_PUBLIC) != 0) {
+            return PUBLIC.ordinal();
+        }
+        if ((access & Opcodes.ACC_PROTECTED) != 0) {
+            return PROTECTED.ordinal();
+        }
+        if ((access & Opcodes.ACC_PRIVATE) != 0) {
+            return ALL.ordinal();
+        }
+        return PACKAGE.ordinal();
+    }
+
+}
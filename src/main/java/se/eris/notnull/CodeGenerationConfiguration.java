@@ -0,0 +1,312 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.eris.notnull.runtime.StacklessIllegalArgumentException;
+import se.eris.notnull.runtime.StacklessIllegalStateException;
+
+/**
+ * How the null checks are generated.
+ */
+public class CodeGenerationConfiguration {
+
+    private final boolean preserveFrames;
+    private final boolean outlineChecks;
+    private final boolean dynamicChecks;
+    private final boolean guardedChecks;
+    private final boolean compactMessages;
+    private final boolean nullnessAnalysis;
+    private final boolean callSiteAnalysis;
+    private final boolean dualEntryPoints;
+    private final boolean fusedChecks;
+    private final boolean coldThrows;
+    private final boolean sizeBudget;
+    @NotNull
+    private final String argumentException;
+    @NotNull
+    private final String returnException;
+    @Nullable
+    private final String exceptionFactory;
+
+    private CodeGenerationConfiguration(@NotNull final Builder builder) {
+        this.preserveFrames = builder.preserveFrames;
+        this.outlineChecks = builder.outlineChecks;
+        this.dynamicChecks = builder.dynamicChecks;
+        this.guardedChecks = builder.guardedChecks;
+        this.compactMessages = builder.compactMessages;
+        this.nullnessAnalysis = builder.nullnessAnalysis;
+        this.callSiteAnalysis = builder.callSiteAnalysis;
+        this.dualEntryPoints = builder.dualEntryPoints;
+        this.fusedChecks = builder.fusedChecks;
+        this.coldThrows = builder.coldThrows;
+        this.sizeBudget = builder.sizeBudget;
+        this.argumentException = builder.argumentException;
+        this.returnException = builder.returnException;
+        this.exceptionFactory = builder.exceptionFactory;
+    }
+
+    /**
+     * @return true if the existing stack map frames are kept and only the frames needed by the inserted checks are
+     * added, instead of recomputing all frames (which needs the class hierarchy from the classpath).
+     */
+    public boolean isPreserveFrames() {
+        return preserveFrames;
+    }
+
+    /**
+     * @return true if the exceptions of failed checks are thrown by a synthetic helper method of the class, so each
+     * check adds only a load, a branch and a call to the method (interfaces still get inline checks).
+     */
+    public boolean isOutlineChecks() {
+        return outlineChecks;
+    }
+
+    /**
+     * @return true if the checks of Java 7+ class files are invokedynamic call sites that can be switched off at
+     * runtime (see {@link se.eris.notnull.runtime.NullChecks}), which then has to be on the runtime classpath.
+     */
+    public boolean isDynamicChecks() {
+        return dynamicChecks;
+    }
+
+    /**
+     * @return true if the checks are guarded by a synthetic static final field of the class, set from system
+     * properties when the class is initialized, like assertions are (interfaces still get unguarded checks).
+     */
+    public boolean isGuardedChecks() {
+        return guardedChecks;
+    }
+
+    /**
+     * @return true if the checks pass only the method name and parameter number to a synthetic helper of the class that
+     * builds the message when a check fails, instead of loading a message string of their own (interfaces and dynamic
+     * checks still get the full messages).
+     */
+    public boolean isCompactMessages() {
+        return compactMessages;
+    }
+
+    /**
+     * @return true if each method is analyzed before it is instrumented, and return value checks that cannot fail
+     * (such as returning this, a new object or a constant) are left out.
+     */
+    public boolean isNullnessAnalysis() {
+        return nullnessAnalysis;
+    }
+
+    /**
+     * @return true if the calls within each class are analyzed, and the parameter checks of private methods that are
+     * passed non-null values (such as this, constants or checked parameters) at every call are left out.
+     */
+    public boolean isCallSiteAnalysis() {
+        return callSiteAnalysis;
+    }
+
+    /**
+     * @return true if methods that cannot be overridden are split into a checked entry point and an unchecked body,
+     * which the calls within the instrumented classes that pass already checked arguments go to directly.
+     */
+    public boolean isDualEntryPoints() {
+        return dualEntryPoints;
+    }
+
+    /**
+     * @return true if the parameter checks of a method only test the parameters on entry, all jumping to a single
+     * block after the code of the method that finds the null parameter and throws (dynamic checks are not fused).
+     */
+    public boolean isFusedChecks() {
+        return fusedChecks;
+    }
+
+    /**
+     * @return true if the code throwing the exceptions of failed checks is put after the code of the method, so that
+     * the checks only add a test and a jump (not taken) to the normal path (dynamic checks are not moved).
+     */
+    public boolean isColdThrows() {
+        return coldThrows;
+    }
+
+    /**
+     * @return true if the code length of each method is measured before and after instrumentation, and methods that
+     * the checks would push over the JIT inlining or huge method limits get smaller checks (or fewer), each decision
+     * logged.
+     */
+    public boolean isSizeBudget() {
+        return sizeBudget;
+    }
+
+    /**
+     * @return the class name of the exception thrown by a failed parameter check, which must have a constructor
+     * taking the message (not used with an exception factory).
+     */
+    @NotNull
+    public String getArgumentException() {
+        return argumentException;
+    }
+
+    /**
+     * @return the class name of the exception thrown by a failed return value check, which must have a constructor
+     * taking the message (not used with an exception factory).
+     */
+    @NotNull
+    public String getReturnException() {
+        return returnException;
+    }
+
+    /**
+     * @return the class name of the factory creating the exceptions of failed checks, with the static methods
+     * {@code RuntimeException nullArgument(String message)} and {@code RuntimeException nullReturn(String message)},
+     * or null to create them by their constructors (dynamic checks still throw the default exceptions).
+     */
+    @Nullable
+    public String getExceptionFactory() {
+        return exceptionFactory;
+    }
+
+    /**
+     * The same configuration always gives the same string (used to detect configuration changes between builds).
+     */
+    @Override
+    public String toString() {
+        return "CodeGenerationConfiguration{" +
+                "preserveFrames=" + preserveFrames +
+                ", outlineChecks=" + outlineChecks +
+                ", dynamicChecks=" + dynamicChecks +
+                ", guardedChecks=" + guardedChecks +
+                ", compactMessages=" + compactMessages +
+                ", nullnessAnalysis=" + nullnessAnalysis +
+                ", callSiteAnalysis=" + callSiteAnalysis +
+                ", dualEntryPoints=" + dualEntryPoints +
+                ", fusedChecks=" + fusedChecks +
+                ", coldThrows=" + coldThrows +
+                ", sizeBudget=" + sizeBudget +
+                ", argumentException=" + argumentException +
+                ", returnException=" + returnException +
+                ", exceptionFactory=" + exceptionFactory +
+                '}';
+    }
+
+    public static class Builder {
+
+        public static Builder init() {
+            return new Builder();
+        }
+
+        private boolean preserveFrames = false;
+        private boolean outlineChecks = false;
+        private boolean dynamicChecks = false;
+        private boolean guardedChecks = false;
+        private boolean compactMessages = false;
+        private boolean nullnessAnalysis = false;
+        private boolean callSiteAnalysis = false;
+        private boolean dualEntryPoints = false;
+        private boolean fusedChecks = false;
+        private boolean coldThrows = false;
+        private boolean sizeBudget = false;
+        @NotNull
+        private String argumentException = IllegalArgumentException.class.getName();
+        @NotNull
+        private String returnException = IllegalStateException.class.getName();
+        @Nullable
+        private String exceptionFactory = null;
+
+        public Builder preserveFrames(final boolean preserveFrames) {
+            this.preserveFrames = preserveFrames;
+            return this;
+        }
+
+        public Builder outlineChecks(final boolean outlineChecks) {
+            this.outlineChecks = outlineChecks;
+            return this;
+        }
+
+        public Builder dynamicChecks(final boolean dynamicChecks) {
+            this.dynamicChecks = dynamicChecks;
+            return this;
+        }
+
+        public Builder guardedChecks(final boolean guardedChecks) {
+            this.guardedChecks = guardedChecks;
+            return this;
+        }
+
+        public Builder compactMessages(final boolean compactMessages) {
+            this.compactMessages = compactMessages;
+            return this;
+        }
+
+        public Builder nullnessAnalysis(final boolean nullnessAnalysis) {
+            this.nullnessAnalysis = nullnessAnalysis;
+            return this;
+        }
+
+        public Builder callSiteAnalysis(final boolean callSiteAnalysis) {
+            this.callSiteAnalysis = callSiteAnalysis;
+            return this;
+        }
+
+        public Builder dualEntryPoints(final boolean dualEntryPoints) {
+            this.dualEntryPoints = dualEntryPoints;
+            return this;
+        }
+
+        public Builder fusedChecks(final boolean fusedChecks) {
+            this.fusedChecks = fusedChecks;
+            return this;
+        }
+
+        public Builder coldThrows(final boolean coldThrows) {
+            this.coldThrows = coldThrows;
+            return this;
+        }
+
+        public Builder sizeBudget(final boolean sizeBudget) {
+            this.sizeBudget = sizeBudget;
+            return this;
+        }
+
+        public Builder argumentException(@NotNull final String argumentException) {
+            this.argumentException = argumentException;
+            return this;
+        }
+
+        public Builder returnException(@NotNull final String returnException) {
+            this.returnException = returnException;
+            return this;
+        }
+
+        /**
+         * Throws the {@link StacklessIllegalArgumentException} and {@link StacklessIllegalStateException} of the
+         * runtime package, which then has to be on the runtime classpath.
+         */
+        public Builder stacklessExceptions() {
+            return argumentException(StacklessIllegalArgumentException.class.getName()).returnException(StacklessIllegalStateException.class.getName());
+        }
+
+        public Builder exceptionFactory(@Nullable final String exceptionFactory) {
+            this.exceptionFactory = exceptionFactory;
+            return this;
+        }
+
+        public CodeGenerationConfiguration build() {
+            return new CodeGenerationConfiguration(this);
+        }
+
+    }
+
+}
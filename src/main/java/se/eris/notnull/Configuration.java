@@ -16,8 +16,11 @@
 package se.eris.notnull;
 
 import org.jetbrains.annotations.NotNull;
+import se.eris.lang.LangUtils;
+import se.eris.notnull.instrumentation.ClassMatcher;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -28,19 +31,59 @@ public class Configuration {
     private final AnnotationConfiguration annotationConfiguration;
     @NotNull
     private final ExcludeConfiguration excludeConfiguration;
+    @NotNull
+    private final CodeGenerationConfiguration codeGenerationConfiguration;
+    @NotNull
+    private final VisibilityConfiguration visibilityConfiguration;
+    @NotNull
+    private final ProfileConfiguration profileConfiguration;
+    /**
+     * The annotations as descriptors, as ASM visits them, converted once rather than for every class.
+     */
+    @NotNull
+    private final Set<String> notNullDescriptors;
+    @NotNull
+    private final Set<String> nullableDescriptors;
 
     @SuppressWarnings("BooleanParameter")
     public Configuration(
             final boolean implicit,
             @NotNull final AnnotationConfiguration annotationConfiguration,
             @NotNull final ExcludeConfiguration excludeConfiguration) {
-        this.implicit = implicit;
-        if (annotationConfiguration.isAnnotationsConfigured()) {
-            this.annotationConfiguration = annotationConfiguration;
+        this(Builder.init().implicit(implicit).annotations(annotationConfiguration).excludes(excludeConfiguration));
+    }
+
+    @SuppressWarnings("BooleanParameter")
+    public Configuration(
+            final boolean implicit,
+            @NotNull final AnnotationConfiguration annotationConfiguration,
+            @NotNull final ExcludeConfiguration excludeConfiguration,
+            @NotNull final CodeGenerationConfiguration codeGenerationConfiguration) {
+        this(Builder.init().implicit(implicit).annotations(annotationConfiguration).excludes(excludeConfiguration).codeGeneration(codeGenerationConfiguration));
+    }
+
+    private Configuration(@NotNull final Builder builder) {
+        this.implicit = builder.implicit;
+        if (builder.annotationConfiguration.isAnnotationsConfigured()) {
+            this.annotationConfiguration = builder.annotationConfiguration;
         } else {
             this.annotationConfiguration = new AnnotationConfiguration(getDefaultNotNull(), getDefaultNullable());
         }
-        this.excludeConfiguration = excludeConfiguration;
+        this.excludeConfiguration = builder.excludeConfiguration;
+        this.codeGenerationConfiguration = builder.codeGenerationConfiguration;
+        this.visibilityConfiguration = builder.visibilityConfiguration;
+        this.profileConfiguration = builder.profileConfiguration;
+        this.notNullDescriptors = toDescriptors(this.annotationConfiguration.getNotNull());
+        this.nullableDescriptors = toDescriptors(this.annotationConfiguration.getNullable());
+    }
+
+    @NotNull
+    private static Set<String> toDescriptors(@NotNull final Iterable<String> annotations) {
+        final Set<String> descriptors = new HashSet<>();
+        for (@NotNull final String annotation : annotations) {
+            descriptors.add(LangUtils.convertToJavaClassName(annotation));
+        }
+        return Collections.unmodifiableSet(descriptors);
     }
 
     @NotNull
@@ -73,7 +116,108 @@ public class Configuration {
         return annotationConfiguration.getNullable();
     }
 
+    /**
+     * @return the not null annotations as descriptors (ie Lorg/jetbrains/annotations/NotNull;).
+     */
+    @NotNull
+    public Set<String> getNotNullDescriptors() {
+        return notNullDescriptors;
+    }
+
+    /**
+     * @return the nullable annotations as descriptors (ie Lorg/jetbrains/annotations/Nullable;).
+     */
+    @NotNull
+    public Set<String> getNullableDescriptors() {
+        return nullableDescriptors;
+    }
+
+    @NotNull
+    public CodeGenerationConfiguration getCodeGeneration() {
+        return codeGenerationConfiguration;
+    }
+
+    @NotNull
+    public VisibilityConfiguration getVisibility() {
+        return visibilityConfiguration;
+    }
+
+    @NotNull
+    public ProfileConfiguration getProfile() {
+        return profileConfiguration;
+    }
+
     public boolean isImplicitInstrumentation(final String className) {
         return implicit && excludeConfiguration.isClassImplicitInstrumentation(className);
     }
+
+    /**
+     * The same configuration always gives the same string (used to detect configuration changes between builds).
+     */
+    @Override
+    public String toString() {
+        return "Configuration{" +
+                "implicit=" + implicit +
+                ", annotationConfiguration=" + annotationConfiguration +
+                ", excludeConfiguration=" + excludeConfiguration +
+                ", codeGenerationConfiguration=" + codeGenerationConfiguration +
+                ", visibilityConfiguration=" + visibilityConfiguration +
+                ", profileConfiguration=" + profileConfiguration +
+                '}';
+    }
+
+    public static class Builder {
+
+        public static Builder init() {
+            return new Builder();
+        }
+
+        private boolean implicit = false;
+        @NotNull
+        private AnnotationConfiguration annotationConfiguration = new AnnotationConfiguration();
+        @NotNull
+        private ExcludeConfiguration excludeConfiguration = new ExcludeConfiguration(Collections.<ClassMatcher>emptySet());
+        @NotNull
+        private CodeGenerationConfiguration codeGenerationConfiguration = CodeGenerationConfiguration.Builder.init().build();
+        @NotNull
+        private VisibilityConfiguration visibilityConfiguration = new VisibilityConfiguration();
+        @NotNull
+        private ProfileConfiguration profileConfiguration = new ProfileConfiguration();
+
+        public Builder implicit(final boolean implicit) {
+            this.implicit = implicit;
+            return this;
+        }
+
+        public Builder annotations(@NotNull final AnnotationConfiguration annotationConfiguration) {
+            this.annotationConfiguration = annotationConfiguration;
+            return this;
+        }
+
+        public Builder excludes(@NotNull final ExcludeConfiguration excludeConfiguration) {
+            this.excludeConfiguration = excludeConfiguration;
+            return this;
+        }
+
+        public Builder codeGeneration(@NotNull final CodeGenerationConfiguration codeGenerationConfiguration) {
+            this.codeGenerationConfiguration = codeGenerationConfiguration;
+            return this;
+        }
+
+        public Builder visibility(@NotNull final VisibilityConfiguration visibilityConfiguration) {
+            this.visibilityConfiguration = visibilityConfiguration;
+            return this;
+        }
+
+        public Builder profile(@NotNull final ProfileConfiguration profileConfiguration) {
+            this.profileConfiguration = profileConfiguration;
+            return this;
+        }
+
+        public Configuration build() {
+            return new Configuration(this);
+        }
+
+    }
+
 }
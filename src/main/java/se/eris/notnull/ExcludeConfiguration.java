@@ -4,6 +4,7 @@ import se.eris.notnull.instrumentation.ClassMatcher;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 public class ExcludeConfiguration {
 
@@ -22,4 +23,13 @@ public class ExcludeConfiguration {
         return true;
     }
 
+    @Override
+    public String toString() {
+        final Set<String> patterns = new TreeSet<>();
+        for (final ClassMatcher classMatcher : excludes) {
+            patterns.add(classMatcher.toString());
+        }
+        return "ExcludeConfiguration{excludes=" + patterns + '}';
+    }
+
 }
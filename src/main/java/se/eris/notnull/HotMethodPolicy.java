@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * What the methods listed as hot in the profile get instead of the full checks.
+ */
+public enum HotMethodPolicy {
+
+    /**
+     * Compact checks: inline tests calling a synthetic helper of the class that builds the message and throws.
+     */
+    COMPACT,
+    /**
+     * The parameter checks, but no return value check.
+     */
+    NO_RETURN_CHECK,
+    /**
+     * No checks.
+     */
+    SKIP;
+
+    @NotNull
+    public static HotMethodPolicy parse(@NotNull final String policy) {
+        return valueOf(policy.trim().toUpperCase(Locale.ENGLISH).replace('-', '_'));
+    }
+
+}
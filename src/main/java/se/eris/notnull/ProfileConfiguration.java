@@ -0,0 +1,207 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The methods known from profiling to be hot, and the {@link HotMethodPolicy} they get instead of the full checks.
+ * Methods are listed by class and method name, so all the overloads of a listed method are hot.
+ */
+public class ProfileConfiguration {
+
+    private static final byte[] JFR_MAGIC = {'F', 'L', 'R', 0};
+    private static final String STACK_TRACE_START = "stackTrace = [";
+    private static final String LINE_NUMBER = "line:";
+
+    /**
+     * The hot methods, as the class name and method name separated by a dot.
+     */
+    @NotNull
+    private final Set<String> hotMethods;
+    @NotNull
+    private final Set<String> hotClasses = new HashSet<>();
+    @NotNull
+    private final HotMethodPolicy policy;
+
+    public ProfileConfiguration() {
+        this(Collections.<String>emptySet(), HotMethodPolicy.COMPACT);
+    }
+
+    /**
+     * @param hotMethods the hot methods, as the class name and method name separated by a dot.
+     */
+    public ProfileConfiguration(@NotNull final Set<String> hotMethods, @NotNull final HotMethodPolicy policy) {
+        this.hotMethods = hotMethods;
+        this.policy = policy;
+        for (final String hotMethod : hotMethods) {
+            hotClasses.add(hotMethod.substring(0, hotMethod.lastIndexOf('.')));
+        }
+    }
+
+    /**
+     * Reads a list of hot methods, see {@link #parse}.
+     *
+     * @throws IOException if the file cannot be read or is a (binary) JFR recording.
+     */
+    @NotNull
+    public static ProfileConfiguration load(@NotNull final Path profile, @NotNull final HotMethodPolicy policy) throws IOException {
+        if (isRecording(profile)) {
+            throw new IOException(profile + " is a JFR recording, list its hot methods with jfr print --events jdk.ExecutionSample");
+        }
+        return parse(Files.readAllLines(profile, StandardCharsets.UTF_8), policy);
+    }
+
+    /**
+     * Parses either the output of {@code jfr print --events jdk.ExecutionSample}, of which only the top frame of each
+     * stack trace is used, or a list of hot methods, one per line.
+     * <p>
+     * A line of the list is a frame: a class name and a method name separated by a dot (or {@code ::}), optionally
+     * followed by the parameters and the line number as printed by jfr. Blank lines, lines starting with # and lines
+     * that are not frames are ignored.
+     */
+    @NotNull
+    public static ProfileConfiguration parse(@NotNull final List<String> lines, @NotNull final HotMethodPolicy policy) {
+        final boolean printedRecording = isPrintedRecording(lines);
+        final Set<String> hotMethods = new HashSet<>();
+        boolean topFrame = false;
+        for (final String line : lines) {
+            final String trimmed = line.trim();
+            if (printedRecording) {
+                if (trimmed.equals(STACK_TRACE_START)) {
+                    topFrame = true;
+                    continue;
+                }
+                if (!topFrame) {
+                    continue;
+                }
+                topFrame = false;
+            }
+            final String hotMethod = parseFrame(trimmed);
+            if (hotMethod != null) {
+                hotMethods.add(hotMethod);
+            }
+        }
+        return new ProfileConfiguration(hotMethods, policy);
+    }
+
+    private static boolean isPrintedRecording(@NotNull final List<String> lines) {
+        for (final String line : lines) {
+            if (line.trim().equals(STACK_TRACE_START)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the class and method name of the frame, or null if the line is not a frame.
+     */
+    @Nullable
+    private static String parseFrame(@NotNull final String line) {
+        if (line.isEmpty() || line.startsWith("#")) {
+            return null;
+        }
+        int end = 0;
+        while (end < line.length() && line.charAt(end) != '(' && !Character.isWhitespace(line.charAt(end))) {
+            end++;
+        }
+        if (!isFrameEnd(line.substring(end))) {
+            return null;
+        }
+        final String method = line.substring(0, end).replace("::", ".").replace('/', '.');
+        final int separator = method.lastIndexOf('.');
+        if (separator <= 0 || separator == method.length() - 1) {
+            return null;
+        }
+        for (int i = 0; i < method.length(); i++) {
+            final char c = method.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) && c != '.' && c != '<' && c != '>') {
+                return null;
+            }
+        }
+        return method;
+    }
+
+    /**
+     * @return true if what follows the method name is nothing, the parameters or the line number.
+     */
+    private static boolean isFrameEnd(@NotNull final String rest) {
+        final String trimmed = rest.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("(") || trimmed.startsWith(LINE_NUMBER);
+    }
+
+    private static boolean isRecording(@NotNull final Path profile) throws IOException {
+        final byte[] magic = new byte[JFR_MAGIC.length];
+        try (InputStream in = Files.newInputStream(profile)) {
+            int read = 0;
+            while (read < magic.length) {
+                final int n = in.read(magic, read, magic.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+        }
+        return Arrays.equals(magic, JFR_MAGIC);
+    }
+
+    @NotNull
+    public HotMethodPolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isEmpty() {
+        return hotMethods.isEmpty();
+    }
+
+    /**
+     * @return true if any method of the class is hot.
+     */
+    public boolean hasHotMethods(@NotNull final String className) {
+        return hotClasses.contains(className);
+    }
+
+    /**
+     * @return the policy for the method, or null if it is not hot and gets the full checks.
+     */
+    @Nullable
+    public HotMethodPolicy getPolicy(@NotNull final String className, @NotNull final String methodName) {
+        return hotMethods.contains(className + "." + methodName) ? policy : null;
+    }
+
+    @Override
+    public String toString() {
+        return "ProfileConfiguration{" +
+                "hotMethods=" + new TreeSet<>(hotMethods) +
+                ", policy=" + policy +
+                '}';
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Which methods get parameter and return value checks: those at least as visible as configured for each kind of
+ * check and, if any exports are configured, in the exported classes only.
+ */
+public class VisibilityConfiguration {
+
+    @NotNull
+    private final CheckVisibility parameters;
+    @NotNull
+    private final CheckVisibility returns;
+    @NotNull
+    private final Set<ClassMatcher> exports;
+
+    public VisibilityConfiguration() {
+        this(CheckVisibility.ALL, CheckVisibility.ALL, Collections.<ClassMatcher>emptySet());
+    }
+
+    /**
+     * @param exports the exported classes, all classes if empty.
+     */
+    public VisibilityConfiguration(@NotNull final CheckVisibility parameters, @NotNull final CheckVisibility returns, @NotNull final Set<ClassMatcher> exports) {
+        this.parameters = parameters;
+        this.returns = returns;
+        this.exports = exports;
+    }
+
+    @NotNull
+    public CheckVisibility getParameters() {
+        return parameters;
+    }
+
+    @NotNull
+    public CheckVisibility getReturns() {
+        return returns;
+    }
+
+    /**
+     * @return true unless all the checks of all classes are kept.
+     */
+    public boolean isRestricted() {
+        return parameters != CheckVisibility.ALL || returns != CheckVisibility.ALL || !exports.isEmpty();
+    }
+
+    public boolean isParameterChecked(@NotNull final String className, final int classAccess, final int methodAccess) {
+        return parameters.includes(classAccess, methodAccess) && isExported(className);
+    }
+
+    public boolean isReturnChecked(@NotNull final String className, final int classAccess, final int methodAccess) {
+        return returns.includes(classAccess, methodAccess) && isExported(className);
+    }
+
+    private boolean isExported(@NotNull final String className) {
+        if (exports.isEmpty()) {
+            return true;
+        }
+        for (final ClassMatcher classMatcher : exports) {
+            if (classMatcher.matches(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        final Set<String> patterns = new TreeSet<>();
+        for (final ClassMatcher classMatcher : exports) {
+            patterns.add(classMatcher.toString());
+        }
+        return "VisibilityConfiguration{" +
+                "parameters=" + parameters +
+                ", returns=" + returns +
+                ", exports=" + patterns +
+                '}';
+    }
+
+}
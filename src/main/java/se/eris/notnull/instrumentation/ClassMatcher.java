@@ -50,4 +50,9 @@ public final class ClassMatcher {
         return pattern.matcher(classFileName).matches();
     }
 
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
 }
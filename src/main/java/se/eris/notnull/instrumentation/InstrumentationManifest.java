@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull.instrumentation;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.eris.notnull.Configuration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the size, modification time and content hash of every class file after it has been processed, together
+ * with a hash of the configuration and plugin version used. Class files that are unchanged since then need not be read
+ * again.
+ * <p>
+ * Thread safe.
+ */
+public final class InstrumentationManifest {
+
+    private static final String FORMAT = "notnull-instrumenter-manifest 1";
+    private static final String CONFIGURATION_PREFIX = "configuration ";
+    private static final String SAVED_PREFIX = "saved ";
+    private static final char SEPARATOR = '\t';
+    /**
+     * Files modified this close to when the manifest was saved may have changed again without a visible change in
+     * modification time (coarse file system timestamps), so their content is compared instead.
+     */
+    private static final long TIMESTAMP_GRANULARITY_MILLIS = 2000;
+
+    @Nullable
+    private final Path manifestFile;
+    @NotNull
+    private final Path classesDirectory;
+    @NotNull
+    private final String configurationHash;
+    private final long savedAt;
+    @NotNull
+    private final Map<String, Entry> previous;
+    @NotNull
+    private final ConcurrentMap<String, Entry> current = new ConcurrentHashMap<>();
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+
+    private InstrumentationManifest(@Nullable final Path manifestFile, @NotNull final Path classesDirectory, @NotNull final String configurationHash, final long savedAt, @NotNull final Map<String, Entry> previous) {
+        this.manifestFile = manifestFile;
+        this.classesDirectory = classesDirectory;
+        this.configurationHash = configurationHash;
+        this.savedAt = savedAt;
+        this.previous = previous;
+    }
+
+    /**
+     * @return a manifest that considers every class file changed and is never saved.
+     */
+    @NotNull
+    public static InstrumentationManifest disabled(@NotNull final Path classesDirectory) {
+        return new InstrumentationManifest(null, classesDirectory, "", 0, new ConcurrentHashMap<String, Entry>());
+    }
+
+    /**
+     * Loads the manifest from file. If there is no manifest, it cannot be read, or it was saved with a different
+     * configuration, plugin version (which may generate other code) or manifest format every class file is considered
+     * changed.
+     * <p>
+     * With dual entry points the manifest is disabled: an unchanged class may call the unchecked body of a method in
+     * another class, which depends on that class (whether the method is still split), not only on its own content.
+     */
+    @NotNull
+    public static InstrumentationManifest load(@NotNull final Path manifestFile, @NotNull final Path classesDirectory, @NotNull final Configuration configuration, @NotNull final String pluginVersion) {
+        if (configuration.getCodeGeneration().isDualEntryPoints()) {
+            return disabled(classesDirectory);
+        }
+        final String configurationHash = hash((FORMAT + SEPARATOR + pluginVersion + SEPARATOR + configuration).getBytes(StandardCharsets.UTF_8));
+        final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        long savedAt = 0;
+        if (Files.isRegularFile(manifestFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                if (FORMAT.equals(reader.readLine()) && (CONFIGURATION_PREFIX + configurationHash).equals(reader.readLine())) {
+                    savedAt = Long.parseLong(reader.readLine().substring(SAVED_PREFIX.length()));
+                    for (String line; (line = reader.readLine()) != null; ) {
+                        final String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+                        entries.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                entries.clear();
+            }
+        }
+        return new InstrumentationManifest(manifestFile, classesDirectory, configurationHash, savedAt, entries);
+    }
+
+    public boolean isEnabled() {
+        return manifestFile != null;
+    }
+
+    /**
+     * @return true if the class file has the same size and modification time as when it was last processed.
+     */
+    public boolean isUnchanged(@NotNull final File classFile) {
+        final Entry entry = previous.get(getKey(classFile));
+        if (entry == null || entry.size != classFile.length() || entry.lastModified != classFile.lastModified()) {
+            return false;
+        }
+        if (entry.lastModified + TIMESTAMP_GRANULARITY_MILLIS >= savedAt) {
+            return false;
+        }
+        current.put(getKey(classFile), entry);
+        unchangedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return true if the class file has the same content as when it was last processed (for instance if it was only
+     * touched).
+     */
+    public boolean isUnchanged(@NotNull final File classFile, @NotNull final byte[] content) {
+        final Entry entry = previous.get(getKey(classFile));
+        if (entry == null || entry.size != content.length || !entry.hash.equals(hash(content))) {
+            return false;
+        }
+        current.put(getKey(classFile), new Entry(content.length, classFile.lastModified(), entry.hash));
+        unchangedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return the number of class files found unchanged during this run.
+     */
+    public int getUnchangedCount() {
+        return unchangedCount.get();
+    }
+
+    /**
+     * Records the class file as processed.
+     *
+     * @param content the content of the class file after processing.
+     */
+    public void update(@NotNull final File classFile, @NotNull final byte[] content) {
+        if (isEnabled()) {
+            current.put(getKey(classFile), new Entry(content.length, classFile.lastModified(), hash(content)));
+        }
+    }
+
+    /**
+     * Saves the class files processed, or found unchanged, during this run. Entries for class files no longer present
+     * are dropped.
+     */
+    public void save() throws IOException {
+        if (manifestFile == null) {
+            return;
+        }
+        final Path directory = manifestFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        final Path temporaryFile = Files.createTempFile(directory, manifestFile.getFileName().toString(), ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(FORMAT);
+            writer.newLine();
+            writer.write(CONFIGURATION_PREFIX + configurationHash);
+            writer.newLine();
+            writer.write(SAVED_PREFIX + System.currentTimeMillis());
+            writer.newLine();
+            for (final Map.Entry<String, Entry> entry : current.entrySet()) {
+                final Entry value = entry.getValue();
+                writer.write(String.valueOf(value.size) + SEPARATOR + value.lastModified + SEPARATOR + value.hash + SEPARATOR + entry.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @NotNull
+    private String getKey(@NotNull final File classFile) {
+        return classesDirectory.relativize(classFile.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    @NotNull
+    private static String hash(@NotNull final byte[] content) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required to be supported by every Java platform", e);
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        @NotNull
+        private final String hash;
+
+        private Entry(final long size, final long lastModified, @NotNull final String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+
+}
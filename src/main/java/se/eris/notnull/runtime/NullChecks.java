@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull.runtime;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Runtime support for null checks instrumented as invokedynamic call sites (the {@code dynamicChecks} option). Every
+ * site is linked to either the check or a no-op behind a {@link SwitchPoint}, so switched off checks are compiled
+ * away by the JIT. Switching invalidates the switch point and the sites are relinked on their next call.
+ * <p>
+ * Checks are on unless the system property {@value #ENABLED_PROPERTY} is false, and can be switched with
+ * {@link #setEnabled(boolean)} or, if the system property {@value #JMX_PROPERTY} is true, through JMX as
+ * {@value #OBJECT_NAME}.
+ * <p>
+ * Only depends on the JDK, so that it can be on the runtime classpath of instrumented code.
+ */
+public final class NullChecks {
+
+    public static final String ENABLED_PROPERTY = "se.eris.notnull.checks";
+    public static final String JMX_PROPERTY = "se.eris.notnull.checks.jmx";
+    public static final String OBJECT_NAME = "se.eris.notnull:type=NullChecks";
+
+    /**
+     * The name of the call site for a parameter check, failing with an IllegalArgumentException.
+     */
+    public static final String CHECK_ARGUMENT = "checkArgument";
+    /**
+     * The name of the call site for a return value check, failing with an IllegalStateException.
+     */
+    public static final String CHECK_RETURN = "checkReturn";
+
+    private static final MethodHandle CHECK_ARGUMENT_HANDLE;
+    private static final MethodHandle CHECK_RETURN_HANDLE;
+    private static final MethodHandle NO_OP_HANDLE;
+    private static final MethodHandle RELINK_HANDLE;
+
+    private static final Object LOCK = new Object();
+    private static volatile State state;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CHECK_ARGUMENT_HANDLE = lookup.findStatic(NullChecks.class, "checkArgument", MethodType.methodType(void.class, Object.class, String.class));
+            CHECK_RETURN_HANDLE = lookup.findStatic(NullChecks.class, "checkReturn", MethodType.methodType(void.class, Object.class, String.class));
+            NO_OP_HANDLE = lookup.findStatic(NullChecks.class, "noOp", MethodType.methodType(void.class));
+            RELINK_HANDLE = lookup.findStatic(NullChecks.class, "relink", MethodType.methodType(void.class, MutableCallSite.class, String.class, String.class, Object.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        state = new State(!"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY)));
+        if (Boolean.getBoolean(JMX_PROPERTY)) {
+            registerMBean();
+        }
+    }
+
+    private NullChecks() {
+    }
+
+    public static boolean isEnabled() {
+        return state.enabled;
+    }
+
+    /**
+     * Switches all dynamic checks on or off.
+     */
+    public static void setEnabled(final boolean enabled) {
+        synchronized (LOCK) {
+            final State previous = state;
+            if (previous.enabled == enabled) {
+                return;
+            }
+            state = new State(enabled);
+            SwitchPoint.invalidateAll(new SwitchPoint[]{previous.switchPoint});
+        }
+    }
+
+    /**
+     * The bootstrap method of the check call sites, the type has the checked value as its only parameter.
+     *
+     * @param name    {@link #CHECK_ARGUMENT} or {@link #CHECK_RETURN}.
+     * @param message the exception message if the check fails.
+     */
+    public static CallSite bootstrap(final MethodHandles.Lookup caller, final String name, final MethodType type, final String message) {
+        if (!CHECK_ARGUMENT.equals(name) && !CHECK_RETURN.equals(name)) {
+            throw new IllegalArgumentException("Unknown null check " + name);
+        }
+        if (type.parameterCount() != 1 || type.returnType() != void.class) {
+            throw new IllegalArgumentException("Null check must take the checked value and return void (was " + type + ")");
+        }
+        final MutableCallSite site = new MutableCallSite(type);
+        link(site, name, message);
+        return site;
+    }
+
+    private static void link(final MutableCallSite site, final String name, final String message) {
+        final State current = state;
+        final MethodType type = site.type();
+        final MethodHandle target;
+        if (current.enabled) {
+            final MethodHandle check = CHECK_RETURN.equals(name) ? CHECK_RETURN_HANDLE : CHECK_ARGUMENT_HANDLE;
+            target = MethodHandles.insertArguments(check, 1, message).asType(type);
+        } else {
+            target = MethodHandles.dropArguments(NO_OP_HANDLE, 0, type.parameterList());
+        }
+        final MethodHandle relink = MethodHandles.insertArguments(RELINK_HANDLE, 0, site, name, message).asType(type);
+        site.setTarget(current.switchPoint.guardWithTest(target, relink));
+    }
+
+    private static void relink(final MutableCallSite site, final String name, final String message, final Object value) throws Throwable {
+        link(site, name, message);
+        site.getTarget().invoke(value);
+    }
+
+    private static void checkArgument(final Object value, final String message) {
+        if (value == null) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static void checkReturn(final Object value, final String message) {
+        if (value == null) {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    private static void noOp() {
+    }
+
+    /**
+     * Registration fails if already done by another class loader, which leaves the checks of that class loader
+     * switchable through JMX only. That is logged at FINE, any other failure as a warning.
+     */
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Control(), new ObjectName(OBJECT_NAME));
+        } catch (final JMException | RuntimeException e) {
+            final Level level = e instanceof InstanceAlreadyExistsException ? Level.FINE : Level.WARNING;
+            Logger.getLogger(NullChecks.class.getName()).log(level, "Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static final class State {
+        private final boolean enabled;
+        private final SwitchPoint switchPoint = new SwitchPoint();
+
+        private State(final boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    private static final class Control implements NullChecksMXBean {
+        @Override
+        public boolean isEnabled() {
+            return NullChecks.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(final boolean enabled) {
+            NullChecks.setEnabled(enabled);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull.runtime;
+
+/**
+ * The {@link IllegalStateException} of a failed null check of a return value check (the {@code stacklessExceptions} option), without a stack trace.
+ * Filling in the stack trace is most of the cost of throwing, which matters where the checks validate untrusted
+ * input and the exception is caught at the edge of the service. The message names the method that failed.
+ * <p>
+ * Only depends on the JDK, so that it can be on the runtime classpath of instrumented code.
+ */
+public class StacklessIllegalStateException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public StacklessIllegalStateException(final String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -24,17 +24,45 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ClassFileUtils {
 
     @NotNull
     public static Set<File> getClassFiles(@NotNull final Path rootDir) {
+        return collectClassFiles(rootDir).getClassFiles();
+    }
+
+    /**
+     * @return the class files in the directory ordered by size, largest first.
+     */
+    @NotNull
+    public static List<File> getClassFilesLargestFirst(@NotNull final Path rootDir) {
+        final ClassFileCollector collector = collectClassFiles(rootDir);
+        final List<File> classFiles = new ArrayList<>(collector.getClassFiles());
+        final Map<File, Long> sizes = collector.getSizes();
+        Collections.sort(classFiles, new Comparator<File>() {
+            @Override
+            public int compare(final File file1, final File file2) {
+                return Long.compare(sizes.get(file2), sizes.get(file1));
+            }
+        });
+        return classFiles;
+    }
+
+    @NotNull
+    private static ClassFileCollector collectClassFiles(@NotNull final Path rootDir) {
         try {
             final ClassFileCollector collector = new ClassFileCollector();
             Files.walkFileTree(rootDir, collector);
-            return collector.getClassFiles();
+            return collector;
         } catch (final IOException e) {
             throw new RuntimeException("Could not collect class files in directory '" + rootDir + "'", e);
         }
@@ -44,11 +72,14 @@ public class ClassFileUtils {
         private static final String CLASS_FILE_EXTENSION = ".class";
 
         private final Set<File> classFiles = new HashSet<>();
+        private final Map<File, Long> sizes = new HashMap<>();
 
         @Override
         public FileVisitResult visitFile(@NotNull final Path path, @NotNull final BasicFileAttributes attrs) throws IOException {
             if (attrs.isRegularFile() && path.toFile().getName().endsWith(CLASS_FILE_EXTENSION)) {
-                classFiles.add(path.toFile());
+                final File file = path.toFile();
+                classFiles.add(file);
+                sizes.put(file, attrs.size());
             }
             return FileVisitResult.CONTINUE;
         }
@@ -62,6 +93,11 @@ public class ClassFileUtils {
         private Set<File> getClassFiles() {
             return classFiles;
         }
+
+        @NotNull
+        private Map<File, Long> getSizes() {
+            return sizes;
+        }
     }
 
 }
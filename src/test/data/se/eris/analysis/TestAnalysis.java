@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.analysis;
+
+import org.jetbrains.annotations.Nullable;
+
+public class TestAnalysis {
+
+    @Nullable
+    public static String cached;
+
+    private final String value;
+
+    public TestAnalysis(final String value) {
+        this.value = value;
+    }
+
+    public TestAnalysis self() {
+        return this;
+    }
+
+    public static TestAnalysis create(final String value) {
+        return new TestAnalysis(value);
+    }
+
+    public static String constant() {
+        return "constant";
+    }
+
+    public static String echo(final String s) {
+        return s;
+    }
+
+    public String concat(final String s) {
+        return value + s;
+    }
+
+    public static String delegate() {
+        return constant();
+    }
+
+    public static Object[] array() {
+        return new Object[0];
+    }
+
+    public String overridable() {
+        return "overridable";
+    }
+
+    public String callsOverridable() {
+        return overridable();
+    }
+
+    public static String cached() {
+        return cached;
+    }
+
+    public static String reassigned(final boolean reassign, String s) {
+        if (reassign) {
+            s = cached;
+        }
+        return s;
+    }
+
+    public static String conditional(final boolean constant) {
+        return constant ? "constant" : cached;
+    }
+
+    @Nullable
+    public static String nullable() {
+        return cached;
+    }
+
+    public static String fromNullable() {
+        return nullable();
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.budget;
+
+/**
+ * Methods of lengths just under the JIT code length limits.
+ */
+public class TestBudget {
+
+    public static int compact(final String a, final String b, final String c, int x) {
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        return x + a.length() + b.length() + c.length();
+    }
+
+    public static String parametersOnly(final String a, int x) {
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        return x > 0 ? a : null;
+    }
+
+    public static int keepsChecks(final String a, final String b, final String c, final String d, final String e, final String f, final String g, final String h, int x) {
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        return x;
+    }
+
+    public static int huge(final String a, int x) {
+        final int[] table = {
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5,
+                1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1, 2, 3, 4, 5, 1
+        };
+        for (final int t : table) {
+            x = x * 31 + t;
+        }
+        return x + a.length();
+    }
+
+    public static int constants(final String a, int x) {
+        x = x * 31 + "c1".hashCode();
+        x = x * 31 + "c2".hashCode();
+        x = x * 31 + "c3".hashCode();
+        x = x * 31 + "c4".hashCode();
+        x = x * 31 + "c5".hashCode();
+        x = x * 31 + "c6".hashCode();
+        x = x * 31 + "c7".hashCode();
+        x = x * 31 + "c8".hashCode();
+        x = x * 31 + "c9".hashCode();
+        x = x * 31 + "c10".hashCode();
+        x = x * 31 + "c11".hashCode();
+        x = x * 31 + "c12".hashCode();
+        x = x * 31 + "c13".hashCode();
+        x = x * 31 + "c14".hashCode();
+        x = x * 31 + "c15".hashCode();
+        x = x * 31 + "c16".hashCode();
+        x = x * 31 + "c17".hashCode();
+        x = x * 31 + "c18".hashCode();
+        x = x * 31 + "c19".hashCode();
+        x = x * 31 + "c20".hashCode();
+        x = x * 31 + "c21".hashCode();
+        x = x * 31 + "c22".hashCode();
+        x = x * 31 + "c23".hashCode();
+        x = x * 31 + "c24".hashCode();
+        x = x * 31 + "c25".hashCode();
+        x = x * 31 + "c26".hashCode();
+        x = x * 31 + "c27".hashCode();
+        return x + a.length();
+    }
+
+    public static int small(final String a) {
+        return a.length();
+    }
+
+    public String instance(final String a, final boolean b) {
+        return b ? a : a + "!";
+    }
+
+}
\ No newline at end of file
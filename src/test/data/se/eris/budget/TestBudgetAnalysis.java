@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.budget;
+
+/**
+ * A private method that the size budget leaves without its return value check, so the nullness analysis must keep the
+ * return value check of its caller.
+ */
+public class TestBudgetAnalysis {
+
+    public static String call(final String a, final int x) {
+        return parametersOnly(a, x);
+    }
+
+    private static String parametersOnly(final String a, int x) {
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        x = x * 31 + 7;
+        return x > 0 ? a : null;
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.callsite;
+
+import org.jetbrains.annotations.Nullable;
+
+public class TestCallSite {
+
+    public interface Transformer {
+        String transform(String s);
+    }
+
+    @Nullable
+    public static String field;
+
+    private final String value;
+
+    public TestCallSite(final String value) {
+        this.value = value;
+    }
+
+    public String constant() {
+        return format("constant", this);
+    }
+
+    public String parameter(final String s) {
+        return format(s, new TestCallSite(s));
+    }
+
+    private static String format(final String s, final TestCallSite site) {
+        return s + site.value;
+    }
+
+    public String fromField() {
+        return wrap(field);
+    }
+
+    private static String wrap(final String s) {
+        return "[" + s + "]";
+    }
+
+    public Transformer reference() {
+        return TestCallSite::referenced;
+    }
+
+    public String callReferenced() {
+        return referenced("direct");
+    }
+
+    private static String referenced(final String s) {
+        return s;
+    }
+
+    private static String uncalled(final String s) {
+        return s;
+    }
+
+}
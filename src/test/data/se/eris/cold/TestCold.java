@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.cold;
+
+public class TestCold {
+
+    private final String name;
+
+    public TestCold(final String name) {
+        this.name = name;
+    }
+
+    public String greet(final String greeting, final int times) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(greeting);
+        }
+        return builder.append(name).toString();
+    }
+
+    public static String concat(final String a, final String b) {
+        return a + b;
+    }
+
+    public static String choose(final String a, final String b, final int choice) {
+        if (choice == 0) {
+            return a;
+        }
+        if (choice == 1) {
+            return b;
+        }
+        return choice == 2 ? null : a + b;
+    }
+
+}
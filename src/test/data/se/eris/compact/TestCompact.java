@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.compact;
+
+public class TestCompact {
+
+    private final String value;
+
+    public TestCompact(final String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public String delegate(final String prefix, final String suffix) {
+        return concat(prefix, suffix);
+    }
+
+    public static String concat(final String prefix, final String suffix) {
+        return prefix + suffix;
+    }
+
+    public static String join(final String first, final long skip, final String second, final String third) {
+        return first + skip + second + third;
+    }
+
+    public static String conditionalReturn(final String s, final boolean nullIt) {
+        return nullIt ? null : s;
+    }
+
+}
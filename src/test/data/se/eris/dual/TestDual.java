@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.dual;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public class TestDual {
+
+    @Nullable
+    public static String field;
+
+    private final String value;
+
+    public TestDual(final String value) {
+        this(value, "default");
+    }
+
+    public TestDual(final String value, final String suffix) {
+        this.value = value + suffix;
+    }
+
+    @NotNull
+    public static String join(final String a, final String b) {
+        return a + b;
+    }
+
+    public static String twice(final String s) {
+        return join(s, s);
+    }
+
+    public static String withField() {
+        return join(field, "field");
+    }
+
+    public final String append(final String s) {
+        return value + s;
+    }
+
+    public String appendConstant() {
+        return append("constant");
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static class Sub extends TestDual {
+
+        public Sub(final String value) {
+            super(value, "sub");
+        }
+
+        public static String joinSub(final String s) {
+            return TestDual.join(s, "sub");
+        }
+    }
+
+}
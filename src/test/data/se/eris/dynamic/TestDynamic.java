@@ -0,0 +1,42 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.dynamic;
+
+public class TestDynamic {
+
+    private final String value;
+
+    public TestDynamic(final String value, final long count, final int[] values) {
+        this.value = value + count + values.length;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static String concat(final String s, final double d, final Object o) {
+        String result = s;
+        for (int i = 0; i < 2; i++) {
+            result = result + d + o;
+        }
+        return result;
+    }
+
+    public static String conditionalReturn(final String s, final boolean nullIt) {
+        return nullIt ? null : s;
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.epilogue;
+
+public class TestEpilogue {
+
+    public static String one(final int i) {
+        return i == 0 ? null : "one";
+    }
+
+    public static String four(final int i) {
+        switch (i) {
+            case 0:
+                return null;
+            case 1:
+                return "b";
+            case 2:
+                return "c";
+            default:
+                return "d";
+        }
+    }
+
+    public static String eight(final int i) {
+        switch (i) {
+            case 0:
+                return "a";
+            case 1:
+                return "b";
+            case 2:
+                return "c";
+            case 3:
+                return "d";
+            case 4:
+                return "e";
+            case 5:
+                return "f";
+            case 6:
+                return "g";
+            default:
+                return null;
+        }
+    }
+
+    public synchronized String guarded(final Object lock, final int i) {
+        synchronized (lock) {
+            try {
+                if (i == 0) {
+                    return null;
+                }
+                return String.valueOf(i);
+            } finally {
+                if (i == 1) {
+                    return null;
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.frames;
+
+public class TestFrames {
+
+    private final String value;
+
+    public TestFrames(final String value, final long count, final double[] weights) {
+        this.value = value + count + weights.length;
+    }
+
+    public String loopFirst(final String s, final int times) {
+        String result = s;
+        for (int i = 0; i < times; i++) {
+            result = result + i;
+        }
+        return result;
+    }
+
+    public static String whileFirst(final String s) {
+        String result = s;
+        while (result.length() < 3) {
+            result = result + "x";
+        }
+        return result;
+    }
+
+    public static String doWhileFirst(String s) {
+        do {
+            s = s + "x";
+        } while (s.length() < 3);
+        return s;
+    }
+
+    public static String conditionalReturn(final String s, final boolean nullIt) {
+        return nullIt ? null : s;
+    }
+
+    public static Object commonSuperClass(final String s, final boolean first) {
+        final Object o = first ? new First(s) : new Second(s);
+        return o.toString();
+    }
+
+    public static String returnInLoop(final String[] values) {
+        for (final String value : values) {
+            if (value.isEmpty()) {
+                return value;
+            }
+        }
+        return "none";
+    }
+
+    public static String tryCatch(final String s, final boolean fail) {
+        try {
+            if (fail) {
+                throw new IllegalArgumentException(s);
+            }
+            return s.isEmpty() ? null : s;
+        } catch (final IllegalArgumentException e) {
+            return e.getMessage().isEmpty() ? null : "caught " + e.getMessage();
+        }
+    }
+
+    public static String tryFinally(final String s, final StringBuilder log) {
+        try {
+            return s.isEmpty() ? null : s;
+        } finally {
+            log.append("finally");
+        }
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    private static class Base {
+        private final String s;
+
+        Base(final String s) {
+            this.s = s;
+        }
+
+        @Override
+        public String toString() {
+            return s;
+        }
+    }
+
+    private static class First extends Base {
+        First(final String s) {
+            super(s);
+        }
+    }
+
+    private static class Second extends Base {
+        Second(final String s) {
+            super(s);
+        }
+    }
+
+}
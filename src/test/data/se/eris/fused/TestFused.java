@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.fused;
+
+public class TestFused {
+
+    private final String name;
+    private final String value;
+
+    public TestFused(final String name, final long id, final Object value) {
+        this.name = name;
+        this.value = value + ":" + id;
+    }
+
+    public static String join(final String a, final double d, final String b, final String c) {
+        return a + d + b + c;
+    }
+
+    public String describe(final String prefix) {
+        return prefix + name + value;
+    }
+
+    public static String conditionalReturn(final String s, final boolean nullIt) {
+        return nullIt ? null : s;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.hot;
+
+public class TestHot {
+
+    public static String hot(final String s) {
+        return s;
+    }
+
+    public static String hotNull(final String s) {
+        return null;
+    }
+
+    public static String cold(final String s) {
+        return s;
+    }
+
+    public static class Inner {
+
+        public static String echo(final String s) {
+            return s;
+        }
+    }
+
+}
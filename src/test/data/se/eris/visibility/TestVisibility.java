@@ -0,0 +1,51 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.visibility;
+
+public class TestVisibility {
+
+    public static String publicEcho(final String s) {
+        return s;
+    }
+
+    protected static String protectedEcho(final String s) {
+        return s;
+    }
+
+    static String packageEcho(final String s) {
+        return s;
+    }
+
+    private static String privateEcho(final String s) {
+        return s;
+    }
+
+    public static String publicNull(final String s) {
+        return null;
+    }
+
+    protected static String protectedNull(final String s) {
+        return null;
+    }
+
+    static class Hidden {
+
+        public static String echo(final String s) {
+            return s;
+        }
+    }
+
+}
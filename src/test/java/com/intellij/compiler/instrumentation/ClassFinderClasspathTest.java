@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ClassFinderClasspathTest {
+
+    private static final Path DIRECTORY = new File("target/test/data/classpath-index").toPath();
+    private static final String RESOURCE_NAME = "se/eris/indexed/Indexed.class";
+
+    private URL first;
+    private URL second;
+    private URL directory;
+
+    @Before
+    public void setUp() throws IOException {
+        Files.createDirectories(DIRECTORY.resolve("classes/se/eris/indexed"));
+        first = writeJar("first.jar", "java/lang/Runnable");
+        second = writeJar("second.jar", "java/lang/Cloneable");
+        Files.write(DIRECTORY.resolve("classes").resolve(RESOURCE_NAME), createClass("java/io/Serializable"));
+        directory = DIRECTORY.resolve("classes").toUri().toURL();
+    }
+
+    @Test
+    public void firstLoaderWins() throws IOException {
+        assertThat(new ClassFinderClasspath(new URL[]{first, second, directory}).getClassInfo(RESOURCE_NAME).getInterfaces(), is(new String[]{"java/lang/Runnable"}));
+        assertThat(new ClassFinderClasspath(new URL[]{second, first, directory}).getClassInfo(RESOURCE_NAME).getInterfaces(), is(new String[]{"java/lang/Cloneable"}));
+        assertThat(new ClassFinderClasspath(new URL[]{directory, second, first}).getClassInfo(RESOURCE_NAME).getInterfaces(), is(new String[]{"java/io/Serializable"}));
+    }
+
+    @Test
+    public void missingClass_fallsBackToSystemClassLoader() throws IOException {
+        final ClassFinderClasspath classpath = new ClassFinderClasspath(new URL[]{first, DIRECTORY.resolve("missing.jar").toUri().toURL()});
+        assertThat(classpath.getClassInfo("java/lang/String.class").getName(), is("java/lang/String"));
+        assertThat(classpath.getClassInfo("se/eris/indexed/Missing.class"), nullValue());
+    }
+
+    private static URL writeJar(final String name, final String anInterface) throws IOException {
+        final Path jar = DIRECTORY.resolve(name);
+        try (OutputStream out = Files.newOutputStream(jar); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(RESOURCE_NAME));
+            zip.write(createClass(anInterface));
+            zip.closeEntry();
+        }
+        return jar.toUri().toURL();
+    }
+
+    private static byte[] createClass(final String anInterface) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "se/eris/indexed/Indexed", null, "java/lang/Object", new String[]{anInterface});
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import se.eris.asm.ClassInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ClassInfoCacheTest {
+
+    private static final Path DIRECTORY = new File("target/test/data/classinfo-cache").toPath();
+    private static final Path CACHE_DIRECTORY = DIRECTORY.resolve("cache");
+    private static final File JAR = DIRECTORY.resolve("dependency.jar").toFile();
+    private static final String RESOURCE_NAME = "se/eris/cached/Cached.class";
+
+    @Before
+    public void setUp() throws IOException {
+        deleteRecursive(DIRECTORY.toFile());
+        Files.createDirectories(DIRECTORY);
+        writeJar("se/eris/cached/Cached", "java/lang/Runnable");
+    }
+
+    @Test
+    public void savedCache_answersWithoutJar() throws IOException {
+        final ClassInfoCache cache = ClassInfoCache.forJar(CACHE_DIRECTORY, JAR);
+        assertThat(cache.hasEntryNames(), is(false));
+        cache.setEntryNames(Collections.singleton(RESOURCE_NAME));
+        final ClassInfo classInfo = new ClassInfo(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "se/eris/cached/Cached", "Ljava/lang/Object;Ljava/lang/Runnable;", "java/lang/Object", new String[]{"java/lang/Runnable"});
+        cache.put(RESOURCE_NAME, classInfo);
+        cache.save();
+
+        final ClassInfoCache loaded = ClassInfoCache.forJar(CACHE_DIRECTORY, JAR);
+        assertThat(loaded.hasEntryNames(), is(true));
+        assertThat(loaded.mayContain(RESOURCE_NAME), is(true));
+        assertThat(loaded.mayContain("se/eris/cached/Missing.class"), is(false));
+        assertThat(loaded.get(RESOURCE_NAME), is(classInfo));
+    }
+
+    @Test
+    public void touchedJar_keepsCache() throws IOException {
+        final ClassInfoCache cache = ClassInfoCache.forJar(CACHE_DIRECTORY, JAR);
+        cache.setEntryNames(Collections.singleton(RESOURCE_NAME));
+        cache.save();
+
+        assertThat(JAR.setLastModified(JAR.lastModified() - 60000), is(true));
+        assertThat(ClassInfoCache.forJar(CACHE_DIRECTORY, JAR).hasEntryNames(), is(true));
+    }
+
+    @Test
+    public void changedJar_invalidatesCache() throws IOException {
+        final ClassInfoCache cache = ClassInfoCache.forJar(CACHE_DIRECTORY, JAR);
+        cache.setEntryNames(Collections.singleton(RESOURCE_NAME));
+        cache.save();
+
+        writeJar("se/eris/cached/Cached", "java/lang/Cloneable");
+        assertThat(JAR.setLastModified(JAR.lastModified() - 60000), is(true));
+        assertThat(ClassInfoCache.forJar(CACHE_DIRECTORY, JAR).hasEntryNames(), is(false));
+    }
+
+    @Test
+    public void classFinder_usesCacheOnSecondRun() throws Exception {
+        final URL[] classpath = {JAR.toURI().toURL()};
+        final InstrumentationSession session = InstrumentationSession.create(CACHE_DIRECTORY);
+        final InstrumentationClassFinder first = new InstrumentationClassFinder(classpath, session);
+        assertThat(first.loadClass("se.eris.cached.Cached").getSuperClass(), notNullValue());
+        first.close();
+        session.save();
+
+        final ClassInfoCache cache = ClassInfoCache.forJar(CACHE_DIRECTORY, JAR);
+        assertThat(cache.get(RESOURCE_NAME).getInterfaces(), is(new String[]{"java/lang/Runnable"}));
+        assertThat(cache.get("se/eris/cached/Missing.class"), nullValue());
+
+        final InstrumentationClassFinder second = new InstrumentationClassFinder(classpath, InstrumentationSession.create(CACHE_DIRECTORY));
+        assertThat(second.loadClass("se.eris.cached.Cached").isInterface(), is(false));
+        second.close();
+    }
+
+    private static void writeJar(final String className, final String anInterface) throws IOException {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", new String[]{anInterface});
+        writer.visitEnd();
+        try (OutputStream out = Files.newOutputStream(JAR.toPath()); ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(className + ".class"));
+            zip.write(writer.toByteArray());
+            zip.closeEntry();
+        }
+    }
+
+    private static void deleteRecursive(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.instrumentation;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import se.eris.asm.ClassInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class InstrumentationSessionTest {
+
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/session/classes").toPath();
+    private static final File CLASS_FILE = CLASSES_DIRECTORY.resolve("se/eris/shared/Shared.class").toFile();
+
+    @Test
+    public void shared_sameKey_sameSession() {
+        final Object key = new Object();
+        final InstrumentationSession session = InstrumentationSession.shared(key, null);
+
+        assertThat(InstrumentationSession.shared(key, null), sameInstance(session));
+        assertThat(InstrumentationSession.shared(new Object(), null), not(sameInstance(session)));
+        assertThat(InstrumentationSession.shared(key, CLASSES_DIRECTORY), not(sameInstance(session)));
+    }
+
+    @Test
+    public void classFiles_sharedWhileUnchanged() throws Exception {
+        writeClass("java/lang/Runnable");
+        final InstrumentationSession session = InstrumentationSession.create(null);
+        final URL[] classpath = {CLASSES_DIRECTORY.toUri().toURL()};
+
+        new InstrumentationClassFinder(classpath, session).loadClass("se.eris.shared.Shared");
+        final ClassInfo first = session.getClassFileInfo(CLASS_FILE);
+        assertThat(first.getInterfaces(), is(new String[]{"java/lang/Runnable"}));
+
+        new InstrumentationClassFinder(classpath, session).loadClass("se.eris.shared.Shared");
+        assertThat(session.getClassFileInfo(CLASS_FILE), sameInstance(first));
+
+        writeClass("java/lang/Cloneable");
+        assertThat(CLASS_FILE.setLastModified(CLASS_FILE.lastModified() + 60000), is(true));
+        assertThat(session.getClassFileInfo(CLASS_FILE), nullValue());
+        new InstrumentationClassFinder(classpath, session).loadClass("se.eris.shared.Shared");
+        assertThat(session.getClassFileInfo(CLASS_FILE).getInterfaces(), is(new String[]{"java/lang/Cloneable"}));
+    }
+
+    private static void writeClass(final String anInterface) throws IOException {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "se/eris/shared/Shared", null, "java/lang/Object", new String[]{anInterface});
+        writer.visitEnd();
+        Files.createDirectories(CLASS_FILE.getParentFile().toPath());
+        Files.write(CLASS_FILE.toPath(), writer.toByteArray());
+    }
+
+}
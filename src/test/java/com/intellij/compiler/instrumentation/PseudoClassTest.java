@@ -45,6 +45,17 @@ public class PseudoClassTest {
         assertThat(iterable.isAssignableFrom(object), is(false));
     }
 
+    @Test
+    public void getCommonSuperClass() throws IOException, ClassNotFoundException {
+        final InstrumentationClassFinder instrumentationClassFinder = getInstrumentationClassFinder();
+
+        assertThat(instrumentationClassFinder.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"), is("java/util/AbstractList"));
+        assertThat(instrumentationClassFinder.getCommonSuperClass("java/util/Collection", "java/util/ArrayList"), is("java/util/Collection"));
+        assertThat(instrumentationClassFinder.getCommonSuperClass("java/util/ArrayList", "java/util/Collection"), is("java/util/Collection"));
+        assertThat(instrumentationClassFinder.getCommonSuperClass("java/lang/String", "java/lang/Integer"), is("java/lang/Object"));
+        assertThat(instrumentationClassFinder.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"), is("java/util/AbstractList"));
+    }
+
     @NotNull
     private InstrumentationClassFinder getInstrumentationClassFinder() {
         final ClassLoader cl = ClassLoader.getSystemClassLoader();
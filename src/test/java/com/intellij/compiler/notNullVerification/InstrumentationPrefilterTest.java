@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.compiler.notNullVerification;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InstrumentationPrefilterTest {
+
+    private static final String NOT_NULL = "Lorg/jetbrains/annotations/NotNull;";
+
+    @Test
+    public void annotationMode_rejectsClassWithoutNotNull() {
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(getConfiguration(false));
+
+        assertThat(prefilter.mayNeedInstrumentation(createClass("(Ljava/lang/String;)V", null)), is(false));
+        assertThat(prefilter.getRejectedCount(), is(1));
+    }
+
+    @Test
+    public void annotationMode_acceptsClassWithNotNull() {
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(getConfiguration(false));
+
+        assertThat(prefilter.mayNeedInstrumentation(createClass("(Ljava/lang/String;)V", NOT_NULL)), is(true));
+        assertThat(prefilter.getRejectedCount(), is(0));
+    }
+
+    @Test
+    public void implicitMode_rejectsClassWithOnlyPrimitiveDescriptors() {
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(getConfiguration(true));
+
+        assertThat(prefilter.mayNeedInstrumentation(createClass("(IJ)Z", null)), is(false));
+    }
+
+    @Test
+    public void implicitMode_acceptsClassWithReferenceDescriptor() {
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(getConfiguration(true));
+
+        assertThat(prefilter.mayNeedInstrumentation(createClass("(I)[I", null)), is(true));
+    }
+
+    @Test
+    public void unreadableClass_isNotRejected() {
+        final InstrumentationPrefilter prefilter = new InstrumentationPrefilter(getConfiguration(false));
+
+        assertThat(prefilter.mayNeedInstrumentation(new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 50, 0, 3, 99}), is(true));
+    }
+
+    private static byte[] createClass(final String methodDescriptor, final String parameterAnnotation) {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, "se/eris/Prefiltered", null, "java/lang/Object", null);
+        final MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "method", methodDescriptor, null, null);
+        if (parameterAnnotation != null) {
+            method.visitParameterAnnotation(0, parameterAnnotation, false).visitEnd();
+        }
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static Configuration getConfiguration(final boolean implicit) {
+        return new Configuration(implicit, new AnnotationConfiguration(), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()));
+    }
+
+}
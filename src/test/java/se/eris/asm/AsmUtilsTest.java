@@ -16,6 +16,7 @@
 package se.eris.asm;
 
 import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -31,4 +32,18 @@ public class AsmUtilsTest {
         assertThat(AsmUtils.asmOpcodeToJavaVersion(Opcodes.V1_7), is(7));
     }
 
+    @Test
+    public void getClassFileVersion_readsHeader() {
+        final ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_1, Opcodes.ACC_PUBLIC, "Version", null, "java/lang/Object", null);
+        writer.visitEnd();
+
+        assertThat(AsmUtils.getClassFileVersion(writer.toByteArray()), is(Opcodes.V1_1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getClassFileVersion_notAClassFile() {
+        AsmUtils.getClassFileVersion(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
 }
\ No newline at end of file
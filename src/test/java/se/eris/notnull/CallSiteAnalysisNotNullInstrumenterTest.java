@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static se.eris.util.TestInstrumenter.collectInfos;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.implicit;
+
+public class CallSiteAnalysisNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CHECKED_CLASSES_DIRECTORY = new File("target/test/data/callsite/checked").toPath();
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/callsite/classes").toPath();
+
+    private static final String CLASS_NAME = "TestCallSite";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/callsite/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.callsite." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/callsite/" + CLASS_NAME + ".class";
+
+    private static final List<String> UNCHECKED_METHODS = Collections.singletonList("format");
+    private static final int UNCHECKED_PARAMETERS = 2;
+    private static final List<String> CHECKED_METHODS = Arrays.asList("wrap", "referenced", "uncalled");
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static final List<String> messages = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compileAndInstrument(CHECKED_CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().build()), collectInfos(messages), TEST_FILE);
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().callSiteAnalysis(true).preserveFrames(true).build()), collectInfos(messages), TEST_FILE);
+    }
+
+    @Test
+    public void notNullArguments_areNotChecked() throws IOException {
+        final Map<String, Integer> checked = ByteCodeUtil.getCodeLengths(CHECKED_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        final Map<String, Integer> analyzed = ByteCodeUtil.getCodeLengths(CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        for (final String method : UNCHECKED_METHODS) {
+            assertThat(method, analyzed.get(method), lessThan(checked.get(method)));
+        }
+        for (final String method : CHECKED_METHODS) {
+            assertThat(method, analyzed.get(method), is(checked.get(method)));
+        }
+    }
+
+    @Test
+    public void elidedChecks_areReported() {
+        assertThat(messages, hasItem("Call site analysis left out " + UNCHECKED_PARAMETERS + " parameter checks of private methods never passed null"));
+    }
+
+    @Test
+    public void notNullArguments_shouldWork() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Object instance = ReflectionUtil.simulateConstructorCall(c.getConstructor(String.class), "v");
+        assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("constant")), is((Object) "constantv"));
+        assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("parameter", String.class), "p"), is((Object) "pp"));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(instance, c.getMethod("parameter", String.class), new Object[]{null});
+    }
+
+    @Test
+    public void nullableArguments_shouldValidate() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Object instance = ReflectionUtil.simulateConstructorCall(c.getConstructor(String.class), "v");
+        final Method fromField = c.getMethod("fromField");
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/callsite/" + CLASS_NAME + ".wrap must not be null");
+        ReflectionUtil.simulateMethodCall(instance, fromField);
+    }
+
+}
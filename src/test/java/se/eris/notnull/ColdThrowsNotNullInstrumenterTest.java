@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.objectweb.asm.Opcodes;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+public class ColdThrowsNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/cold/classes").toPath();
+    private static final Path OUTLINE_CLASSES_DIRECTORY = new File("target/test/data/cold/outline").toPath();
+    private static final Path COMPACT_CLASSES_DIRECTORY = new File("target/test/data/cold/compact").toPath();
+
+    private static final String CLASS_NAME = "TestCold";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/cold/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.cold." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/cold/" + CLASS_NAME + ".class";
+    private static final String CHOOSE_DESCRIPTOR = "choose(Ljava/lang/String;Ljava/lang/String;I)Ljava/lang/String;";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler[] compilers;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final TestCompiler compiler = compileAndInstrument(CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().coldThrows(true).build(), TEST_FILE);
+        final TestCompiler outlineCompiler = compileAndInstrument(OUTLINE_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().coldThrows(true).outlineChecks(true).guardedChecks(true).preserveFrames(true).build(), TEST_FILE);
+        final TestCompiler compactCompiler = compileAndInstrument(COMPACT_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().coldThrows(true).fusedChecks(true).compactMessages(true).preserveFrames(true).build(), TEST_FILE);
+        compilers = new TestCompiler[]{compiler, outlineCompiler, compactCompiler};
+    }
+
+    @Test
+    public void parameters_shouldValidate() throws Exception {
+        for (final TestCompiler compiler : compilers) {
+            final Method concat = compiler.getCompiledClass(TEST_CLASS).getMethod("concat", String.class, String.class);
+            assertThat(ReflectionUtil.simulateMethodCall(concat, "a", "b"), is((Object) "ab"));
+            assertParameterFailure(concat, 0, null, "b");
+            assertParameterFailure(concat, 1, "a", null);
+        }
+    }
+
+    @Test
+    public void returnValues_shouldValidate() throws Exception {
+        for (final TestCompiler compiler : compilers) {
+            final Method choose = compiler.getCompiledClass(TEST_CLASS).getMethod("choose", String.class, String.class, int.class);
+            assertThat(ReflectionUtil.simulateMethodCall(choose, "a", "b", 1), is((Object) "b"));
+            assertThat(ReflectionUtil.simulateMethodCall(choose, "a", "b", 3), is((Object) "ab"));
+            try {
+                ReflectionUtil.simulateMethodCall(choose, "a", "b", 2);
+                fail("null was returned");
+            } catch (final IllegalStateException e) {
+                assertThat(e.getMessage(), is("NotNull method se/eris/cold/" + CLASS_NAME + ".choose must not return null"));
+            }
+        }
+    }
+
+    @Test
+    public void constructor_shouldValidate() throws Exception {
+        final Class<?> c = compilers[1].getCompiledClass(TEST_CLASS);
+        final Object instance = c.getConstructor(String.class).newInstance("world");
+        assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("greet", String.class, int.class), "hi ", 2), is((Object) "hi hi world"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/cold/" + CLASS_NAME + ".greet must not be null");
+        ReflectionUtil.simulateMethodCall(instance, c.getMethod("greet", String.class, int.class), null, 2);
+    }
+
+    @Test
+    public void throws_followTheCode() throws Exception {
+        final List<Integer> opcodes = ByteCodeUtil.getOpcodes(CLASSES_DIRECTORY.resolve(CLASS_FILE)).get(CHOOSE_DESCRIPTOR);
+        // the code, including the shared checked return, then two parameter throws and one return value throw
+        final int throwsStart = opcodes.lastIndexOf(Opcodes.ARETURN) + 1;
+        assertThat(opcodes.subList(0, throwsStart).contains(Opcodes.ATHROW), is(false));
+        assertThat(Collections.frequency(opcodes.subList(throwsStart, opcodes.size()), Opcodes.ATHROW), is(3));
+    }
+
+    private static void assertParameterFailure(@NotNull final Method method, final int parameter, final Object... args) throws Exception {
+        try {
+            ReflectionUtil.simulateMethodCall(method, args);
+            fail("null argument " + parameter + " was accepted");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Argument " + parameter + " for implicit 'NotNull' parameter of se/eris/cold/" + CLASS_NAME + "." + method.getName() + " must not be null"));
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.lessThan;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.instrument;
+
+public class CompactMessagesNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path INLINE_CLASSES_DIRECTORY = new File("target/test/data/compact/inline").toPath();
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/compact/classes").toPath();
+
+    private static final String CLASS_NAME = "TestCompact";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/compact/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.compact." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/compact/" + CLASS_NAME + ".class";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compileAndInstrument(INLINE_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().build(), TEST_FILE);
+
+        final CodeGenerationConfiguration compact = CodeGenerationConfiguration.Builder.init().compactMessages(true).preserveFrames(true).build();
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, compact, TEST_FILE);
+        // instrumenting again must not add the helpers twice
+        instrument(CLASSES_DIRECTORY, compact);
+    }
+
+    @Test
+    public void constructor_shouldValidate() throws Exception {
+        final Constructor<?> constructor = compiler.getCompiledClass(TEST_CLASS).getConstructor(String.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/compact/" + CLASS_NAME + ".<init> must not be null");
+        ReflectionUtil.simulateConstructorCall(constructor, new Object[]{null});
+    }
+
+    @Test
+    public void parameter_shouldValidate() throws Exception {
+        final Method join = compiler.getCompiledClass(TEST_CLASS).getMethod("join", String.class, long.class, String.class, String.class);
+        assertThat(ReflectionUtil.simulateMethodCall(join, "a", 1L, "b", "c"), is((Object) "a1bc"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 3 for implicit 'NotNull' parameter of se/eris/compact/" + CLASS_NAME + ".join must not be null");
+        ReflectionUtil.simulateMethodCall(join, "a", 1L, "b", null);
+    }
+
+    @Test
+    public void returnValue_shouldValidate() throws Exception {
+        final Method conditionalReturn = compiler.getCompiledClass(TEST_CLASS).getMethod("conditionalReturn", String.class, boolean.class);
+        assertThat(ReflectionUtil.simulateMethodCall(conditionalReturn, "a", false), is((Object) "a"));
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/compact/" + CLASS_NAME + ".conditionalReturn must not return null");
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+    @Test
+    public void helpers_areAddedOnce() throws Exception {
+        final List<String> names = new ArrayList<>();
+        for (final Method method : compiler.getCompiledClass(TEST_CLASS).getDeclaredMethods()) {
+            if (method.isSynthetic()) {
+                names.add(method.getName());
+            }
+        }
+        assertThat(names, containsInAnyOrder("$$notNull$throwArgument", "$$notNull$throwReturn"));
+    }
+
+    @Test
+    public void messages_areStoredOnce() throws IOException {
+        final byte[] inline = Files.readAllBytes(INLINE_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        final byte[] compact = Files.readAllBytes(CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        assertThat(count(inline, " must not be null"), is(9));
+        assertThat(count(compact, " must not be null"), is(1));
+        assertThat(compact.length, lessThan(inline.length));
+    }
+
+    private static int count(@NotNull final byte[] classFile, @NotNull final String text) {
+        final String content = new String(classFile, StandardCharsets.ISO_8859_1);
+        int count = 0;
+        for (int i = content.indexOf(text); i >= 0; i = content.indexOf(text, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -16,11 +16,16 @@
 package se.eris.notnull;
 
 import org.junit.Test;
+import org.objectweb.asm.Opcodes;
 import se.eris.notnull.instrumentation.ClassMatcher;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertThat;
 
@@ -46,12 +51,67 @@ public class ConfigurationTest {
         assertThat(configuration.isImplicit(), is(true));
     }
 
+    @Test
+    public void getDescriptors_default() {
+        final Configuration configuration = getDefaultNotNullConfiguration(false);
+        assertThat(configuration.getNotNullDescriptors(), containsInAnyOrder("Lorg/jetbrains/annotations/NotNull;", "Lse/eris/notnull/NotNull;"));
+        assertThat(configuration.getNullableDescriptors(), containsInAnyOrder("Lorg/jetbrains/annotations/Nullable;", "Lse/eris/notnull/Nullable;"));
+    }
+
     @Test
     public void excludes() throws Exception {
         final Configuration configuration = getDefaultNotNullConfiguration(true);
         configuration.isImplicitInstrumentation("NoName.java");
     }
 
+    @Test
+    public void visibility_isLimitedByClass() {
+        final VisibilityConfiguration visibility = new VisibilityConfiguration(CheckVisibility.PROTECTED, CheckVisibility.ALL, Collections.<ClassMatcher>emptySet());
+        assertThat(visibility.isParameterChecked("a.B", Opcodes.ACC_PUBLIC, Opcodes.ACC_PROTECTED), is(true));
+        assertThat(visibility.isParameterChecked("a.B", Opcodes.ACC_PUBLIC, 0), is(false));
+        assertThat(visibility.isParameterChecked("a.B", 0, Opcodes.ACC_PUBLIC), is(false));
+        assertThat(visibility.isReturnChecked("a.B", 0, Opcodes.ACC_PRIVATE), is(true));
+        assertThat(getDefaultNotNullConfiguration(true).getVisibility().isRestricted(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void visibility_parseUnknown() {
+        CheckVisibility.parse("friends");
+    }
+
+    @Test
+    public void profile_parseHotMethods() {
+        final ProfileConfiguration profile = ProfileConfiguration.parse(Arrays.asList(
+                "# hot methods",
+                "",
+                "  a.b.C.run(String, int)   line: 12   bci: 4",
+                "a.b.C::call",
+                "a/b/D$E.apply",
+                "noMethod",
+                "a.b.F {"), HotMethodPolicy.SKIP);
+        assertThat(profile.getPolicy("a.b.C", "run"), is(HotMethodPolicy.SKIP));
+        assertThat(profile.getPolicy("a.b.C", "call"), is(HotMethodPolicy.SKIP));
+        assertThat(profile.getPolicy("a.b.D$E", "apply"), is(HotMethodPolicy.SKIP));
+        assertThat(profile.getPolicy("a.b.C", "apply"), is(nullValue()));
+        assertThat(profile.hasHotMethods("a.b.D$E"), is(true));
+        assertThat(profile.hasHotMethods("noMethod"), is(false));
+        assertThat(profile.hasHotMethods("a.b"), is(false));
+        assertThat(HotMethodPolicy.parse("no-return-check"), is(HotMethodPolicy.NO_RETURN_CHECK));
+    }
+
+    @Test
+    public void profile_parsePrintedRecording() throws IOException {
+        final ProfileConfiguration profile = ProfileConfiguration.load(new File("src/test/data/se/eris/hot/execution-samples.txt").toPath(), HotMethodPolicy.COMPACT);
+        assertThat(profile.getPolicy("se.eris.hot.Spin", "hot"), is(HotMethodPolicy.COMPACT));
+        assertThat(profile.getPolicy("java.lang.invoke.ClassSpecializer", "findSpecies"), is(HotMethodPolicy.COMPACT));
+        // only the top frames are hot
+        assertThat(profile.getPolicy("se.eris.hot.Spin", "main"), is(nullValue()));
+        assertThat(profile.hasHotMethods("java.lang.invoke.LambdaFormEditor"), is(false));
+        // nor are the event names and fields
+        assertThat(profile.hasHotMethods("jdk"), is(false));
+        assertThat(profile.toString(), is("ProfileConfiguration{hotMethods=[java.lang.invoke.ClassSpecializer.findSpecies, se.eris.hot.Spin.hot], policy=COMPACT}"));
+    }
+
     private Configuration getDefaultNotNullConfiguration(final boolean implicit) {
         return new Configuration(implicit, new AnnotationConfiguration(Collections.<String>emptySet(), Collections.<String>emptySet()), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()));
     }
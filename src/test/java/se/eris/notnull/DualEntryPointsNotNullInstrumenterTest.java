@@ -0,0 +1,147 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static se.eris.util.TestInstrumenter.collectInfos;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.implicit;
+import static se.eris.util.TestInstrumenter.instrument;
+
+public class DualEntryPointsNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/dual/classes").toPath();
+    private static final Path FRAMES_CLASSES_DIRECTORY = new File("target/test/data/dual/frames").toPath();
+
+    private static final String CLASS_NAME = "TestDual";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/dual/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.dual." + CLASS_NAME;
+    private static final String SUB_CLASS = TEST_CLASS + "$Sub";
+    private static final String OWNER = "se/eris/dual/" + CLASS_NAME;
+
+    private static final String JOIN = "(Ljava/lang/String;Ljava/lang/String;)Ljava/lang/String;";
+    private static final String STRING_CONSTRUCTOR = "<init>(Ljava/lang/String;)V";
+    private static final String STRING_CONSTRUCTOR_BODY = "<init>(Ljava/lang/String;L" + OWNER + ";)V";
+    private static final String SUFFIX_CONSTRUCTOR_BODY = OWNER + ".<init>(Ljava/lang/String;Ljava/lang/String;L" + OWNER + ";)V";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler framesCompiler;
+    private static final List<String> messages = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        final Configuration dual = implicit(CodeGenerationConfiguration.Builder.init().dualEntryPoints(true).build());
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, dual, collectInfos(messages), TEST_FILE);
+        // instrumenting again must not split the methods twice
+        instrument(CLASSES_DIRECTORY, dual, collectInfos(messages));
+
+        framesCompiler = compileAndInstrument(FRAMES_CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().dualEntryPoints(true).preserveFrames(true).build()), collectInfos(messages), TEST_FILE);
+    }
+
+    @Test
+    public void checkedArguments_callBody() throws IOException {
+        final Map<String, List<String>> calls = ByteCodeUtil.getCalls(FRAMES_CLASSES_DIRECTORY.resolve(OWNER + ".class"));
+        assertThat(calls.get("twice$$notNull$unchecked(Ljava/lang/String;)Ljava/lang/String;"), hasItem(OWNER + ".join$$notNull$unchecked" + JOIN));
+        assertThat(calls.get("twice(Ljava/lang/String;)Ljava/lang/String;"), hasItem(OWNER + ".twice$$notNull$unchecked(Ljava/lang/String;)Ljava/lang/String;"));
+        assertThat(calls.get("appendConstant()Ljava/lang/String;"), hasItem(OWNER + ".append$$notNull$unchecked(Ljava/lang/String;)Ljava/lang/String;"));
+        assertThat(calls.get(STRING_CONSTRUCTOR), hasItem(OWNER + "." + STRING_CONSTRUCTOR_BODY));
+        assertThat(calls.get(STRING_CONSTRUCTOR_BODY), hasItem(SUFFIX_CONSTRUCTOR_BODY));
+    }
+
+    @Test
+    public void checkedArguments_callBodyOfOtherClass() throws IOException {
+        final Map<String, List<String>> calls = ByteCodeUtil.getCalls(FRAMES_CLASSES_DIRECTORY.resolve(OWNER + "$Sub.class"));
+        assertThat(calls.get("<init>(Ljava/lang/String;L" + OWNER + "$Sub;)V"), hasItem(SUFFIX_CONSTRUCTOR_BODY));
+        assertThat(calls.get("joinSub$$notNull$unchecked(Ljava/lang/String;)Ljava/lang/String;"), hasItem(OWNER + ".join$$notNull$unchecked" + JOIN));
+    }
+
+    @Test
+    public void uncheckedArguments_callEntryPoint() throws IOException {
+        final Map<String, List<String>> calls = ByteCodeUtil.getCalls(FRAMES_CLASSES_DIRECTORY.resolve(OWNER + ".class"));
+        assertThat(calls.get("withField()Ljava/lang/String;"), hasItem(OWNER + ".join" + JOIN));
+    }
+
+    @Test
+    public void splitMethods_areReported() {
+        assertThat(messages, hasItem("Split 7 methods into checked entry points and unchecked bodies, 5 calls go to the unchecked bodies"));
+    }
+
+    @Test
+    public void bodies_areSyntheticWithoutAnnotations() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        assertThat(c.getMethod("join", String.class, String.class).isSynthetic(), is(false));
+        final Method body = c.getDeclaredMethod("join$$notNull$unchecked", String.class, String.class);
+        assertThat(body.isSynthetic(), is(true));
+        assertThat(body.getDeclaredAnnotations().length, is(0));
+        assertThat(c.getDeclaredConstructor(String.class, c).isSynthetic(), is(true));
+    }
+
+    @Test
+    public void entryPoints_shouldValidate() throws Exception {
+        for (final TestCompiler testCompiler : new TestCompiler[]{compiler, framesCompiler}) {
+            final Class<?> c = testCompiler.getCompiledClass(TEST_CLASS);
+            assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("twice", String.class), "a"), is((Object) "aa"));
+            final Object instance = ReflectionUtil.simulateConstructorCall(c.getConstructor(String.class), "v");
+            assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("getValue")), is((Object) "vdefault"));
+            assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("appendConstant")), is((Object) "vdefaultconstant"));
+            final Class<?> sub = testCompiler.getCompiledClass(SUB_CLASS);
+            final Object subInstance = ReflectionUtil.simulateConstructorCall(sub.getConstructor(String.class), "v");
+            assertThat(ReflectionUtil.simulateMethodCall(subInstance, c.getMethod("getValue")), is((Object) "vsub"));
+            assertThat(ReflectionUtil.simulateMethodCall(sub.getMethod("joinSub", String.class), "a"), is((Object) "asub"));
+        }
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of " + OWNER + ".twice must not be null");
+        ReflectionUtil.simulateMethodCall(framesCompiler.getCompiledClass(TEST_CLASS).getMethod("twice", String.class), new Object[]{null});
+    }
+
+    @Test
+    public void uncheckedArguments_shouldValidate() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of " + OWNER + ".join must not be null");
+        ReflectionUtil.simulateMethodCall(framesCompiler.getCompiledClass(TEST_CLASS).getMethod("withField"));
+    }
+
+    @Test
+    public void constructorEntryPoint_shouldValidate() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of " + OWNER + ".<init> must not be null");
+        ReflectionUtil.simulateConstructorCall(compiler.getCompiledClass(TEST_CLASS).getConstructor(String.class), new Object[]{null});
+    }
+
+}
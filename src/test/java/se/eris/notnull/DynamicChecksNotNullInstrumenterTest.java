@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.notnull.runtime.NullChecks;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static se.eris.util.TestInstrumenter.instrument;
+
+public class DynamicChecksNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/dynamic/classes").toPath();
+
+    private static final String CLASS_NAME = "TestDynamic";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/dynamic/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.dynamic." + CLASS_NAME;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compiler = TestCompiler.create(CLASSES_DIRECTORY);
+        compiler.compile(TEST_FILE);
+
+        assertThat(instrument(CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().dynamicChecks(true).preserveFrames(true).build()), greaterThan(0));
+    }
+
+    @After
+    public void tearDown() {
+        NullChecks.setEnabled(true);
+    }
+
+    @Test
+    public void constructor_shouldValidate() throws Exception {
+        final Constructor<?> constructor = compiler.getCompiledClass(TEST_CLASS).getConstructor(String.class, long.class, int[].class);
+        ReflectionUtil.simulateConstructorCall(constructor, "s", 1L, new int[0]);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 2 for implicit 'NotNull' parameter of se/eris/dynamic/" + CLASS_NAME + ".<init> must not be null");
+        ReflectionUtil.simulateConstructorCall(constructor, "s", 1L, null);
+    }
+
+    @Test
+    public void parameter_shouldValidate() throws Exception {
+        final Method concat = compiler.getCompiledClass(TEST_CLASS).getMethod("concat", String.class, double.class, Object.class);
+        assertThat(ReflectionUtil.simulateMethodCall(concat, "a", 1.0, "b"), is((Object) "a1.0b1.0b"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 2 for implicit 'NotNull' parameter of se/eris/dynamic/" + CLASS_NAME + ".concat must not be null");
+        ReflectionUtil.simulateMethodCall(concat, "a", 1.0, null);
+    }
+
+    @Test
+    public void returnValue_shouldValidate() throws Exception {
+        final Method conditionalReturn = compiler.getCompiledClass(TEST_CLASS).getMethod("conditionalReturn", String.class, boolean.class);
+        assertThat(ReflectionUtil.simulateMethodCall(conditionalReturn, "a", false), is((Object) "a"));
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/dynamic/" + CLASS_NAME + ".conditionalReturn must not return null");
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+    @Test
+    public void disabledChecks_shouldNotValidate() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Method concat = c.getMethod("concat", String.class, double.class, Object.class);
+        final Method conditionalReturn = c.getMethod("conditionalReturn", String.class, boolean.class);
+        // link the call sites with the checks on before switching
+        assertThat(ReflectionUtil.simulateMethodCall(concat, "a", 1.0, "b"), is((Object) "a1.0b1.0b"));
+
+        NullChecks.setEnabled(false);
+        assertThat(ReflectionUtil.simulateMethodCall(concat, "a", 1.0, null), is((Object) "a1.0null1.0null"));
+        assertThat(ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true), is(nullValue()));
+
+        NullChecks.setEnabled(true);
+        exception.expect(IllegalStateException.class);
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import se.eris.notnull.runtime.StacklessIllegalArgumentException;
+import se.eris.notnull.runtime.StacklessIllegalStateException;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+public class ExceptionsNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path STACKLESS_DIRECTORY = new File("target/test/data/exceptions/stackless").toPath();
+    private static final Path CUSTOM_DIRECTORY = new File("target/test/data/exceptions/custom").toPath();
+    private static final Path FACTORY_DIRECTORY = new File("target/test/data/exceptions/factory").toPath();
+    private static final Path COMPACT_FACTORY_DIRECTORY = new File("target/test/data/exceptions/compactFactory").toPath();
+
+    private static final String CLASS_NAME = "TestExceptions";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/exceptions/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.exceptions." + CLASS_NAME;
+    private static final String ARGUMENT_MESSAGE = "Argument 0 for implicit 'NotNull' parameter of se/eris/exceptions/" + CLASS_NAME + ".echo must not be null";
+    private static final String RETURN_MESSAGE = "NotNull method se/eris/exceptions/" + CLASS_NAME + ".nullReturn must not return null";
+
+    private static TestCompiler stacklessCompiler;
+    private static TestCompiler customCompiler;
+    private static TestCompiler factoryCompiler;
+    private static TestCompiler compactFactoryCompiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        stacklessCompiler = compileAndInstrument(STACKLESS_DIRECTORY, CodeGenerationConfiguration.Builder.init().stacklessExceptions().build(), TEST_FILE);
+        // the custom exception is thrown through the helpers of the outlined checks
+        customCompiler = compileAndInstrument(CUSTOM_DIRECTORY, CodeGenerationConfiguration.Builder.init().outlineChecks(true)
+                .argumentException(TEST_CLASS + "$CustomException").returnException(TEST_CLASS + "$CustomException").build(), TEST_FILE);
+        factoryCompiler = compileAndInstrument(FACTORY_DIRECTORY, CodeGenerationConfiguration.Builder.init().preserveFrames(true).exceptionFactory(TEST_CLASS + "$Factory").build(), TEST_FILE);
+        compactFactoryCompiler = compileAndInstrument(COMPACT_FACTORY_DIRECTORY, CodeGenerationConfiguration.Builder.init().compactMessages(true).exceptionFactory(TEST_CLASS + "$Factory").build(), TEST_FILE);
+    }
+
+    @Test
+    public void stackless_argumentHasNoStackTrace() throws Exception {
+        final RuntimeException exception = getException(stacklessCompiler, "echo", null);
+        assertThat(exception, instanceOf(StacklessIllegalArgumentException.class));
+        assertThat(exception.getMessage(), is(ARGUMENT_MESSAGE));
+        assertThat(exception.getStackTrace().length, is(0));
+    }
+
+    @Test
+    public void stackless_returnHasNoStackTrace() throws Exception {
+        final RuntimeException exception = getException(stacklessCompiler, "nullReturn", "a");
+        assertThat(exception, instanceOf(StacklessIllegalStateException.class));
+        assertThat(exception.getMessage(), is(RETURN_MESSAGE));
+        assertThat(exception.getStackTrace().length, is(0));
+    }
+
+    @Test
+    public void custom_isThrown() throws Exception {
+        final Class<?> customException = customCompiler.getCompiledClass(TEST_CLASS + "$CustomException");
+        final RuntimeException argumentException = getException(customCompiler, "echo", null);
+        assertThat(argumentException.getClass(), is((Object) customException));
+        assertThat(argumentException.getMessage(), is(ARGUMENT_MESSAGE));
+        final RuntimeException returnException = getException(customCompiler, "nullReturn", "a");
+        assertThat(returnException.getClass(), is((Object) customException));
+        assertThat(returnException.getMessage(), is(RETURN_MESSAGE));
+    }
+
+    @Test
+    public void factory_createsExceptions() throws Exception {
+        assertFactory(factoryCompiler);
+    }
+
+    @Test
+    public void factory_createsCompactMessageExceptions() throws Exception {
+        assertFactory(compactFactoryCompiler);
+    }
+
+    private static void assertFactory(@NotNull final TestCompiler compiler) throws Exception {
+        final Object preallocated = compiler.getCompiledClass(TEST_CLASS + "$Factory").getField("PREALLOCATED").get(null);
+        assertThat(getException(compiler, "echo", null), sameInstance(preallocated));
+        final RuntimeException returnException = getException(compiler, "nullReturn", "a");
+        assertThat(returnException, instanceOf(UnsupportedOperationException.class));
+        assertThat(returnException.getMessage(), is(RETURN_MESSAGE));
+    }
+
+    @NotNull
+    private static RuntimeException getException(@NotNull final TestCompiler compiler, @NotNull final String methodName, final String argument) throws Exception {
+        final Method method = compiler.getCompiledClass(TEST_CLASS).getMethod(methodName, String.class);
+        try {
+            ReflectionUtil.simulateMethodCall(method, new Object[]{argument});
+        } catch (final RuntimeException e) {
+            return e;
+        }
+        throw new AssertionError(methodName + " did not throw");
+    }
+
+}
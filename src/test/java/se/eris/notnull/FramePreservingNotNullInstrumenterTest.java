@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.fail;
+import static se.eris.util.TestInstrumenter.instrument;
+
+/**
+ * Instruments without the test classes on the classpath, which only works when the frames are not recomputed.
+ */
+public class FramePreservingNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/frames/classes").toPath();
+
+    private static final String CLASS_NAME = "TestFrames";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/frames/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.frames." + CLASS_NAME;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compiler = TestCompiler.create(CLASSES_DIRECTORY);
+        compiler.compile(TEST_FILE);
+
+        assertThat(instrument(CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().preserveFrames(true).build()), greaterThan(0));
+    }
+
+    @Test
+    public void constructor_shouldValidate() throws Exception {
+        final Constructor<?> constructor = compiler.getCompiledClass(TEST_CLASS).getConstructor(String.class, long.class, double[].class);
+        ReflectionUtil.simulateConstructorCall(constructor, "s", 1L, new double[0]);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 2 for implicit 'NotNull' parameter of se/eris/frames/" + CLASS_NAME + ".<init> must not be null");
+        ReflectionUtil.simulateConstructorCall(constructor, "s", 1L, null);
+    }
+
+    @Test
+    public void loopAtMethodStart_shouldValidate() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Object instance = c.getConstructor(String.class, long.class, double[].class).newInstance("s", 1L, new double[0]);
+        final Method loopFirst = c.getMethod("loopFirst", String.class, int.class);
+        assertThat(ReflectionUtil.simulateMethodCall(instance, loopFirst, "a", 2), is((Object) "a01"));
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("whileFirst", String.class), "a"), is((Object) "axx"));
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("doWhileFirst", String.class), "a"), is((Object) "axx"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/frames/" + CLASS_NAME + ".loopFirst must not be null");
+        ReflectionUtil.simulateMethodCall(instance, loopFirst, null, 2);
+    }
+
+    @Test
+    public void conditionalReturn_shouldValidate() throws Exception {
+        final Method conditionalReturn = compiler.getCompiledClass(TEST_CLASS).getMethod("conditionalReturn", String.class, boolean.class);
+        assertThat(ReflectionUtil.simulateMethodCall(conditionalReturn, "a", false), is((Object) "a"));
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/frames/" + CLASS_NAME + ".conditionalReturn must not return null");
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+    @Test
+    public void mergedLocalTypes_shouldVerify() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("commonSuperClass", String.class, boolean.class), "a", true), is((Object) "a"));
+        final Method returnInLoop = c.getMethod("returnInLoop", String[].class);
+        assertThat(ReflectionUtil.simulateMethodCall(returnInLoop, (Object) new String[]{"a", ""}), is((Object) ""));
+        assertThat(ReflectionUtil.simulateMethodCall(returnInLoop, (Object) new String[]{"a"}), is((Object) "none"));
+    }
+
+    @Test
+    public void returnInTryCatch_shouldValidate() throws Exception {
+        final Method tryCatch = compiler.getCompiledClass(TEST_CLASS).getMethod("tryCatch", String.class, boolean.class);
+        assertThat(ReflectionUtil.simulateMethodCall(tryCatch, "a", false), is((Object) "a"));
+        assertThat(ReflectionUtil.simulateMethodCall(tryCatch, "a", true), is((Object) "caught a"));
+        assertFailure(IllegalArgumentException.class, "Argument 0 for implicit 'NotNull' parameter of se/eris/frames/" + CLASS_NAME + ".tryCatch must not be null", tryCatch, null, false);
+        assertFailure(IllegalStateException.class, "NotNull method se/eris/frames/" + CLASS_NAME + ".tryCatch must not return null", tryCatch, "", false);
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/frames/" + CLASS_NAME + ".tryCatch must not return null");
+        ReflectionUtil.simulateMethodCall(tryCatch, "", true);
+    }
+
+    @Test
+    public void returnInTryFinally_shouldValidate() throws Exception {
+        final Method tryFinally = compiler.getCompiledClass(TEST_CLASS).getMethod("tryFinally", String.class, StringBuilder.class);
+        final StringBuilder log = new StringBuilder();
+        assertThat(ReflectionUtil.simulateMethodCall(tryFinally, "a", log), is((Object) "a"));
+        assertThat(log.toString(), is("finally"));
+        assertFailure(IllegalArgumentException.class, "Argument 1 for implicit 'NotNull' parameter of se/eris/frames/" + CLASS_NAME + ".tryFinally must not be null", tryFinally, "a", null);
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/frames/" + CLASS_NAME + ".tryFinally must not return null");
+        try {
+            ReflectionUtil.simulateMethodCall(tryFinally, "", log);
+        } finally {
+            assertThat(log.toString(), is("finallyfinally"));
+        }
+    }
+
+    private static void assertFailure(@NotNull final Class<? extends RuntimeException> expected, @NotNull final String message, @NotNull final Method method, @NotNull final Object... arguments) throws Exception {
+        try {
+            ReflectionUtil.simulateMethodCall(method, arguments);
+            fail("Expected " + expected.getSimpleName());
+        } catch (final RuntimeException e) {
+            assertThat(e, instanceOf(expected));
+            assertThat(e.getMessage(), is(message));
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.objectweb.asm.Opcodes;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+public class FusedChecksNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/fused/classes").toPath();
+    private static final Path COMPACT_CLASSES_DIRECTORY = new File("target/test/data/fused/compact").toPath();
+
+    private static final String CLASS_NAME = "TestFused";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/fused/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.fused." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/fused/" + CLASS_NAME + ".class";
+    private static final String JOIN_DESCRIPTOR = "join(Ljava/lang/String;DLjava/lang/String;Ljava/lang/String;)Ljava/lang/String;";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler compactCompiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().fusedChecks(true).build(), TEST_FILE);
+        compactCompiler = compileAndInstrument(COMPACT_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().fusedChecks(true).compactMessages(true).guardedChecks(true).preserveFrames(true).build(), TEST_FILE);
+    }
+
+    @Test
+    public void nullParameter_isReported() throws Exception {
+        for (final TestCompiler testCompiler : new TestCompiler[]{compiler, compactCompiler}) {
+            final Method join = testCompiler.getCompiledClass(TEST_CLASS).getMethod("join", String.class, double.class, String.class, String.class);
+            assertThat(ReflectionUtil.simulateMethodCall(join, "a", 1.0, "b", "c"), is((Object) "a1.0bc"));
+            assertFailure(join, 0, null, 1.0, "b", "c");
+            assertFailure(join, 2, "a", 1.0, null, "c");
+            assertFailure(join, 3, "a", 1.0, "b", null);
+            assertFailure(join, 0, null, 1.0, null, null);
+        }
+    }
+
+    @Test
+    public void nullConstructorParameter_isReported() throws Exception {
+        final Constructor<?> constructor = compactCompiler.getCompiledClass(TEST_CLASS).getConstructor(String.class, long.class, Object.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 2 for implicit 'NotNull' parameter of se/eris/fused/" + CLASS_NAME + ".<init> must not be null");
+        try {
+            constructor.newInstance("a", 1L, null);
+        } catch (final InvocationTargetException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test
+    public void instanceMethod_shouldValidate() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Object instance = c.getConstructor(String.class, long.class, Object.class).newInstance("a", 1L, "b");
+        final Method describe = c.getMethod("describe", String.class);
+        assertThat(ReflectionUtil.simulateMethodCall(instance, describe, "x"), is((Object) "xab:1"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/fused/" + CLASS_NAME + ".describe must not be null");
+        ReflectionUtil.simulateMethodCall(instance, describe, new Object[]{null});
+    }
+
+    @Test
+    public void prologue_hasNoThrows() throws Exception {
+        final List<Integer> opcodes = ByteCodeUtil.getOpcodes(CLASSES_DIRECTORY.resolve(CLASS_FILE)).get(JOIN_DESCRIPTOR);
+        // three tests, each a load and a jump, then the original code
+        for (int i = 1; i < 6; i += 2) {
+            assertThat(opcodes.get(i), is(Opcodes.IFNULL));
+        }
+        // the parameter throws follow the code, only the return value check throws before the return
+        final List<Integer> failedParameters = opcodes.subList(opcodes.indexOf(Opcodes.ARETURN) + 1, opcodes.size());
+        assertThat(Collections.frequency(failedParameters, Opcodes.ATHROW), is(3));
+        assertThat(Collections.frequency(opcodes, Opcodes.ATHROW), is(4));
+    }
+
+    private static void assertFailure(@NotNull final Method method, final int parameter, final Object... args) throws Exception {
+        try {
+            ReflectionUtil.simulateMethodCall(method, args);
+            fail("null argument " + parameter + " was accepted");
+        } catch (final IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Argument " + parameter + " for implicit 'NotNull' parameter of se/eris/fused/" + CLASS_NAME + ".join must not be null"));
+        }
+    }
+
+}
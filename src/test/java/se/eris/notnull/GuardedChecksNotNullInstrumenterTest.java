@@ -0,0 +1,155 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.instrument;
+
+/**
+ * The guard is set when the class is initialized, so every test loads the classes in a new class loader.
+ */
+public class GuardedChecksNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/guarded/classes").toPath();
+    private static final Path DYNAMIC_CLASSES_DIRECTORY = new File("target/test/data/guarded/dynamic").toPath();
+    private static final Path DUAL_CLASSES_DIRECTORY = new File("target/test/data/guarded/dual").toPath();
+
+    private static final String CLASS_NAME = "TestGuarded";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/guarded/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.guarded." + CLASS_NAME;
+    private static final String PLAIN_CLASS = TEST_CLASS + "$Plain";
+    private static final String CALLER_CLASS = "se.eris.guarded.dual.TestGuardedCaller";
+
+    private static final String PROPERTY = "se.eris.notnull.checks";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        TestCompiler.create(CLASSES_DIRECTORY).compile(TEST_FILE);
+        final CodeGenerationConfiguration guarded = CodeGenerationConfiguration.Builder.init().guardedChecks(true).build();
+        assertThat(instrument(CLASSES_DIRECTORY, guarded), greaterThan(0));
+        // instrumenting again must not add the field twice
+        instrument(CLASSES_DIRECTORY, guarded);
+
+        compileAndInstrument(DYNAMIC_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().guardedChecks(true).dynamicChecks(true).preserveFrames(true).build(), TEST_FILE);
+        compileAndInstrument(DUAL_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().guardedChecks(true).dualEntryPoints(true).nullnessAnalysis(true).preserveFrames(true).build(),
+                new File(SRC_DIR, "se/eris/guarded/dual/TestGuardedCaller.java"), new File(SRC_DIR, "se/eris/guarded/dual/TestGuardedCallee.java"));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(PROPERTY);
+        System.clearProperty(PROPERTY + ".se.eris.guarded");
+        System.clearProperty(PROPERTY + "." + PLAIN_CLASS);
+        System.clearProperty(PROPERTY + "." + CALLER_CLASS);
+    }
+
+    @Test
+    public void enabledChecks_shouldValidate() throws Exception {
+        final Class<?> c = loadClass(CLASSES_DIRECTORY, TEST_CLASS);
+        final Method concat = c.getMethod("concat", String.class, long.class, Object.class);
+        assertThat(ReflectionUtil.simulateMethodCall(concat, "a", 1L, "b"), is((Object) "pa1b1b"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 2 for implicit 'NotNull' parameter of se/eris/guarded/" + CLASS_NAME + ".concat must not be null");
+        ReflectionUtil.simulateMethodCall(concat, "a", 1L, null);
+    }
+
+    @Test
+    public void enabledChecks_shouldValidateReturn() throws Exception {
+        final Method conditionalReturn = loadClass(CLASSES_DIRECTORY, TEST_CLASS).getMethod("conditionalReturn", String.class, boolean.class);
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/guarded/" + CLASS_NAME + ".conditionalReturn must not return null");
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+    @Test
+    public void disabledChecks_shouldNotValidate() throws Exception {
+        System.setProperty(PROPERTY, "false");
+        assertDisabled(CLASSES_DIRECTORY);
+        assertDisabled(DYNAMIC_CLASSES_DIRECTORY);
+    }
+
+    @Test
+    public void disabledPackage_shouldNotValidate() throws Exception {
+        System.setProperty(PROPERTY + ".se.eris.guarded", "false");
+        assertDisabled(CLASSES_DIRECTORY);
+    }
+
+    @Test
+    public void enabledClass_overridesDisabledPackage() throws Exception {
+        System.setProperty(PROPERTY + ".se.eris.guarded", "false");
+        System.setProperty(PROPERTY + "." + PLAIN_CLASS, "true");
+        final Class<?> plain = loadClass(CLASSES_DIRECTORY, PLAIN_CLASS);
+        final Object instance = plain.newInstance();
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(instance, plain.getMethod("echo", String.class), new Object[]{null});
+    }
+
+    @Test
+    public void disabledCaller_doesNotDisableCalleeChecks() throws Exception {
+        System.setProperty(PROPERTY + "." + CALLER_CLASS, "false");
+        final Method call = loadClass(DUAL_CLASSES_DIRECTORY, CALLER_CLASS).getMethod("call", String.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/guarded/dual/TestGuardedCallee.m must not be null");
+        ReflectionUtil.simulateMethodCall(call, new Object[]{null});
+    }
+
+    @Test
+    public void field_isSyntheticStaticFinal() throws Exception {
+        final Field field = loadClass(CLASSES_DIRECTORY, TEST_CLASS).getDeclaredField("$$notNull$disabled");
+        assertThat(field.isSynthetic(), is(true));
+        assertThat(Modifier.isPrivate(field.getModifiers()) && Modifier.isStatic(field.getModifiers()) && Modifier.isFinal(field.getModifiers()), is(true));
+    }
+
+    private static void assertDisabled(@NotNull final Path classesDirectory) throws Exception {
+        final Class<?> c = loadClass(classesDirectory, TEST_CLASS);
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("concat", String.class, long.class, Object.class), "a", 1L, null), is((Object) "pa1null1null"));
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("conditionalReturn", String.class, boolean.class), "a", true), is(nullValue()));
+
+        final Class<?> plain = loadClass(classesDirectory, PLAIN_CLASS);
+        assertThat(ReflectionUtil.simulateMethodCall(plain.newInstance(), plain.getMethod("echo", String.class), new Object[]{null}), is(nullValue()));
+    }
+
+    @NotNull
+    private static Class<?> loadClass(@NotNull final Path classesDirectory, @NotNull final String className) throws Exception {
+        return new URLClassLoader(new URL[]{classesDirectory.toUri().toURL()}).loadClass(className);
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2015 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.objectweb.asm.Opcodes;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static se.eris.util.TestInstrumenter.collectInfos;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+public class HotMethodsNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path COMPACT_DIRECTORY = new File("target/test/data/hot/compact").toPath();
+    private static final Path NO_RETURN_CHECK_DIRECTORY = new File("target/test/data/hot/noReturnCheck").toPath();
+    private static final Path SKIP_DIRECTORY = new File("target/test/data/hot/skip").toPath();
+
+    private static final String CLASS_NAME = "TestHot";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/hot/" + CLASS_NAME + ".java");
+    private static final Path PROFILE = new File(SRC_DIR, "se/eris/hot/hot-methods.txt").toPath();
+    private static final String TEST_CLASS = "se.eris.hot." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/hot/" + CLASS_NAME + ".class";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compactCompiler;
+    private static TestCompiler noReturnCheckCompiler;
+    private static TestCompiler skipCompiler;
+    private static final List<String> messages = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compactCompiler = compileAndInstrument(COMPACT_DIRECTORY, getConfiguration(HotMethodPolicy.COMPACT), collectInfos(messages), TEST_FILE);
+        noReturnCheckCompiler = compileAndInstrument(NO_RETURN_CHECK_DIRECTORY, getConfiguration(HotMethodPolicy.NO_RETURN_CHECK), collectInfos(messages), TEST_FILE);
+        skipCompiler = compileAndInstrument(SKIP_DIRECTORY, getConfiguration(HotMethodPolicy.SKIP), collectInfos(messages), TEST_FILE);
+    }
+
+    @NotNull
+    private static Configuration getConfiguration(@NotNull final HotMethodPolicy policy) throws IOException {
+        return Configuration.Builder.init().implicit(true).profile(ProfileConfiguration.load(PROFILE, policy)).build();
+    }
+
+    @Test
+    public void policy_isLogged() {
+        assertThat(messages, hasItem("Hot method policy COMPACT applied to 3 methods listed in the profile"));
+        assertThat(messages, hasItem("Hot method policy SKIP applied to 3 methods listed in the profile"));
+    }
+
+    @Test
+    public void compact_throwsThroughHelper() throws Exception {
+        final Map<String, List<Integer>> opcodes = ByteCodeUtil.getOpcodes(COMPACT_DIRECTORY.resolve(CLASS_FILE));
+        assertThat(opcodes.get("hot(Ljava/lang/String;)Ljava/lang/String;"), not(hasItem(Opcodes.NEW)));
+        assertThat(opcodes.get("cold(Ljava/lang/String;)Ljava/lang/String;"), hasItem(Opcodes.NEW));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/hot/" + CLASS_NAME + ".hot must not be null");
+        ReflectionUtil.simulateMethodCall(getMethod(compactCompiler, TEST_CLASS, "hot"), new Object[]{null});
+    }
+
+    @Test
+    public void compact_checksReturn() throws Exception {
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/hot/" + CLASS_NAME + ".hotNull must not return null");
+        ReflectionUtil.simulateMethodCall(getMethod(compactCompiler, TEST_CLASS, "hotNull"), "a");
+    }
+
+    @Test
+    public void noReturnCheck_checksParameters() throws Exception {
+        final Method hotNull = getMethod(noReturnCheckCompiler, TEST_CLASS, "hotNull");
+        assertThat(ReflectionUtil.simulateMethodCall(hotNull, "a"), is(nullValue()));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(hotNull, new Object[]{null});
+    }
+
+    @Test
+    public void skip_leavesOutChecks() throws Exception {
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(skipCompiler, TEST_CLASS, "hot"), new Object[]{null}), is(nullValue()));
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(skipCompiler, TEST_CLASS, "hotNull"), "a"), is(nullValue()));
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(skipCompiler, TEST_CLASS + "$Inner", "echo"), new Object[]{null}), is(nullValue()));
+    }
+
+    @Test
+    public void skip_checksOtherMethods() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(getMethod(skipCompiler, TEST_CLASS, "cold"), new Object[]{null});
+    }
+
+    @NotNull
+    private static Method getMethod(@NotNull final TestCompiler compiler, @NotNull final String className, @NotNull final String name) throws Exception {
+        return compiler.getCompiledClass(className).getMethod(name, String.class);
+    }
+
+}
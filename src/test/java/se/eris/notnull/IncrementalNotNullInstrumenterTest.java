@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import com.intellij.NotNullInstrumenter;
+import org.junit.Before;
+import org.junit.Test;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.instrumentation.ClassMatcher;
+import se.eris.notnull.instrumentation.InstrumentationManifest;
+import se.eris.util.ClassFileUtils;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class IncrementalNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/incremental/classes").toPath();
+    private static final Path MANIFEST_FILE = new File("target/test/data/incremental/classes.manifest").toPath();
+
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/test/TestNotNull.java");
+    private static final String PLUGIN_VERSION = "1.0";
+
+    private TestCompiler compiler;
+
+    @Before
+    public void setUp() throws IOException {
+        Files.deleteIfExists(MANIFEST_FILE);
+        compiler = TestCompiler.create(CLASSES_DIRECTORY);
+        compiler.compile(TEST_FILE);
+    }
+
+    @Test
+    public void unchangedClasses_areNotInstrumentedAgain() throws IOException {
+        final Configuration configuration = getConfiguration(true);
+        assertThat(instrument(configuration).instrumented, greaterThan(0));
+
+        final Result secondRun = instrument(configuration);
+        assertThat(secondRun.instrumented, is(0));
+        assertThat(secondRun.unchanged, is(ClassFileUtils.getClassFiles(CLASSES_DIRECTORY).size()));
+    }
+
+    @Test
+    public void recompiledClasses_areInstrumentedAgain() throws IOException {
+        final Configuration configuration = getConfiguration(true);
+        final int instrumented = instrument(configuration).instrumented;
+
+        compiler.compile(TEST_FILE);
+        assertThat(instrument(configuration).instrumented, is(instrumented));
+    }
+
+    @Test
+    public void changedConfiguration_reprocessesAllClasses() throws IOException {
+        instrument(getConfiguration(true));
+
+        final Result secondRun = instrument(getConfiguration(false));
+        assertThat(secondRun.unchanged, is(0));
+    }
+
+    @Test
+    public void changedPluginVersion_reprocessesAllClasses() throws IOException {
+        final Configuration configuration = getConfiguration(true);
+        instrument(configuration);
+
+        final Result secondRun = instrument(configuration, "1.1");
+        assertThat(secondRun.unchanged, is(0));
+    }
+
+    @Test
+    public void dualEntryPoints_reprocessesAllClasses() throws IOException {
+        final Configuration configuration = new Configuration(true, new AnnotationConfiguration(), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()),
+                CodeGenerationConfiguration.Builder.init().dualEntryPoints(true).build());
+        instrument(configuration);
+
+        final Result secondRun = instrument(configuration);
+        assertThat(secondRun.unchanged, is(0));
+    }
+
+    private static Result instrument(final Configuration configuration) throws IOException {
+        return instrument(configuration, PLUGIN_VERSION);
+    }
+
+    private static Result instrument(final Configuration configuration, final String pluginVersion) throws IOException {
+        final InstrumentationManifest manifest = InstrumentationManifest.load(MANIFEST_FILE, CLASSES_DIRECTORY, configuration, pluginVersion);
+        final NotNullInstrumenter instrumenter = new NotNullInstrumenter(new NopLogWrapper());
+        final int instrumented = instrumenter.addNotNullAnnotations(CLASSES_DIRECTORY, configuration, Collections.<URL>emptyList(), manifest);
+        manifest.save();
+        return new Result(instrumented, manifest.getUnchangedCount());
+    }
+
+    private static Configuration getConfiguration(final boolean implicit) {
+        return new Configuration(implicit, new AnnotationConfiguration(), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()));
+    }
+
+    private static final class Result {
+        private final int instrumented;
+        private final int unchanged;
+
+        private Result(final int instrumented, final int unchanged) {
+            this.instrumented = instrumented;
+            this.unchanged = unchanged;
+        }
+    }
+
+}
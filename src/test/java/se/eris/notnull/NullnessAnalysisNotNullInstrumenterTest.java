@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+import static se.eris.util.TestInstrumenter.collectInfos;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.implicit;
+
+public class NullnessAnalysisNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CHECKED_CLASSES_DIRECTORY = new File("target/test/data/analysis/checked").toPath();
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/analysis/classes").toPath();
+    private static final Path FRAMES_CLASSES_DIRECTORY = new File("target/test/data/analysis/frames").toPath();
+
+    private static final String CLASS_NAME = "TestAnalysis";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/analysis/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.analysis." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/analysis/" + CLASS_NAME + ".class";
+
+    private static final List<String> NOT_NULL_RETURNS = Arrays.asList("self", "create", "constant", "echo", "concat", "delegate", "array", "overridable");
+    private static final List<String> CHECKED_RETURNS = Arrays.asList("callsOverridable", "cached", "reassigned", "conditional", "fromNullable");
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler framesCompiler;
+    private static final List<String> messages = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compileAndInstrument(CHECKED_CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().build()), collectInfos(messages), TEST_FILE);
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().nullnessAnalysis(true).build()), collectInfos(messages), TEST_FILE);
+        framesCompiler = compileAndInstrument(FRAMES_CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().nullnessAnalysis(true).preserveFrames(true).build()), collectInfos(messages), TEST_FILE);
+    }
+
+    @Test
+    public void notNullReturns_areNotChecked() throws IOException {
+        final Map<String, Integer> checked = ByteCodeUtil.getCodeLengths(CHECKED_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        for (final Path classesDirectory : new Path[]{CLASSES_DIRECTORY, FRAMES_CLASSES_DIRECTORY}) {
+            final Map<String, Integer> analyzed = ByteCodeUtil.getCodeLengths(classesDirectory.resolve(CLASS_FILE));
+            for (final String method : NOT_NULL_RETURNS) {
+                assertThat(method, analyzed.get(method), lessThan(checked.get(method)));
+            }
+            for (final String method : CHECKED_RETURNS) {
+                assertThat(method, analyzed.get(method), is(checked.get(method)));
+            }
+        }
+    }
+
+    @Test
+    public void elidedChecks_areReported() {
+        assertThat(messages, hasItem("Nullness analysis left out " + NOT_NULL_RETURNS.size() + " return value checks that cannot fail"));
+    }
+
+    @Test
+    public void notNullReturns_shouldWork() throws Exception {
+        final Class<?> c = framesCompiler.getCompiledClass(TEST_CLASS);
+        final Object instance = ReflectionUtil.simulateMethodCall(c.getMethod("create", String.class), "a");
+        assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("self")), is(instance));
+        assertThat(ReflectionUtil.simulateMethodCall(instance, c.getMethod("concat", String.class), "b"), is((Object) "ab"));
+        assertThat(ReflectionUtil.simulateMethodCall(c.getMethod("delegate")), is((Object) "constant"));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(c.getMethod("echo", String.class), new Object[]{null});
+    }
+
+    @Test
+    public void nullableReturns_shouldValidate() throws Exception {
+        for (final TestCompiler testCompiler : new TestCompiler[]{compiler, framesCompiler}) {
+            final Class<?> c = testCompiler.getCompiledClass(TEST_CLASS);
+            assertReturnFails(c.getMethod("cached"));
+            assertReturnFails(c.getMethod("reassigned", boolean.class, String.class), true, "s");
+            assertReturnFails(c.getMethod("conditional", boolean.class), false);
+            assertReturnFails(c.getMethod("fromNullable"));
+        }
+    }
+
+    private static void assertReturnFails(@NotNull final Method method, final Object... params) throws Exception {
+        try {
+            method.invoke(null, params);
+            fail("expected the return value check of " + method.getName() + " to fail");
+        } catch (final InvocationTargetException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.lessThan;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.instrument;
+
+public class OutlinedChecksNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path INLINE_CLASSES_DIRECTORY = new File("target/test/data/outline/inline").toPath();
+    private static final Path OUTLINE_CLASSES_DIRECTORY = new File("target/test/data/outline/classes").toPath();
+    private static final Path OUTLINE_FRAMES_CLASSES_DIRECTORY = new File("target/test/data/outline/frames").toPath();
+
+    private static final String CLASS_NAME = "TestOutline";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/outline/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.outline." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/outline/" + CLASS_NAME + ".class";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler framesCompiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compileAndInstrument(INLINE_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().build(), TEST_FILE);
+
+        final CodeGenerationConfiguration outline = CodeGenerationConfiguration.Builder.init().outlineChecks(true).build();
+        compiler = compileAndInstrument(OUTLINE_CLASSES_DIRECTORY, outline, TEST_FILE);
+        // instrumenting again must not add the helpers twice
+        instrument(OUTLINE_CLASSES_DIRECTORY, outline);
+
+        framesCompiler = compileAndInstrument(OUTLINE_FRAMES_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().outlineChecks(true).preserveFrames(true).build(), TEST_FILE);
+    }
+
+    @Test
+    public void parameter_shouldValidate() throws Exception {
+        final Method concat = compiler.getCompiledClass(TEST_CLASS).getMethod("concat", String.class, String.class);
+        assertThat(ReflectionUtil.simulateMethodCall(concat, "a", "b"), is((Object) "ab"));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 1 for implicit 'NotNull' parameter of se/eris/outline/" + CLASS_NAME + ".concat must not be null");
+        ReflectionUtil.simulateMethodCall(concat, "a", null);
+    }
+
+    @Test
+    public void returnValue_shouldValidate() throws Exception {
+        final Method conditionalReturn = framesCompiler.getCompiledClass(TEST_CLASS).getMethod("conditionalReturn", String.class, boolean.class);
+        assertThat(ReflectionUtil.simulateMethodCall(conditionalReturn, "a", false), is((Object) "a"));
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/outline/" + CLASS_NAME + ".conditionalReturn must not return null");
+        ReflectionUtil.simulateMethodCall(conditionalReturn, "a", true);
+    }
+
+    @Test
+    public void interface_shouldValidateInline() throws Exception {
+        final Class<?> c = framesCompiler.getCompiledClass(TEST_CLASS);
+        final Object instance = c.getConstructor(String.class).newInstance("a");
+        final Method greet = c.getMethod("greet", String.class);
+        greet.setAccessible(true);
+        assertThat(getHelperNames(c.getInterfaces()[0]), is(empty()));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/outline/Named.greet must not be null");
+        ReflectionUtil.simulateMethodCall(instance, greet, new Object[]{null});
+    }
+
+    @Test
+    public void helpers_areAddedOnce() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        assertThat(getHelperNames(c), containsInAnyOrder("$$notNull$throwIllegalArgumentException", "$$notNull$throwIllegalStateException"));
+        for (final Method method : c.getDeclaredMethods()) {
+            if (method.isSynthetic()) {
+                assertThat(Modifier.isPrivate(method.getModifiers()) && Modifier.isStatic(method.getModifiers()), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void outlinedChecks_areSmallerThanInline() throws IOException {
+        final Map<String, Integer> inline = ByteCodeUtil.getCodeLengths(INLINE_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        final Map<String, Integer> outline = ByteCodeUtil.getCodeLengths(OUTLINE_FRAMES_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        assertThat(outline.get("getValue"), lessThan(inline.get("getValue")));
+        assertThat(outline.get("delegate"), lessThan(inline.get("delegate")));
+        assertThat(outline.get("conditionalReturn"), lessThan(inline.get("conditionalReturn")));
+    }
+
+    @NotNull
+    private static List<String> getHelperNames(@NotNull final Class<?> c) {
+        final List<String> names = new ArrayList<>();
+        for (final Method method : c.getDeclaredMethods()) {
+            if (method.isSynthetic() && method.getName().startsWith("$$notNull$")) {
+                names.add(method.getName());
+            }
+        }
+        return names;
+    }
+
+}
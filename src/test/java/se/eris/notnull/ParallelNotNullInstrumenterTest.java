@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import com.intellij.NotNullInstrumenter;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.instrumentation.ClassMatcher;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class ParallelNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path SEQUENTIAL_CLASSES_DIRECTORY = new File("target/test/data/sequential/classes").toPath();
+    private static final Path PARALLEL_CLASSES_DIRECTORY = new File("target/test/data/parallel/classes").toPath();
+
+    private static final String CLASS_NAME = "TestNotNull";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/test/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.test." + CLASS_NAME;
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static int sequentiallyInstrumented;
+    private static int parallelInstrumented;
+
+    @BeforeClass
+    public static void beforeClass() throws MalformedURLException {
+        TestCompiler.create(SEQUENTIAL_CLASSES_DIRECTORY).compile(TEST_FILE);
+        compiler = TestCompiler.create(PARALLEL_CLASSES_DIRECTORY);
+        compiler.compile(TEST_FILE);
+
+        final Configuration configuration = new Configuration(true, new AnnotationConfiguration(), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()));
+        sequentiallyInstrumented = new NotNullInstrumenter(new NopLogWrapper(), 1).addNotNullAnnotations(SEQUENTIAL_CLASSES_DIRECTORY, configuration, Collections.<URL>emptyList());
+        parallelInstrumented = new NotNullInstrumenter(new NopLogWrapper(), 4).addNotNullAnnotations(PARALLEL_CLASSES_DIRECTORY, configuration, Collections.<URL>emptyList());
+    }
+
+    @Test
+    public void parallel_instrumentsSameNumberOfFiles() {
+        assertThat(parallelInstrumented, greaterThan(0));
+        assertThat(parallelInstrumented, is(sequentiallyInstrumented));
+    }
+
+    @Test
+    public void parallel_implicitParameter_shouldValidate() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        final Method implicitParameterMethod = c.getMethod("implicitParameter", String.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/test/" + CLASS_NAME + ".implicitParameter must not be null");
+        ReflectionUtil.simulateMethodCall(implicitParameterMethod, new Object[]{null});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void threads_mustBePositive() {
+        new NotNullInstrumenter(new NopLogWrapper(), 0);
+    }
+
+}
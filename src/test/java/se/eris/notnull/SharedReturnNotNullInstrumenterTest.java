@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+/**
+ * Only the first return of a method is checked in place, the others jump to a shared checked return.
+ */
+public class SharedReturnNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path ORIGINAL_CLASSES_DIRECTORY = new File("target/test/data/epilogue/original").toPath();
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/epilogue/classes").toPath();
+    private static final Path FRAMES_CLASSES_DIRECTORY = new File("target/test/data/epilogue/frames").toPath();
+    private static final Path GUARDED_CLASSES_DIRECTORY = new File("target/test/data/epilogue/guarded").toPath();
+
+    private static final String CLASS_NAME = "TestEpilogue";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/epilogue/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.epilogue." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/epilogue/" + CLASS_NAME + ".class";
+
+    /**
+     * A return replaced by a jump to the shared return grows from ARETURN to GOTO.
+     */
+    private static final int JUMP_GROWTH = 2;
+    private static final int ARETURN_LENGTH = 1;
+
+    private static TestCompiler compiler;
+    private static TestCompiler framesCompiler;
+    private static TestCompiler guardedCompiler;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        TestCompiler.create(ORIGINAL_CLASSES_DIRECTORY).compile(TEST_FILE);
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().build(), TEST_FILE);
+        framesCompiler = compileAndInstrument(FRAMES_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().preserveFrames(true).compactMessages(true).build(), TEST_FILE);
+        guardedCompiler = compileAndInstrument(GUARDED_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().preserveFrames(true).guardedChecks(true).dynamicChecks(true).build(), TEST_FILE);
+    }
+
+    @Test
+    public void everyReturn_shouldValidate() throws Exception {
+        for (final TestCompiler testCompiler : new TestCompiler[]{compiler, framesCompiler, guardedCompiler}) {
+            final Class<?> c = testCompiler.getCompiledClass(TEST_CLASS);
+            final Method four = c.getMethod("four", int.class);
+            final Method eight = c.getMethod("eight", int.class);
+            assertThat(ReflectionUtil.simulateMethodCall(four, 1), is((Object) "b"));
+            assertThat(ReflectionUtil.simulateMethodCall(four, 3), is((Object) "d"));
+            assertThat(ReflectionUtil.simulateMethodCall(eight, 6), is((Object) "g"));
+            assertReturnFails(four, null, 0);
+            assertReturnFails(eight, null, 7);
+
+            final Object instance = c.newInstance();
+            final Method guarded = c.getMethod("guarded", Object.class, int.class);
+            assertThat(ReflectionUtil.simulateMethodCall(instance, guarded, new Object(), 2), is((Object) "2"));
+            assertReturnFails(guarded, instance, new Object(), 0);
+            assertReturnFails(guarded, instance, new Object(), 1);
+        }
+    }
+
+    @Test
+    public void returnChecks_areConstantSizePerMethod() throws IOException {
+        final Map<String, Integer> original = ByteCodeUtil.getCodeLengths(ORIGINAL_CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        for (final Path classesDirectory : new Path[]{CLASSES_DIRECTORY, FRAMES_CLASSES_DIRECTORY, GUARDED_CLASSES_DIRECTORY}) {
+            final Map<String, Integer> instrumented = ByteCodeUtil.getCodeLengths(classesDirectory.resolve(CLASS_FILE));
+            final int oneReturn = instrumented.get("one") - original.get("one");
+            final int fourReturns = instrumented.get("four") - original.get("four");
+            final int eightReturns = instrumented.get("eight") - original.get("eight");
+            // one check in place, one in the shared return (which adds an ARETURN)
+            assertThat(fourReturns, is(2 * oneReturn + 3 * JUMP_GROWTH + ARETURN_LENGTH));
+            assertThat(eightReturns, is(fourReturns + 4 * JUMP_GROWTH));
+        }
+    }
+
+    private static void assertReturnFails(@NotNull final Method method, final Object instance, final Object... params) throws Exception {
+        try {
+            method.invoke(instance, params);
+            fail("expected the return value check of " + method.getName() + " to fail");
+        } catch (final InvocationTargetException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.maven.NopLogWrapper;
+import se.eris.util.ByteCodeUtil;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+import static se.eris.util.TestInstrumenter.implicit;
+
+public class SizeBudgetNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/budget/classes").toPath();
+    private static final Path ANALYSIS_CLASSES_DIRECTORY = new File("target/test/data/budget/analysis").toPath();
+
+    private static final String CLASS_NAME = "TestBudget";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/budget/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.budget." + CLASS_NAME;
+    private static final String CLASS_FILE = "se/eris/budget/" + CLASS_NAME + ".class";
+    private static final File ANALYSIS_TEST_FILE = new File(SRC_DIR, "se/eris/budget/TestBudgetAnalysis.java");
+    private static final String ANALYSIS_TEST_CLASS = "se.eris.budget.TestBudgetAnalysis";
+    private static final String MESSAGE_PREFIX = "Size budget: se/eris/budget/" + CLASS_NAME + ".";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler analysisCompiler;
+    private static final List<String> infos = new ArrayList<>();
+    private static final List<String> warnings = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, implicit(CodeGenerationConfiguration.Builder.init().sizeBudget(true).preserveFrames(true).build()), new NopLogWrapper() {
+            @Override
+            public void info(@NotNull final String message) {
+                infos.add(message);
+            }
+
+            @Override
+            public void warn(@NotNull final String message) {
+                warnings.add(message);
+            }
+        }, TEST_FILE);
+        analysisCompiler = compileAndInstrument(ANALYSIS_CLASSES_DIRECTORY, CodeGenerationConfiguration.Builder.init().sizeBudget(true).preserveFrames(true).nullnessAnalysis(true).build(), ANALYSIS_TEST_FILE);
+    }
+
+    @Test
+    public void decisions_areLogged() {
+        assertDecision(infos, "compact", "so gets compact checks");
+        assertDecision(infos, "parametersOnly", "so gets compact parameter checks only");
+        assertDecision(warnings, "keepsChecks", "and keeps its checks");
+        assertDecision(warnings, "huge", "so gets no checks");
+        assertThat(infos, hasItem("Size budget found 4 methods that their checks would push over a JIT code length limit"));
+    }
+
+    @Test
+    public void methods_stayUnderTheLimits() throws Exception {
+        final Map<String, Integer> lengths = ByteCodeUtil.getCodeLengths(CLASSES_DIRECTORY.resolve(CLASS_FILE));
+        assertThat(lengths.get("compact"), lessThanOrEqualTo(325));
+        assertThat(lengths.get("parametersOnly"), lessThanOrEqualTo(325));
+        assertThat(lengths.get("huge"), lessThanOrEqualTo(8000));
+    }
+
+    @Test
+    public void constantsOfTheMethod_areNotCountedAsWide() throws Exception {
+        assertNoDecision("constants");
+        assertThat(ByteCodeUtil.getCodeLengths(CLASSES_DIRECTORY.resolve(CLASS_FILE)).get("constants"), lessThanOrEqualTo(325));
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 0 for implicit 'NotNull' parameter of se/eris/budget/" + CLASS_NAME + ".constants must not be null");
+        ReflectionUtil.simulateMethodCall(getMethod("constants", String.class, int.class), new Object[]{null, 1});
+    }
+
+    @Test
+    public void compactChecks_shouldValidate() throws Exception {
+        final Method compact = getMethod("compact", String.class, String.class, String.class, int.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 1 for implicit 'NotNull' parameter of se/eris/budget/" + CLASS_NAME + ".compact must not be null");
+        ReflectionUtil.simulateMethodCall(compact, "a", null, "c", 1);
+    }
+
+    @Test
+    public void parametersOnly_returnIsNotChecked() throws Exception {
+        final Method parametersOnly = getMethod("parametersOnly", String.class, int.class);
+        assertThat(ReflectionUtil.simulateMethodCall(parametersOnly, "a", -1), is(nullValue()));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(parametersOnly, new Object[]{null, 1});
+    }
+
+    @Test
+    public void keepsChecks_shouldValidate() throws Exception {
+        final Method keepsChecks = getMethod("keepsChecks", String.class, String.class, String.class, String.class, String.class, String.class, String.class, String.class, int.class);
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage("Argument 7 for implicit 'NotNull' parameter");
+        ReflectionUtil.simulateMethodCall(keepsChecks, "a", "b", "c", "d", "e", "f", "g", null, 1);
+    }
+
+    @Test
+    public void hugeMethod_isNotChecked() throws Exception {
+        exception.expect(NullPointerException.class);
+        ReflectionUtil.simulateMethodCall(getMethod("huge", String.class, int.class), new Object[]{null, 1});
+    }
+
+    @Test
+    public void smallMethod_keepsItsChecks() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(getMethod("small", String.class), new Object[]{null});
+    }
+
+    @Test
+    public void instanceMethod_keepsItsChecks() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        assertThat(ReflectionUtil.simulateMethodCall(c.newInstance(), c.getMethod("instance", String.class, boolean.class), "a", false), is((Object) "a!"));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(c.newInstance(), c.getMethod("instance", String.class, boolean.class), null, true);
+    }
+
+    @Test
+    public void analysis_doesNotTrustMethodWithoutReturnCheck() throws Exception {
+        final Method call = analysisCompiler.getCompiledClass(ANALYSIS_TEST_CLASS).getMethod("call", String.class, int.class);
+        exception.expect(IllegalStateException.class);
+        exception.expectMessage("NotNull method se/eris/budget/TestBudgetAnalysis.call must not return null");
+        ReflectionUtil.simulateMethodCall(call, "a", -1);
+    }
+
+    private static void assertDecision(@NotNull final List<String> messages, @NotNull final String method, @NotNull final String decision) {
+        for (final String message : messages) {
+            if (message.startsWith(MESSAGE_PREFIX + method + "(")) {
+                assertThat(message, message.contains(decision), is(true));
+                return;
+            }
+        }
+        throw new AssertionError("No size budget decision for " + method + " in " + messages);
+    }
+
+    private static void assertNoDecision(@NotNull final String method) {
+        for (final String message : infos) {
+            assertThat(message, message.startsWith(MESSAGE_PREFIX + method + "("), is(false));
+        }
+        for (final String message : warnings) {
+            assertThat(message, message.startsWith(MESSAGE_PREFIX + method + "("), is(false));
+        }
+    }
+
+    @NotNull
+    private static Method getMethod(@NotNull final String name, @NotNull final Class<?>... parameterTypes) throws Exception {
+        return compiler.getCompiledClass(TEST_CLASS).getMethod(name, parameterTypes);
+    }
+
+}
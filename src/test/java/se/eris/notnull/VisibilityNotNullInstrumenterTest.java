@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.notnull;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import se.eris.notnull.instrumentation.ClassMatcher;
+import se.eris.util.ReflectionUtil;
+import se.eris.util.TestCompiler;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static se.eris.util.TestInstrumenter.collectInfos;
+import static se.eris.util.TestInstrumenter.compileAndInstrument;
+
+public class VisibilityNotNullInstrumenterTest {
+
+    private static final File SRC_DIR = new File("src/test/data");
+    private static final Path CLASSES_DIRECTORY = new File("target/test/data/visibility/classes").toPath();
+    private static final Path EXPORTS_CLASSES_DIRECTORY = new File("target/test/data/visibility/exports").toPath();
+
+    private static final String CLASS_NAME = "TestVisibility";
+    private static final File TEST_FILE = new File(SRC_DIR, "se/eris/visibility/" + CLASS_NAME + ".java");
+    private static final String TEST_CLASS = "se.eris.visibility." + CLASS_NAME;
+    private static final String HIDDEN_CLASS = TEST_CLASS + "$Hidden";
+
+    @Rule
+    public ExpectedException exception = ExpectedException.none();
+
+    private static TestCompiler compiler;
+    private static TestCompiler exportsCompiler;
+    private static final List<String> messages = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        compiler = compileAndInstrument(CLASSES_DIRECTORY, getConfiguration(new VisibilityConfiguration(CheckVisibility.PROTECTED, CheckVisibility.PUBLIC, Collections.<ClassMatcher>emptySet())),
+                collectInfos(messages), TEST_FILE);
+        exportsCompiler = compileAndInstrument(EXPORTS_CLASSES_DIRECTORY, getConfiguration(new VisibilityConfiguration(CheckVisibility.ALL, CheckVisibility.ALL, Collections.singleton(ClassMatcher.namePattern(TEST_CLASS)))),
+                collectInfos(messages), TEST_FILE);
+    }
+
+    @NotNull
+    private static Configuration getConfiguration(@NotNull final VisibilityConfiguration visibility) {
+        return Configuration.Builder.init().implicit(true).visibility(visibility).build();
+    }
+
+    @Test
+    public void excludedChecks_areReported() {
+        assertThat(messages, hasItem("Parameter check visibility PROTECTED left out 3 parameter checks"));
+        assertThat(messages, hasItem("Return check visibility PUBLIC left out 5 return value checks"));
+        assertThat(messages, hasItem("Parameter check visibility ALL left out 1 parameter checks"));
+    }
+
+    @Test
+    public void lessVisibleMethods_areNotChecked() throws Exception {
+        final Class<?> c = compiler.getCompiledClass(TEST_CLASS);
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(c, "packageEcho"), new Object[]{null}), is(nullValue()));
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(c, "privateEcho"), new Object[]{null}), is(nullValue()));
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(c, "protectedNull"), "a"), is(nullValue()));
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(compiler.getCompiledClass(HIDDEN_CLASS), "echo"), new Object[]{null}), is(nullValue()));
+    }
+
+    @Test
+    public void protectedParameter_isChecked() throws Exception {
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(getMethod(compiler.getCompiledClass(TEST_CLASS), "protectedEcho"), new Object[]{null});
+    }
+
+    @Test
+    public void publicReturn_isChecked() throws Exception {
+        exception.expect(IllegalStateException.class);
+        ReflectionUtil.simulateMethodCall(getMethod(compiler.getCompiledClass(TEST_CLASS), "publicNull"), "a");
+    }
+
+    @Test
+    public void notExportedClass_isNotChecked() throws Exception {
+        assertThat(ReflectionUtil.simulateMethodCall(getMethod(exportsCompiler.getCompiledClass(HIDDEN_CLASS), "echo"), new Object[]{null}), is(nullValue()));
+        exception.expect(IllegalArgumentException.class);
+        ReflectionUtil.simulateMethodCall(getMethod(exportsCompiler.getCompiledClass(TEST_CLASS), "privateEcho"), new Object[]{null});
+    }
+
+    @NotNull
+    private static Method getMethod(@NotNull final Class<?> c, @NotNull final String name) throws NoSuchMethodException {
+        final Method method = c.getDeclaredMethod(name, String.class);
+        method.setAccessible(true);
+        return method;
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+public final class ByteCodeUtil {
+
+    private ByteCodeUtil() {
+    }
+
+    /**
+     * @return the bytecode length of each method, by name.
+     */
+    @NotNull
+    public static Map<String, Integer> getCodeLengths(@NotNull final Path classFile) throws IOException {
+        final Map<String, Integer> lengths = new HashMap<>();
+        new ClassReader(Files.readAllBytes(classFile)).accept(new ClassVisitor(Opcodes.ASM5, new ClassWriter(0)) {
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM5, super.visitMethod(access, name, desc, signature, exceptions)) {
+                    @Override
+                    public void visitMaxs(final int maxStack, final int maxLocals) {
+                        final Label end = new Label();
+                        super.visitLabel(end);
+                        lengths.put(name, end.getOffset());
+                        super.visitMaxs(maxStack, maxLocals);
+                    }
+                };
+            }
+        }, 0);
+        return lengths;
+    }
+
+    /**
+     * @return the methods called (as owner.name descriptor) by each method, by name and descriptor.
+     */
+    @NotNull
+    public static Map<String, List<String>> getCalls(@NotNull final Path classFile) throws IOException {
+        final Map<String, List<String>> calls = new HashMap<>();
+        new ClassReader(Files.readAllBytes(classFile)).accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+                final List<String> methodCalls = new ArrayList<>();
+                calls.put(name + desc, methodCalls);
+                return new MethodVisitor(Opcodes.ASM5) {
+                    @Override
+                    public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+                        methodCalls.add(owner + "." + name + desc);
+                    }
+                };
+            }
+        }, 0);
+        return calls;
+    }
+
+    /**
+     * @return the opcodes of the instructions of each method, by name and descriptor.
+     */
+    @NotNull
+    public static Map<String, List<Integer>> getOpcodes(@NotNull final Path classFile) throws IOException {
+        final Map<String, List<Integer>> opcodes = new HashMap<>();
+        new ClassReader(Files.readAllBytes(classFile)).accept(new ClassVisitor(Opcodes.ASM5) {
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+                return new MethodNode(Opcodes.ASM5, access, name, desc, signature, exceptions) {
+                    @Override
+                    public void visitEnd() {
+                        final List<Integer> methodOpcodes = new ArrayList<>();
+                        for (final Iterator<?> it = instructions.iterator(); it.hasNext(); ) {
+                            final int opcode = ((AbstractInsnNode) it.next()).getOpcode();
+                            if (opcode >= 0) {
+                                methodOpcodes.add(opcode);
+                            }
+                        }
+                        opcodes.put(name + desc, methodOpcodes);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        return opcodes;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2013-2016 Eris IT AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.eris.util;
+
+import com.intellij.NotNullInstrumenter;
+import org.jetbrains.annotations.NotNull;
+import se.eris.maven.LogWrapper;
+import se.eris.maven.NopLogWrapper;
+import se.eris.notnull.AnnotationConfiguration;
+import se.eris.notnull.CodeGenerationConfiguration;
+import se.eris.notnull.Configuration;
+import se.eris.notnull.ExcludeConfiguration;
+import se.eris.notnull.instrumentation.ClassMatcher;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Compiles and instruments the test data, as the set up of the instrumenter tests.
+ */
+public class TestInstrumenter {
+
+    /**
+     * Compiles the files to the directory and instruments them as implicitly not null, with the code generation.
+     */
+    @NotNull
+    public static TestCompiler compileAndInstrument(@NotNull final Path classesDirectory, @NotNull final CodeGenerationConfiguration codeGeneration, @NotNull final File... files) throws MalformedURLException {
+        return compileAndInstrument(classesDirectory, implicit(codeGeneration), new NopLogWrapper(), files);
+    }
+
+    @NotNull
+    public static TestCompiler compileAndInstrument(@NotNull final Path classesDirectory, @NotNull final Configuration configuration, @NotNull final LogWrapper log, @NotNull final File... files) throws MalformedURLException {
+        final TestCompiler compiler = TestCompiler.create(classesDirectory);
+        compiler.compile(files);
+        instrument(classesDirectory, configuration, log);
+        return compiler;
+    }
+
+    /**
+     * @return the number of instrumented classes.
+     */
+    public static int instrument(@NotNull final Path classesDirectory, @NotNull final CodeGenerationConfiguration codeGeneration) {
+        return instrument(classesDirectory, implicit(codeGeneration), new NopLogWrapper());
+    }
+
+    /**
+     * @return the number of instrumented classes.
+     */
+    public static int instrument(@NotNull final Path classesDirectory, @NotNull final Configuration configuration, @NotNull final LogWrapper log) {
+        return new NotNullInstrumenter(log).addNotNullAnnotations(classesDirectory, configuration, Collections.<URL>emptyList());
+    }
+
+    /**
+     * @return the configuration of implicitly not null classes with the code generation.
+     */
+    @NotNull
+    public static Configuration implicit(@NotNull final CodeGenerationConfiguration codeGeneration) {
+        return new Configuration(true, new AnnotationConfiguration(), new ExcludeConfiguration(Collections.<ClassMatcher>emptySet()), codeGeneration);
+    }
+
+    /**
+     * @return a log adding its info messages to the collection.
+     */
+    @NotNull
+    public static LogWrapper collectInfos(@NotNull final Collection<String> messages) {
+        return new NopLogWrapper() {
+            @Override
+            public void info(@NotNull final String message) {
+                messages.add(message);
+            }
+        };
+    }
+
+}